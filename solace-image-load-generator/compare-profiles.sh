@@ -0,0 +1,34 @@
+#!/bin/bash
+#
+# Runs the load generator once per solace.java.profile (none, throughput, low-latency) against the broker
+# configured in application.properties or SOLACE_JAVA_* variables, and prints the latency report of each run.
+#
+# The persistence service should consume the queue during the runs, ideally started with the same profile
+# (SOLACE_JAVA_PROFILE=...) for each run, since the subscriber settings only take effect on its side.
+#
+# Usage: ./compare-profiles.sh [rate] [durationSeconds]
+#
+set -e
+cd "$(dirname "$0")"
+
+RATE=${1:-1000}
+DURATION=${2:-60}
+JAR=$(ls target/solace-image-load-generator-*.jar 2>/dev/null | head -1)
+
+if [ -z "$JAR" ]; then
+    mvn -q -DskipTests package
+    JAR=$(ls target/solace-image-load-generator-*.jar | head -1)
+fi
+
+for PROFILE in none throughput low-latency; do
+    PROFILE_ARG=""
+    if [ "$PROFILE" != "none" ]; then
+        PROFILE_ARG="--solace.java.profile=$PROFILE"
+    fi
+
+    echo "=== profile: $PROFILE, $RATE msg/s for $DURATION s"
+    java -jar "$JAR" $PROFILE_ARG --loadgen.rate="$RATE" --loadgen.durationSeconds="$DURATION" \
+        > "target/profile-$PROFILE.log" 2>&1
+    # throughput and latency summaries; the full distribution stays in the log
+    sed -n '/^Completed/,/^Corrected latency distribution/p' "target/profile-$PROFILE.log" | sed '$d'
+done
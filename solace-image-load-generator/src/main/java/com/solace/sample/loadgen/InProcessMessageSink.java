@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for the broker and persistence service, for running without a broker.
+ * <p>
+ * Each message is "processed" by one of a fixed number of threads for a fixed service time. Sends block when
+ * the stand-in's queue is full, the way a publisher blocks on a full publish window.
+ */
+public class InProcessMessageSink implements MessageSink {
+
+    private final ThreadPoolExecutor workers;
+    private final long serviceMillis;
+
+    public InProcessMessageSink(int threads, int queueCapacity, long serviceMillis) {
+        this.serviceMillis = serviceMillis;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        try {
+                            executor.getQueue().put(r);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void send(final byte[] payload, final Completion completion) {
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(serviceMillis);
+                    completion.completed();
+                } catch (InterruptedException e) {
+                    completion.failed(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+import com.solacesystems.jcsmp.SpringJCSMPFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Standalone generator of synthetic image traffic for the persistence service.
+ */
+@SpringBootApplication
+@EnableConfigurationProperties(LoadGeneratorProperties.class)
+public class LoadGeneratorApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(LoadGeneratorApplication.class, args).close();
+    }
+
+    @Component
+    static class Runner implements CommandLineRunner {
+
+        private static final Logger logger = LoggerFactory.getLogger(Runner.class);
+
+        @Autowired private SpringJCSMPFactory solaceFactory;
+        @Autowired private LoadGeneratorProperties properties;
+
+        @Override
+        public void run(String... strings) throws Exception {
+            SyntheticPayloads payloads = new SyntheticPayloads(properties);
+
+            MessageSink sink;
+            if ("in-process".equals(properties.getTarget())) {
+                sink = new InProcessMessageSink(properties.getStandInThreads(), properties.getStandInQueueCapacity(),
+                        properties.getStandInServiceMillis());
+            } else if ("solace".equals(properties.getTarget())) {
+                SolaceMessageSink solaceSink = new SolaceMessageSink(solaceFactory, properties.getQueueName());
+                solaceSink.start();
+                sink = solaceSink;
+                logger.info("Publishing to queue {}", properties.getQueueName());
+            } else {
+                throw new IllegalArgumentException("Unknown loadgen.target: " + properties.getTarget());
+            }
+
+            try {
+                new OpenLoopLoadGenerator(sink, payloads, properties).run();
+            } finally {
+                sink.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of a load generator run. Like any Spring Boot property they can also be set through the
+ * environment, e.g. {@code LOADGEN_RATE=500}.
+ */
+@ConfigurationProperties("loadgen")
+public class LoadGeneratorProperties {
+
+    /**
+     * Where messages are sent: "solace" publishes to the image queue on the configured broker,
+     * "in-process" hands them to a local stand-in for the persistence service.
+     */
+    private String target = "solace";
+
+    /**
+     * Queue the persistence service consumes from.
+     */
+    private String queueName = "Q/imageIngress";
+
+    /**
+     * Messages per second. Sends are scheduled at this fixed rate whatever the response times (open loop).
+     */
+    private int rate = 100;
+
+    /**
+     * Length of the measured run in seconds.
+     */
+    private int durationSeconds = 60;
+
+    /**
+     * Length of the unmeasured warm-up in seconds.
+     */
+    private int warmupSeconds = 10;
+
+    /**
+     * Fraction of messages, from 0 to 1, that are serialized tweets rather than raw JPEG attachments.
+     */
+    private double tweetRatio = 0.1;
+
+    /**
+     * Size distribution of the JPEG attachments: "fixed" (always minSize), "uniform" (between minSize and maxSize)
+     * or "lognormal" (around medianSize, clamped to minSize and maxSize).
+     */
+    private String sizeDistribution = "lognormal";
+
+    private int minSize = 8 * 1024;
+
+    private int medianSize = 64 * 1024;
+
+    private int maxSize = 1024 * 1024;
+
+    /**
+     * Spread of the lognormal size distribution.
+     */
+    private double sizeSigma = 0.5;
+
+    /**
+     * Media URL referenced by the synthetic tweets. The persistence service downloads it for every tweet.
+     */
+    private String tweetMediaUrl = "http://localhost:8080/sample.jpg";
+
+    /**
+     * Distinct screen names the synthetic tweets are spread over.
+     */
+    private int tweetSources = 20;
+
+    /**
+     * In-process target: number of threads standing in for the persistence service.
+     */
+    private int standInThreads = 4;
+
+    /**
+     * In-process target: simulated processing time per message in milliseconds.
+     */
+    private int standInServiceMillis = 5;
+
+    /**
+     * In-process target: messages waiting for a stand-in thread before sends block.
+     */
+    private int standInQueueCapacity = 1000;
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public void setQueueName(String queueName) {
+        this.queueName = queueName;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public double getTweetRatio() {
+        return tweetRatio;
+    }
+
+    public void setTweetRatio(double tweetRatio) {
+        this.tweetRatio = tweetRatio;
+    }
+
+    public String getSizeDistribution() {
+        return sizeDistribution;
+    }
+
+    public void setSizeDistribution(String sizeDistribution) {
+        this.sizeDistribution = sizeDistribution;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMedianSize() {
+        return medianSize;
+    }
+
+    public void setMedianSize(int medianSize) {
+        this.medianSize = medianSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public double getSizeSigma() {
+        return sizeSigma;
+    }
+
+    public void setSizeSigma(double sizeSigma) {
+        this.sizeSigma = sizeSigma;
+    }
+
+    public String getTweetMediaUrl() {
+        return tweetMediaUrl;
+    }
+
+    public void setTweetMediaUrl(String tweetMediaUrl) {
+        this.tweetMediaUrl = tweetMediaUrl;
+    }
+
+    public int getTweetSources() {
+        return tweetSources;
+    }
+
+    public void setTweetSources(int tweetSources) {
+        this.tweetSources = tweetSources;
+    }
+
+    public int getStandInThreads() {
+        return standInThreads;
+    }
+
+    public void setStandInThreads(int standInThreads) {
+        this.standInThreads = standInThreads;
+    }
+
+    public int getStandInServiceMillis() {
+        return standInServiceMillis;
+    }
+
+    public void setStandInServiceMillis(int standInServiceMillis) {
+        this.standInServiceMillis = standInServiceMillis;
+    }
+
+    public int getStandInQueueCapacity() {
+        return standInQueueCapacity;
+    }
+
+    public void setStandInQueueCapacity(int standInQueueCapacity) {
+        this.standInQueueCapacity = standInQueueCapacity;
+    }
+}
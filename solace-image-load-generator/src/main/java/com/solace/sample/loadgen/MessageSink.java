@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+/**
+ * Destination of the generated messages.
+ */
+public interface MessageSink {
+
+    /**
+     * Sends a message. May block when the target applies backpressure.
+     *
+     * @param payload the binary attachment
+     * @param completion notified once the target has accepted the message
+     * @throws Exception if the message could not be sent
+     */
+    void send(byte[] payload, Completion completion) throws Exception;
+
+    void close();
+
+    interface Completion {
+
+        void completed();
+
+        void failed(Exception e);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends messages at a fixed rate regardless of how quickly the target responds (open loop).
+ * <p>
+ * Latency is recorded in two histograms. The corrected one measures each message from the time it was
+ * scheduled to be sent, so time spent blocked behind a slow target counts against every message that should
+ * have gone out meanwhile. This avoids coordinated omission, where a stalled generator silently stops
+ * sampling exactly when latency is worst. The uncorrected one measures from the actual send, for comparison.
+ */
+public class OpenLoopLoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenLoopLoadGenerator.class);
+
+    // one hour, in microseconds
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final MessageSink sink;
+    private final SyntheticPayloads payloads;
+    private final LoadGeneratorProperties properties;
+
+    private final Histogram corrected = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram uncorrected = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+
+    public OpenLoopLoadGenerator(MessageSink sink, SyntheticPayloads payloads, LoadGeneratorProperties properties) {
+        this.sink = sink;
+        this.payloads = payloads;
+        this.properties = properties;
+    }
+
+    public void run() throws Exception {
+        if (properties.getRate() < 1) {
+            throw new IllegalArgumentException("loadgen.rate must be positive");
+        }
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / properties.getRate();
+        long warmupMessages = (long) properties.getWarmupSeconds() * properties.getRate();
+        long totalMessages = warmupMessages + (long) properties.getDurationSeconds() * properties.getRate();
+
+        logger.info("Sending {} msg/s to {} for {} s after a {} s warm-up",
+                properties.getRate(), properties.getTarget(), properties.getDurationSeconds(), properties.getWarmupSeconds());
+
+        long start = System.nanoTime();
+        long measureStart = start + warmupMessages * intervalNanos;
+        long measuredTweets = 0;
+
+        for (long i = 0; i < totalMessages; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+
+            boolean tweet = payloads.nextIsTweet();
+            byte[] payload = tweet ? payloads.nextTweet() : payloads.nextJpeg();
+            boolean measured = i >= warmupMessages;
+            if (measured) {
+                sentBytes.addAndGet(payload.length);
+                if (tweet) {
+                    measuredTweets++;
+                }
+            }
+
+            outstanding.incrementAndGet();
+            try {
+                sink.send(payload, new Sample(intendedStart, System.nanoTime(), measured));
+            } catch (Exception e) {
+                outstanding.decrementAndGet();
+                failed.incrementAndGet();
+                logger.warn("Send failed", e);
+            }
+        }
+
+        long sendEnd = System.nanoTime();
+        awaitOutstanding(TimeUnit.SECONDS.toNanos(30));
+        report(sendEnd - measureStart, measuredTweets, System.out);
+    }
+
+    private void awaitOutstanding(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (outstanding.get() > 0) {
+            logger.warn("{} message(s) were still unacknowledged at the end of the run", outstanding.get());
+        }
+    }
+
+    private void report(long measuredNanos, long measuredTweets, PrintStream out) {
+        double seconds = measuredNanos / 1e9;
+        long count = corrected.getTotalCount();
+
+        out.println();
+        out.printf("Completed %d message(s) in %.1f s: %.1f msg/s, %.2f MB/s, %d tweet(s), %d failed%n",
+                count, seconds, count / seconds, sentBytes.get() / seconds / (1024 * 1024), measuredTweets, failed.get());
+        out.println();
+        out.println("Latency from scheduled send, corrected for coordinated omission (ms):");
+        printSummary(corrected, out);
+        out.println("Latency from actual send, uncorrected (ms):");
+        printSummary(uncorrected, out);
+        out.println();
+        out.println("Corrected latency distribution (ms):");
+        corrected.outputPercentileDistribution(out, 1000.0);
+    }
+
+    private static void printSummary(Histogram histogram, PrintStream out) {
+        out.printf("  p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private class Sample implements MessageSink.Completion {
+
+        private final long intendedStart;
+        private final long actualStart;
+        private final boolean measured;
+
+        Sample(long intendedStart, long actualStart, boolean measured) {
+            this.intendedStart = intendedStart;
+            this.actualStart = actualStart;
+            this.measured = measured;
+        }
+
+        @Override
+        public void completed() {
+            long end = System.nanoTime();
+            if (measured) {
+                corrected.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, (end - intendedStart) / 1000));
+                uncorrected.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, (end - actualStart) / 1000));
+            }
+            outstanding.decrementAndGet();
+        }
+
+        @Override
+        public void failed(Exception e) {
+            failed.incrementAndGet();
+            outstanding.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+import com.solacesystems.jcsmp.*;
+
+/**
+ * Publishes each payload as a guaranteed message to the image queue. A message completes when the broker
+ * acknowledges it through the streaming publish callbacks.
+ */
+public class SolaceMessageSink implements MessageSink, JCSMPStreamingPublishCorrelatingEventHandler {
+
+    private final JCSMPSession session;
+    private final Queue queue;
+    private XMLMessageProducer producer;
+
+    public SolaceMessageSink(SpringJCSMPFactory solaceFactory, String queueName) throws JCSMPException {
+        this.session = solaceFactory.createSession();
+        this.queue = JCSMPFactory.onlyInstance().createQueue(queueName);
+    }
+
+    /**
+     * Connects to the broker and opens the producer. Must be called before the first {@link #send}.
+     */
+    public void start() throws JCSMPException {
+        session.connect();
+        producer = session.getMessageProducer(this);
+    }
+
+    @Override
+    public void send(byte[] payload, Completion completion) throws JCSMPException {
+        BytesXMLMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesXMLMessage.class);
+        msg.writeAttachment(payload);
+        msg.setDeliveryMode(DeliveryMode.PERSISTENT);
+        msg.setSenderTimestamp(System.currentTimeMillis());
+        msg.setCorrelationKey(completion);
+        producer.send(msg, queue);
+    }
+
+    @Override
+    public void close() {
+        if (producer != null) {
+            producer.close();
+        }
+        session.closeSession();
+    }
+
+    @Override
+    public void responseReceived(String messageID) {
+        // completions are reported through responseReceivedEx
+    }
+
+    @Override
+    public void handleError(String messageID, JCSMPException cause, long timestamp) {
+        // errors are reported through handleErrorEx
+    }
+
+    @Override
+    public void responseReceivedEx(Object key) {
+        ((Completion) key).completed();
+    }
+
+    @Override
+    public void handleErrorEx(Object key, JCSMPException cause, long timestamp) {
+        if (key instanceof Completion) {
+            ((Completion) key).failed(cause);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.loadgen;
+
+import twitter4j.Status;
+import twitter4j.TwitterException;
+import twitter4j.TwitterObjectFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Pre-built message payloads matching what the persistence service receives: raw JPEG attachments and
+ * Java-serialized {@link Status} tweets. Payloads are generated up front so that producing them does not
+ * perturb the send schedule.
+ */
+public class SyntheticPayloads {
+
+    private static final int JPEG_POOL_SIZE = 256;
+
+    // largest comment segment payload: the 16-bit length field includes its own two bytes
+    private static final int MAX_COMMENT_DATA = 65533;
+
+    private final byte[][] jpegs;
+    private final byte[][] tweets;
+    private final double tweetRatio;
+    private final Random random = new Random(42);
+
+    public SyntheticPayloads(LoadGeneratorProperties properties) throws IOException, TwitterException {
+        this.tweetRatio = properties.getTweetRatio();
+
+        byte[] baseJpeg = encodeBaseJpeg();
+        jpegs = new byte[JPEG_POOL_SIZE][];
+        for (int i = 0; i < jpegs.length; i++) {
+            jpegs[i] = padJpeg(baseJpeg, nextSize(properties));
+        }
+
+        tweets = new byte[Math.max(1, properties.getTweetSources())][];
+        for (int i = 0; i < tweets.length; i++) {
+            tweets[i] = serialize(createTweet(i, "loadgen_" + i, properties.getTweetMediaUrl()));
+        }
+    }
+
+    /**
+     * @return true if the next message should be a tweet, according to the configured mix
+     */
+    public boolean nextIsTweet() {
+        return random.nextDouble() < tweetRatio;
+    }
+
+    public byte[] nextJpeg() {
+        return jpegs[random.nextInt(jpegs.length)];
+    }
+
+    public byte[] nextTweet() {
+        return tweets[random.nextInt(tweets.length)];
+    }
+
+    private int nextSize(LoadGeneratorProperties properties) {
+        int size;
+        switch (properties.getSizeDistribution()) {
+            case "fixed":
+                return properties.getMinSize();
+            case "uniform":
+                size = properties.getMinSize()
+                        + random.nextInt(Math.max(1, properties.getMaxSize() - properties.getMinSize()));
+                break;
+            case "lognormal":
+                size = (int) (properties.getMedianSize() * Math.exp(properties.getSizeSigma() * random.nextGaussian()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown size distribution: " + properties.getSizeDistribution());
+        }
+        return Math.max(properties.getMinSize(), Math.min(properties.getMaxSize(), size));
+    }
+
+    private byte[] encodeBaseJpeg() throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Grows a valid JPEG to roughly the target size by inserting comment (COM) segments right after SOI,
+     * so the result still decodes and carries its SOF and EOI markers.
+     */
+    private static byte[] padJpeg(byte[] baseJpeg, int targetSize) {
+        int padding = targetSize - baseJpeg.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(targetSize, baseJpeg.length));
+        out.write(baseJpeg, 0, 2);
+        while (padding >= 4) {
+            int data = Math.min(padding - 4, MAX_COMMENT_DATA);
+            out.write(0xFF);
+            out.write(0xFE);
+            out.write((data + 2) >> 8);
+            out.write((data + 2) & 0xFF);
+            out.write(new byte[data], 0, data);
+            padding -= data + 4;
+        }
+        out.write(baseJpeg, 2, baseJpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static Status createTweet(long id, String screenName, String mediaUrl) throws TwitterException {
+        String createdAt = new SimpleDateFormat("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH).format(new Date());
+        String json = "{\"id\":" + id + ",\"text\":\"synthetic\",\"created_at\":\"" + createdAt + "\","
+                + "\"user\":{\"id\":" + id + ",\"screen_name\":\"" + screenName + "\",\"name\":\"" + screenName + "\"},"
+                + "\"entities\":{\"media\":[{\"id\":" + id + ",\"indices\":[0,1],\"type\":\"photo\","
+                + "\"media_url\":\"" + mediaUrl + "\",\"media_url_https\":\"" + mediaUrl + "\","
+                + "\"url\":\"" + mediaUrl + "\",\"display_url\":\"" + mediaUrl + "\",\"expanded_url\":\"" + mediaUrl + "\","
+                + "\"sizes\":{}}]}}";
+        return TwitterObjectFactory.createStatus(json);
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+}
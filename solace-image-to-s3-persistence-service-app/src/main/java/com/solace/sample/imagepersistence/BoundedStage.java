@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Processor} that applies a blocking step to each item, with at most {@code concurrency} items
+ * in the stage at once.
+ * <p>
+ * The stage requests {@code concurrency} items from upstream and one more each time an item leaves it, either
+ * handed downstream or finished by the step, so results waiting for downstream demand count against the limit
+ * too: a slow stage holds back every stage before it. Steps run on the given executor, typically one virtual
+ * thread per item, and results are passed on in completion order.
+ *
+ * @param <T> type of the items received
+ * @param <R> type of the items passed on
+ */
+public class BoundedStage<T, R> implements Flow.Processor<T, R> {
+
+    /**
+     * Processing of one item.
+     */
+    public interface Step<T, R> {
+
+        /**
+         * @return the item to pass on, or null if the item was fully handled here
+         * @throws Exception if the item could not be processed; it is then dropped from the stream
+         */
+        R apply(T item) throws Exception;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedStage.class);
+
+    private final String name;
+    private final int concurrency;
+    private final Step<T, R> step;
+    private final Executor executor;
+
+    private final Queue<R> results = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger credit = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger drainers = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super R> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private boolean terminated;
+
+    public BoundedStage(String name, int concurrency, Executor executor, Step<T, R> step) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Stage " + name + " needs a positive concurrency");
+        }
+        this.name = name;
+        this.concurrency = concurrency;
+        this.executor = executor;
+        this.step = step;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        if (downstream != null) {
+            throw new IllegalStateException("Stage " + name + " already has a subscriber");
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                long current;
+                do {
+                    current = demand.get();
+                } while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription s = upstream;
+                if (s != null) {
+                    s.cancel();
+                }
+            }
+        });
+        requestInitial();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        upstream = subscription;
+        requestInitial();
+    }
+
+    @Override
+    public void onNext(T item) {
+        active.incrementAndGet();
+        executor.execute(() -> {
+            R result = null;
+            try {
+                result = step.apply(item);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.error("Stage {} could not process an item", name, e);
+            }
+            if (result != null) {
+                results.offer(result);
+                waiting.incrementAndGet();
+            } else {
+                credit.incrementAndGet();
+            }
+            active.decrementAndGet();
+            drain();
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return items being processed by the step
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return processed items waiting for downstream demand
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void requestInitial() {
+        Flow.Subscription s = upstream;
+        if (s != null && downstream != null && started.compareAndSet(false, true)) {
+            s.request(concurrency);
+        }
+    }
+
+    private void drain() {
+        if (drainers.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super R> s = downstream;
+            if (s != null && !cancelled && !terminated) {
+                while (demand.get() > 0) {
+                    R result = results.poll();
+                    if (result == null) {
+                        break;
+                    }
+                    waiting.decrementAndGet();
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    credit.incrementAndGet();
+                    s.onNext(result);
+                }
+
+                int n = credit.getAndSet(0);
+                Flow.Subscription up = upstream;
+                if (n > 0 && up != null && !upstreamDone) {
+                    up.request(n);
+                }
+
+                if (upstreamDone && active.get() == 0 && results.isEmpty()) {
+                    terminated = true;
+                    if (upstreamError != null) {
+                        s.onError(upstreamError);
+                    } else {
+                        s.onComplete();
+                    }
+                }
+            }
+            missed = drainers.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
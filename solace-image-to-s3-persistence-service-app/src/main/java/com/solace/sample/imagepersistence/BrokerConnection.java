@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.SessionEventArgs;
+import com.solacesystems.jcsmp.SessionEventHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection state of the session to one broker, kept up to date by the session's events.
+ * <p>
+ * A reconnect is timed from the first RECONNECTING event to RECONNECTED. Once the session is back, the flows the
+ * application started through {@link #startFlow(FlowReceiver)} are started again right away rather than waiting
+ * for the API to resume them; flows stopped through {@link #stopFlow(FlowReceiver)} stay stopped. Messages the
+ * broker marks as redelivered, typically those left unacknowledged when the connection dropped, are counted as
+ * they arrive.
+ */
+public class BrokerConnection implements SessionEventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrokerConnection.class);
+
+    private final String name;
+    // registered flows and whether the application wants them running
+    private final Map<FlowReceiver, FlowState> flows = new ConcurrentHashMap<>();
+    private Executor resumer;
+
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong redelivered = new AtomicLong();
+    private final AtomicLong totalDowntimeMillis = new AtomicLong();
+    private volatile long lastDowntimeMillis;
+    private volatile long maxDowntimeMillis;
+
+    // System.nanoTime() when the connection was lost, 0 while connected
+    private volatile long downSince;
+    private volatile boolean failed;
+
+    public BrokerConnection(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param resumer runs the restart of the flows after a reconnect, off the session's I/O thread
+     */
+    BrokerConnection(String name, Executor resumer) {
+        this.name = name;
+        this.resumer = resumer;
+    }
+
+    /**
+     * Starts a flow, and starts it again whenever the session reconnects until it is stopped through
+     * {@link #stopFlow(FlowReceiver)}.
+     */
+    public void startFlow(FlowReceiver flow) throws JCSMPException {
+        FlowState state = flows.computeIfAbsent(flow, FlowState::new);
+        synchronized (state) {
+            state.running = true;
+            flow.start();
+        }
+    }
+
+    /**
+     * Stops a flow, which then stays stopped across reconnects until started again.
+     */
+    public void stopFlow(FlowReceiver flow) {
+        FlowState state = flows.computeIfAbsent(flow, FlowState::new);
+        synchronized (state) {
+            state.running = false;
+            flow.stop();
+        }
+    }
+
+    /**
+     * Stops all flows started through this connection.
+     */
+    public void stopFlows() {
+        for (FlowReceiver flow : flows.keySet()) {
+            stopFlow(flow);
+        }
+    }
+
+    @Override
+    public void handleEvent(SessionEventArgs event) {
+        switch (event.getEvent()) {
+            case RECONNECTING:
+                if (downSince == 0) {
+                    downSince = System.nanoTime();
+                    logger.warn("Connection to broker {} lost, reconnecting: {}", name, event.getInfo());
+                }
+                break;
+
+            case RECONNECTED:
+                long downtimeMillis = downSince == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - downSince);
+                downSince = 0;
+                reconnects.incrementAndGet();
+                totalDowntimeMillis.addAndGet(downtimeMillis);
+                lastDowntimeMillis = downtimeMillis;
+                maxDowntimeMillis = Math.max(maxDowntimeMillis, downtimeMillis);
+                logger.info("Reconnected to broker {} after {} ms", name, downtimeMillis);
+                resumeFlows();
+                break;
+
+            case DOWN_ERROR:
+                if (downSince == 0) {
+                    downSince = System.nanoTime();
+                }
+                failed = true;
+                logger.error("Session to broker {} is down and will not reconnect: {}", name, event.getInfo(),
+                        event.getException());
+                break;
+
+            default:
+                logger.info("Session event from broker {}: {}", name, event);
+        }
+    }
+
+    /**
+     * Counts a message received from the broker.
+     */
+    public void recordDelivery(BytesXMLMessage msg) {
+        delivered.incrementAndGet();
+        if (msg.getRedelivered()) {
+            redelivered.incrementAndGet();
+        }
+    }
+
+    private void resumeFlows() {
+        if (flows.isEmpty()) {
+            return;
+        }
+        // events arrive on the session's I/O thread, which must not block on the flows it serves
+        resumer().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (FlowState state : flows.values()) {
+                    // checked under the lock, in case the flow is being stopped
+                    synchronized (state) {
+                        try {
+                            if (state.running && !state.flow.isClosed()) {
+                                state.flow.start();
+                            }
+                        } catch (JCSMPException e) {
+                            logger.error("Could not resume a flow of broker {}", name, e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized Executor resumer() {
+        if (resumer == null) {
+            // one thread for the life of the connection rather than one per reconnect
+            resumer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "resume-" + name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return resumer;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isConnected() {
+        return downSince == 0;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return how long the current outage has lasted, or 0 while connected
+     */
+    public long getCurrentDowntimeMillis() {
+        long since = downSince;
+        return since == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    public long getTotalDowntimeMillis() {
+        return totalDowntimeMillis.get();
+    }
+
+    public long getLastDowntimeMillis() {
+        return lastDowntimeMillis;
+    }
+
+    public long getMaxDowntimeMillis() {
+        return maxDowntimeMillis;
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public long getRedeliveredCount() {
+        return redelivered.get();
+    }
+
+    /**
+     * Whether the application wants a flow running. Starts and stops of the flow are serialized on this object
+     * rather than on the flow, whose monitor belongs to the API.
+     */
+    private static class FlowState {
+
+        private final FlowReceiver flow;
+        private boolean running;
+
+        FlowState(FlowReceiver flow) {
+            this.flow = flow;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hands out the {@link BrokerConnection} session event handler of each broker session and keeps track of them,
+ * so that their reconnects and downtime can be published as metrics.
+ */
+@Component
+public class BrokerConnectionMonitor {
+
+    private final List<BrokerConnection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param broker name of the broker, used in logs and metric names
+     * @return a new event handler for a session to the broker
+     */
+    public BrokerConnection connection(String broker) {
+        BrokerConnection connection = new BrokerConnection(broker);
+        connections.add(connection);
+        return connection;
+    }
+
+    public List<BrokerConnection> getConnections() {
+        return Collections.unmodifiableList(new ArrayList<>(connections));
+    }
+}
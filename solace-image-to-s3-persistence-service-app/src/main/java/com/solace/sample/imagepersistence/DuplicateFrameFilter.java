@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses frames that look like a frame recently uploaded from the same source, such as the long runs of
+ * nearly identical frames a robot streams while nothing moves.
+ * <p>
+ * Each frame's {@link PerceptualHash} is compared with the hashes of the last {@code framesPerSource} frames
+ * kept from its source, younger than {@code maxAgeMillis}. The window is small, so it is a ring scanned with
+ * XOR and bit counts rather than a BK-tree or LSH buckets, whose upkeep as frames expire would cost more than
+ * the scan. Only kept frames enter the window: a scene that drifts slowly is uploaded again once it has drifted
+ * further than {@code maxDistance} from the last kept frame. Duplicates are handled according to the
+ * {@link Policy}.
+ */
+public class DuplicateFrameFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateFrameFilter.class);
+
+    public enum Policy {
+        /** Upload every frame. */
+        OFF,
+        /** Keep one in every {@code sampleEvery} duplicates of a source and drop the rest. */
+        SAMPLE,
+        /** Drop every duplicate. */
+        DROP
+    }
+
+    private final Policy policy;
+    private final int maxDistance;
+    private final int framesPerSource;
+    private final long maxAgeNanos;
+    private final int sampleEvery;
+    private final int maxSources;
+
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong unhashable = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+
+    public DuplicateFrameFilter(Policy policy, int maxDistance, int framesPerSource, long maxAgeMillis,
+                                int sampleEvery, int maxSources) {
+        if (maxDistance < 0 || maxDistance > 64 || framesPerSource < 1) {
+            throw new IllegalArgumentException("Need a distance between 0 and 64 and at least one frame per source");
+        }
+        this.policy = policy;
+        this.maxDistance = maxDistance;
+        this.framesPerSource = framesPerSource;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxSources = maxSources;
+    }
+
+    public static DuplicateFrameFilter fromEnvironment() {
+        DuplicateFrameFilter filter = new DuplicateFrameFilter(
+                Policy.valueOf(Utils.getEnvironmentValue("FRAME_DEDUP", "off").toUpperCase()),
+                Utils.getEnvironmentIntValue("FRAME_DEDUP_MAX_DISTANCE", 6),
+                Utils.getEnvironmentIntValue("FRAME_DEDUP_WINDOW", 32),
+                Utils.getEnvironmentLongValue("FRAME_DEDUP_MAX_AGE_MS", 10000),
+                Utils.getEnvironmentIntValue("FRAME_DEDUP_SAMPLE_EVERY", 10),
+                Utils.getEnvironmentIntValue("FRAME_DEDUP_MAX_SOURCES", 10000));
+        if (filter.isEnabled()) {
+            logger.info("Suppressing frames within {} bits of the last {} frames of their source ({} ms), policy {}",
+                    filter.maxDistance, filter.framesPerSource, TimeUnit.NANOSECONDS.toMillis(filter.maxAgeNanos),
+                    filter.policy);
+        }
+        return filter;
+    }
+
+    public boolean isEnabled() {
+        return policy != Policy.OFF;
+    }
+
+    /**
+     * Checks a frame against the recent frames of its source, and remembers it if it is kept.
+     *
+     * @param jpeg the frame, from its position to its limit. The buffer is not modified.
+     * @return true if the frame should not be uploaded
+     */
+    public boolean suppress(String source, ByteBuffer jpeg) {
+        if (!isEnabled()) {
+            return false;
+        }
+        frames.incrementAndGet();
+
+        long start = System.nanoTime();
+        long hash;
+        try {
+            hash = PerceptualHash.dHash(jpeg);
+        } catch (IOException | RuntimeException e) {
+            // leave broken images to the JPEG validator
+            unhashable.incrementAndGet();
+            logger.debug("Could not hash frame from {}: {}", source, e.toString());
+            return false;
+        }
+        long now = System.nanoTime();
+        hashNanos.addAndGet(now - start);
+
+        Window window = windows.get(source);
+        if (window == null) {
+            if (windows.size() >= maxSources) {
+                evictIdle(now);
+            }
+            if (windows.size() >= maxSources) {
+                return false;
+            }
+            window = windows.computeIfAbsent(source, s -> new Window(framesPerSource));
+        }
+
+        long duplicate = window.checkAndAdd(hash, now);
+        if (duplicate == 0 || (policy == Policy.SAMPLE && duplicate % sampleEvery == 0)) {
+            return false;
+        }
+        suppressed.incrementAndGet();
+        return true;
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * @return frames that could not be decoded for hashing; they are never suppressed
+     */
+    public long getUnhashableCount() {
+        return unhashable.get();
+    }
+
+    /**
+     * @return average time spent decoding and hashing a frame, in microseconds
+     */
+    public double getAverageHashMicros() {
+        long hashed = frames.get() - unhashable.get();
+        return hashed == 0 ? 0 : hashNanos.get() / 1000.0 / hashed;
+    }
+
+    public int getTrackedSourceCount() {
+        return windows.size();
+    }
+
+    private void evictIdle(long now) {
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            if (now - entry.getValue().lastSeen() > maxAgeNanos) {
+                windows.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Hashes of the last frames kept from one source.
+     */
+    private class Window {
+
+        private final long[] hashes;
+        private final long[] times;
+        private int next;
+        private int size;
+        private long lastSeen;
+        private long duplicates;
+
+        Window(int capacity) {
+            this.hashes = new long[capacity];
+            this.times = new long[capacity];
+        }
+
+        /**
+         * @return 0 if no recent frame is within the distance, and the hash was added; otherwise the number of
+         * duplicates seen from this source so far, this one included
+         */
+        synchronized long checkAndAdd(long hash, long now) {
+            lastSeen = now;
+            for (int i = 0; i < size; i++) {
+                if (now - times[i] <= maxAgeNanos && Long.bitCount(hashes[i] ^ hash) <= maxDistance) {
+                    return ++duplicates;
+                }
+            }
+            hashes[next] = hash;
+            times[next] = now;
+            next = (next + 1) % hashes.length;
+            size = Math.min(size + 1, hashes.length);
+            return 0;
+        }
+
+        synchronized long lastSeen() {
+            return lastSeen;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.XMLMessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adapts the callbacks of a {@link FlowReceiver} into a {@link Flow.Publisher} of its messages, for a single
+ * subscriber.
+ * <p>
+ * Messages are buffered until the subscriber requests them. The flow is stopped once {@code highWatermark}
+ * messages are waiting and restarted once the subscriber has drained the buffer to {@code lowWatermark}, so
+ * downstream demand, not the broker, sets the pace. Messages already on their way when the flow is stopped are
+ * still buffered: the buffer exceeds the high watermark by at most the flow's window. The publisher alone starts
+ * and stops the flow, so it should not also be registered with {@link BrokerConnection}.
+ */
+public class FlowReceiverPublisher implements Flow.Publisher<BytesXMLMessage>, XMLMessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowReceiverPublisher.class);
+
+    private final String name;
+    private final int highWatermark;
+    private final int lowWatermark;
+
+    private final Queue<BytesXMLMessage> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger drainers = new AtomicInteger();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private volatile Flow.Subscriber<? super BytesXMLMessage> subscriber;
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+    private boolean terminated;
+
+    private final ReentrantLock flowLock = new ReentrantLock();
+    private final AtomicBoolean flowUpdatePending = new AtomicBoolean();
+    private FlowReceiver flow;
+    private volatile boolean paused = true;
+    private final AtomicLong pauses = new AtomicLong();
+
+    public FlowReceiverPublisher(String name, int highWatermark, int lowWatermark) {
+        if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("Need 0 <= low watermark < high watermark");
+        }
+        this.name = name;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super BytesXMLMessage> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Publisher of flow " + name + " already has a subscriber"));
+            return;
+        }
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancelled = true;
+                    subscriber.onError(new IllegalArgumentException("Requested " + n + " messages"));
+                    return;
+                }
+                long current;
+                do {
+                    current = demand.get();
+                } while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                updateFlowLater();
+            }
+        });
+        drain();
+    }
+
+    /**
+     * Starts delivery from the flow. The flow must have been created with this publisher as its listener.
+     */
+    public void start(FlowReceiver flow) {
+        flowLock.lock();
+        try {
+            this.flow = flow;
+        } finally {
+            flowLock.unlock();
+        }
+        updateFlow();
+    }
+
+    /**
+     * Stops delivery and completes the subscriber once the buffered messages have been handed to it.
+     */
+    public void complete() {
+        completed = true;
+        updateFlow();
+        drain();
+    }
+
+    @Override
+    public void onReceive(BytesXMLMessage msg) {
+        buffer.offer(msg);
+        // even when paused: the API restarts a stopped flow when the session reconnects
+        if (buffered.incrementAndGet() >= highWatermark) {
+            updateFlowLater();
+        }
+        drain();
+    }
+
+    @Override
+    public void onException(JCSMPException e) {
+        // the flow is down; the session reconnects it, so the stream stays open
+        logger.warn("Flow {} received exception", name, e);
+    }
+
+    public int getBufferedCount() {
+        return buffered.get();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return how many times the flow was stopped because the subscriber fell behind
+     */
+    public long getPauseCount() {
+        return pauses.get();
+    }
+
+    private void drain() {
+        if (drainers.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super BytesXMLMessage> s = subscriber;
+            if (s != null && !cancelled) {
+                while (demand.get() > 0) {
+                    BytesXMLMessage msg = buffer.poll();
+                    if (msg == null) {
+                        break;
+                    }
+                    buffered.decrementAndGet();
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    s.onNext(msg);
+                }
+                if (completed && buffer.isEmpty() && !terminated) {
+                    terminated = true;
+                    s.onComplete();
+                }
+                if (paused && buffered.get() <= lowWatermark && !completed) {
+                    updateFlowLater();
+                }
+            }
+            missed = drainers.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Starts or stops the flow from another thread: the dispatching thread that delivers messages, and the
+     * subscriber's threads, must not wait on the broker.
+     */
+    private void updateFlowLater() {
+        if (flowUpdatePending.compareAndSet(false, true)) {
+            Thread.startVirtualThread(() -> {
+                flowUpdatePending.set(false);
+                updateFlow();
+            });
+        }
+    }
+
+    private void updateFlow() {
+        flowLock.lock();
+        try {
+            if (flow == null) {
+                return;
+            }
+            int waiting = buffered.get();
+            boolean pause = completed || cancelled || waiting >= highWatermark || (paused && waiting > lowWatermark);
+            if (pause) {
+                // also stops a flow restarted by a reconnect while it was paused
+                flow.stop();
+                if (!paused) {
+                    paused = true;
+                    pauses.incrementAndGet();
+                    logger.debug("Flow {} paused with {} messages buffered", name, waiting);
+                }
+            } else {
+                flow.start();
+                if (paused) {
+                    paused = false;
+                    logger.debug("Flow {} resumed with {} messages buffered", name, waiting);
+                }
+            }
+        } catch (JCSMPException e) {
+            logger.warn("Could not update flow {}", name, e);
+        } finally {
+            flowLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-source {@link FrameSamplingPolicy frame sampling}, to keep upload volume within a bandwidth or storage budget.
+ * <p>
+ * Every source follows the default policy unless it has one of its own. Both can be changed at any time, through
+ * {@code /sources/sampling}. Deciding on a frame takes no lock: the policies are read from a concurrent map and a
+ * volatile field, and each source's sampling state is a single counter or timestamp moved forward by
+ * compare-and-set. A policy change replaces the source's state, so the new policy starts afresh. States of sources
+ * following the default policy live in a bounded map like {@link SourceRateLimiter}'s buckets: states idle for
+ * {@code idleMillis} are swept out when it is full, and sources that still find no room share one state. Sources
+ * with a policy of their own are always tracked, so their number is capped by {@code maxPolicies}: a policy for one
+ * more source is refused rather than letting the maps grow without bound.
+ */
+public class FrameSampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameSampler.class);
+
+    static final String OVERFLOW_SOURCE = "(other)";
+
+    static final int DEFAULT_MAX_POLICIES = 1000;
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxSources;
+    private final int maxPolicies;
+    private final long idleNanos;
+
+    private volatile FrameSamplingPolicy defaultPolicy;
+    private final ConcurrentHashMap<String, FrameSamplingPolicy> policies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SamplingState> states = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public FrameSampler(FrameSamplingPolicy defaultPolicy, int maxSources, long idleMillis) {
+        this(defaultPolicy, maxSources, DEFAULT_MAX_POLICIES, idleMillis);
+    }
+
+    /**
+     * @param maxPolicies most sources that may have a policy of their own
+     */
+    public FrameSampler(FrameSamplingPolicy defaultPolicy, int maxSources, int maxPolicies, long idleMillis) {
+        this.defaultPolicy = defaultPolicy;
+        this.maxSources = maxSources;
+        this.maxPolicies = maxPolicies;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    public static FrameSampler fromEnvironment() {
+        FrameSampler sampler = new FrameSampler(
+                FrameSamplingPolicy.parse(Utils.getEnvironmentValue("FRAME_SAMPLING", "all")),
+                Utils.getEnvironmentIntValue("FRAME_SAMPLING_MAX_SOURCES", 10000),
+                Utils.getEnvironmentIntValue("FRAME_SAMPLING_MAX_POLICIES", DEFAULT_MAX_POLICIES),
+                Utils.getEnvironmentLongValue("FRAME_SAMPLING_IDLE_MS", 60000));
+        // e.g. FRAME_SAMPLING_SOURCES=robot-1=every:5,robot-2=rate:0.5
+        String sources = Utils.getEnvironmentValue("FRAME_SAMPLING_SOURCES", "");
+        for (String entry : sources.split(",")) {
+            int equals = entry.lastIndexOf('=');
+            if (equals > 0) {
+                sampler.setPolicy(entry.substring(0, equals).trim(), FrameSamplingPolicy.parse(entry.substring(equals + 1)));
+            } else if (!entry.trim().isEmpty()) {
+                throw new IllegalArgumentException("Expected source=policy in FRAME_SAMPLING_SOURCES, not " + entry);
+            }
+        }
+        if (sampler.isActive()) {
+            logger.info("Sampling frames: {} by default, {} for {} sources", sampler.defaultPolicy,
+                    sampler.policies, sampler.policies.size());
+        }
+        return sampler;
+    }
+
+    /**
+     * @return false while every frame of every source is kept
+     */
+    public boolean isActive() {
+        return !defaultPolicy.keepsAll() || !policies.isEmpty();
+    }
+
+    /**
+     * @return true if the source's policy keeps this frame
+     */
+    public boolean keep(String source) {
+        if (!isActive()) {
+            return true;
+        }
+
+        FrameSamplingPolicy policy = policies.get(source);
+        boolean ownPolicy = policy != null;
+        if (!ownPolicy) {
+            policy = defaultPolicy;
+        }
+        if (policy.keepsAll()) {
+            kept.incrementAndGet();
+            return true;
+        }
+
+        long now = System.nanoTime();
+        boolean keep = state(source, policy, ownPolicy, now).keep(now);
+        (keep ? kept : skipped).incrementAndGet();
+        return keep;
+    }
+
+    public FrameSamplingPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public void setDefaultPolicy(FrameSamplingPolicy policy) {
+        logger.info("Default frame sampling policy is now {}", policy);
+        defaultPolicy = policy;
+    }
+
+    /**
+     * @return the source's own policy, or null if it follows the default one
+     */
+    public FrameSamplingPolicy getPolicy(String source) {
+        return policies.get(source);
+    }
+
+    /**
+     * @throws IllegalStateException if the source has no policy yet and {@code maxPolicies} sources already do
+     */
+    public synchronized void setPolicy(String source, FrameSamplingPolicy policy) {
+        // only policy changes are serialized, frames are still decided without a lock
+        if (policies.size() >= maxPolicies && !policies.containsKey(source)) {
+            throw new IllegalStateException("At most " + maxPolicies
+                    + " sources can have a sampling policy of their own, remove one first");
+        }
+        logger.info("Frame sampling policy of {} is now {}", source, policy);
+        policies.put(source, policy);
+    }
+
+    /**
+     * Makes the source follow the default policy again.
+     *
+     * @return its previous policy, or null if it had none
+     */
+    public FrameSamplingPolicy removePolicy(String source) {
+        FrameSamplingPolicy removed = policies.remove(source);
+        if (removed != null) {
+            logger.info("Frame sampling policy of {} removed, it follows the default again", source);
+        }
+        return removed;
+    }
+
+    /**
+     * @return the sources with a policy of their own, sorted by name
+     */
+    public Map<String, FrameSamplingPolicy> getPolicies() {
+        return Collections.unmodifiableMap(new TreeMap<>(policies));
+    }
+
+    /**
+     * @return frames kept and skipped by the current state of each sampled source, most skipped first
+     */
+    public List<SourceSampling> getSamplingStates(int limit) {
+        List<SourceSampling> sampling = new ArrayList<>();
+        for (Map.Entry<String, SamplingState> entry : states.entrySet()) {
+            SamplingState state = entry.getValue();
+            sampling.add(new SourceSampling(entry.getKey(), state.policy.toString(), state.kept.get(),
+                    state.skipped.get()));
+        }
+        Collections.sort(sampling, new Comparator<SourceSampling>() {
+            @Override
+            public int compare(SourceSampling a, SourceSampling b) {
+                return Long.compare(b.getSkipped(), a.getSkipped());
+            }
+        });
+        return sampling.size() > limit ? sampling.subList(0, limit) : sampling;
+    }
+
+    public long getKeptCount() {
+        return kept.get();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public int getTrackedSourceCount() {
+        return states.size();
+    }
+
+    private SamplingState state(String source, FrameSamplingPolicy policy, boolean ownPolicy, long now) {
+        SamplingState state = states.get(source);
+        while (true) {
+            if (state != null && state.policy == policy) {
+                return state;
+            }
+            if (state == null) {
+                // sources with a policy of their own were added on purpose and always get a state
+                if (!ownPolicy && states.size() >= maxSources) {
+                    sweep(now);
+                    if (states.size() >= maxSources) {
+                        return overflow(policy, now);
+                    }
+                }
+                SamplingState fresh = new SamplingState(policy, now);
+                state = states.putIfAbsent(source, fresh);
+                if (state == null) {
+                    return fresh;
+                }
+            } else {
+                // the policy changed since this state was created: start over under the new one
+                SamplingState fresh = new SamplingState(policy, now);
+                if (states.replace(source, state, fresh)) {
+                    return fresh;
+                }
+                state = states.get(source);
+            }
+        }
+    }
+
+    private SamplingState overflow(FrameSamplingPolicy policy, long now) {
+        SamplingState state = states.get(OVERFLOW_SOURCE);
+        if (state != null && state.policy == policy) {
+            return state;
+        }
+        SamplingState fresh = new SamplingState(policy, now);
+        if (state == null ? states.putIfAbsent(OVERFLOW_SOURCE, fresh) == null
+                : states.replace(OVERFLOW_SOURCE, state, fresh)) {
+            return fresh;
+        }
+        SamplingState current = states.get(OVERFLOW_SOURCE);
+        return current != null ? current : fresh;
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, SamplingState> entry : states.entrySet()) {
+            if (now - entry.getValue().lastSeen > idleNanos) {
+                states.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sampling of one source under one policy, kept in a single atomic: the number of frames seen for
+     * {@code every:N}, the GCRA theoretical arrival time (as in {@link SourceTokenBucket}) for {@code rate:X}, and the
+     * time of the last kept frame for {@code interval:MS}.
+     */
+    private static class SamplingState {
+
+        private final FrameSamplingPolicy policy;
+        private final AtomicLong value;
+        private final AtomicLong kept = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private volatile long lastSeen;
+
+        SamplingState(FrameSamplingPolicy policy, long now) {
+            this.policy = policy;
+            this.lastSeen = now;
+            this.value = new AtomicLong(policy.getType() == FrameSamplingPolicy.Type.INTERVAL
+                    ? now - policy.getIntervalNanos() : policy.getType() == FrameSamplingPolicy.Type.RATE ? now : 0);
+        }
+
+        boolean keep(long now) {
+            lastSeen = now;
+            boolean keep;
+            switch (policy.getType()) {
+                case EVERY:
+                    keep = value.getAndIncrement() % policy.getEvery() == 0;
+                    break;
+                case RATE:
+                    keep = tryAcquire(now);
+                    break;
+                case INTERVAL:
+                    long last = value.get();
+                    // if another thread keeps a frame at the same moment, this one is too close to it anyway
+                    keep = now - last >= policy.getIntervalNanos() && value.compareAndSet(last, now);
+                    break;
+                default:
+                    keep = true;
+            }
+            (keep ? kept : skipped).incrementAndGet();
+            return keep;
+        }
+
+        private boolean tryAcquire(long now) {
+            long interval = policy.getIntervalNanos();
+            // a burst of up to one second's worth of frames
+            long tolerance = Math.max(interval, TimeUnit.SECONDS.toNanos(1));
+            while (true) {
+                long current = value.get();
+                long next = Math.max(current, now) + interval;
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (value.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sampling counts of one source, as reported by {@code /sources/sampling}.
+     */
+    public static class SourceSampling {
+
+        private final String source;
+        private final String policy;
+        private final long kept;
+        private final long skipped;
+
+        SourceSampling(String source, String policy, long kept, long skipped) {
+            this.source = source;
+            this.policy = policy;
+            this.kept = kept;
+            this.skipped = skipped;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public long getKept() {
+            return kept;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+}
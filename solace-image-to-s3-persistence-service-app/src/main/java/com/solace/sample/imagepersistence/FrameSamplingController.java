@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shows and changes the frame sampling policies while the service runs. Sources are passed as a request parameter
+ * rather than in the path, since screen names and robot IDs may contain dots and slashes.
+ */
+@RestController
+public class FrameSamplingController {
+
+    @Autowired private FrameSampler frameSampler;
+
+    /**
+     * @param limit maximum number of sources whose sampling counts are returned
+     * @return the default policy, the sources with a policy of their own, and the most sampled sources
+     */
+    @RequestMapping(value = "/sources/sampling", method = RequestMethod.GET)
+    public Map<String, Object> sampling(@RequestParam(value = "limit", defaultValue = "100") int limit) {
+        Map<String, Object> sampling = new LinkedHashMap<>();
+        sampling.put("default", frameSampler.getDefaultPolicy().toString());
+        Map<String, String> policies = new LinkedHashMap<>();
+        for (Map.Entry<String, FrameSamplingPolicy> entry : frameSampler.getPolicies().entrySet()) {
+            policies.put(entry.getKey(), entry.getValue().toString());
+        }
+        sampling.put("policies", policies);
+        sampling.put("kept", frameSampler.getKeptCount());
+        sampling.put("skipped", frameSampler.getSkippedCount());
+        sampling.put("sources", frameSampler.getSamplingStates(limit));
+        return sampling;
+    }
+
+    /**
+     * Sets the policy of a source, or the default policy when no source is given.
+     *
+     * @param policy {@code all}, {@code every:N}, {@code rate:FRAMES_PER_SECOND} or {@code interval:MILLIS}
+     * @return the new policy, or 409 Conflict if the source would be one too many with a policy of its own
+     */
+    @RequestMapping(value = "/sources/sampling", method = RequestMethod.PUT)
+    public Map<String, Object> setPolicy(@RequestParam(value = "source", required = false) String source,
+                                         @RequestParam("policy") String policy) {
+        FrameSamplingPolicy parsed = FrameSamplingPolicy.parse(policy);
+        if (source == null) {
+            frameSampler.setDefaultPolicy(parsed);
+        } else {
+            frameSampler.setPolicy(source, parsed);
+        }
+        return result(source, parsed);
+    }
+
+    /**
+     * Makes a source follow the default policy again.
+     */
+    @RequestMapping(value = "/sources/sampling", method = RequestMethod.DELETE)
+    public Map<String, Object> removePolicy(@RequestParam("source") String source) {
+        frameSampler.removePolicy(source);
+        return result(source, frameSampler.getDefaultPolicy());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> badRequest(IllegalArgumentException e) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", e.getMessage());
+        return error;
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Map<String, Object> tooManyPolicies(IllegalStateException e) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", e.getMessage());
+        return error;
+    }
+
+    private static Map<String, Object> result(String source, FrameSamplingPolicy policy) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("source", source == null ? "(default)" : source);
+        result.put("policy", policy.toString());
+        return result;
+    }
+}
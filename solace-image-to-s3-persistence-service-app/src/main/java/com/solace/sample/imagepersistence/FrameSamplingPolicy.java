@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many of a source's frames are kept. A policy is immutable and written as text, for the environment and the
+ * {@code /sources/sampling} endpoint:
+ * <ul>
+ * <li>{@code all}: keep every frame</li>
+ * <li>{@code every:N}: keep the first of every N frames</li>
+ * <li>{@code rate:X}: keep at most X frames per second, in bursts of up to a second's worth</li>
+ * <li>{@code interval:MS}: keep a frame only if at least MS milliseconds have passed since the last kept one</li>
+ * </ul>
+ */
+public final class FrameSamplingPolicy {
+
+    public static final FrameSamplingPolicy ALL = new FrameSamplingPolicy(Type.ALL, 1, 0, 0);
+
+    enum Type {
+        ALL, EVERY, RATE, INTERVAL
+    }
+
+    private final Type type;
+    private final long every;
+    private final double rate;
+    // rate: emission interval; interval: minimum spacing
+    private final long intervalNanos;
+
+    private FrameSamplingPolicy(Type type, long every, double rate, long intervalNanos) {
+        this.type = type;
+        this.every = every;
+        this.rate = rate;
+        this.intervalNanos = intervalNanos;
+    }
+
+    public static FrameSamplingPolicy everyNth(long n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Need to keep one in at least 1 frame, not " + n);
+        }
+        return n == 1 ? ALL : new FrameSamplingPolicy(Type.EVERY, n, 0, 0);
+    }
+
+    public static FrameSamplingPolicy maxRate(double framesPerSecond) {
+        if (!(framesPerSecond > 0) || Double.isInfinite(framesPerSecond)) {
+            throw new IllegalArgumentException("Need a positive frame rate, not " + framesPerSecond);
+        }
+        return new FrameSamplingPolicy(Type.RATE, 1, framesPerSecond,
+                Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond)));
+    }
+
+    public static FrameSamplingPolicy minInterval(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Need a positive interval, not " + millis);
+        }
+        return millis == 0 ? ALL : new FrameSamplingPolicy(Type.INTERVAL, 1, 0, TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @param text a policy as described in the class comment
+     * @throws IllegalArgumentException if the text is not a valid policy
+     */
+    public static FrameSamplingPolicy parse(String text) {
+        String policy = text.trim().toLowerCase();
+        if (policy.equals("all")) {
+            return ALL;
+        }
+        int colon = policy.indexOf(':');
+        if (colon > 0) {
+            String value = policy.substring(colon + 1).trim();
+            try {
+                switch (policy.substring(0, colon).trim()) {
+                    case "every":
+                        return everyNth(Long.parseLong(value));
+                    case "rate":
+                        return maxRate(Double.parseDouble(value));
+                    case "interval":
+                        return minInterval(Long.parseLong(value));
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number in sampling policy: " + text);
+            }
+        }
+        throw new IllegalArgumentException("Unknown sampling policy: " + text
+                + " (expected all, every:N, rate:FRAMES_PER_SECOND or interval:MILLIS)");
+    }
+
+    public boolean keepsAll() {
+        return type == Type.ALL;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    long getEvery() {
+        return every;
+    }
+
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case EVERY:
+                return "every:" + every;
+            case RATE:
+                return "rate:" + rate;
+            case INTERVAL:
+                return "interval:" + TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+            default:
+                return "all";
+        }
+    }
+}
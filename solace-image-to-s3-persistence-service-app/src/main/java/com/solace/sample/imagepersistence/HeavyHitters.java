@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate top-K of a weighted stream of keys in bounded memory.
+ * <p>
+ * Weights are accumulated in a count-min sketch, which never under-estimates a key's total. The K keys with the
+ * largest estimates are kept in a min-heap: a key enters the heap once its estimate beats the smallest one in it.
+ * Memory is {@code depth * width} counters plus K keys, however many distinct keys the stream holds.
+ * <p>
+ * Totals decay: at the end of every window all counters are halved, so the ranking follows recent traffic and a
+ * source that falls silent drops out after a few windows. Halving every counter preserves the heap order.
+ * <p>
+ * {@link #add} takes no lock in the common case: sketch counters are atomic, and only a key that is not tracked
+ * yet and whose estimate beats the smallest tracked one takes the heap's lock. Tracked keys do not update the
+ * heap on every add. Their place in it is refreshed from the sketch when the heap is read, or when the key
+ * is about to be evicted.
+ */
+public class HeavyHitters {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x85EBCA77C2B2AE63L
+    };
+
+    private final AtomicLongArray[] sketch;
+    private final int mask;
+    private final long windowMillis;
+    private final AtomicLong windowStart;
+
+    // min-heap of the top candidates, ordered by estimate, guarded by this
+    private final String[] heapKeys;
+    private final long[] heapValues;
+    // written under the lock, read without it by add
+    private final Map<String, Integer> heapIndex;
+    private int heapSize;
+
+    // smallest estimate in the heap once it is full: keys that do not beat it skip the lock
+    private volatile long admission;
+
+    /**
+     * @param k number of keys tracked
+     * @param width counters per sketch row, rounded up to a power of two
+     * @param depth sketch rows, at most 8
+     * @param windowMillis period after which all totals are halved
+     */
+    public HeavyHitters(int k, int width, int depth, long windowMillis) {
+        if (k < 1) {
+            throw new IllegalArgumentException("At least one key must be tracked");
+        }
+        if (depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("Sketch depth must be between 1 and " + SEEDS.length);
+        }
+        int roundedWidth = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.sketch = new AtomicLongArray[depth];
+        for (int row = 0; row < depth; row++) {
+            this.sketch[row] = new AtomicLongArray(roundedWidth);
+        }
+        this.mask = roundedWidth - 1;
+        this.windowMillis = windowMillis;
+        this.windowStart = new AtomicLong(System.currentTimeMillis());
+        this.heapKeys = new String[k];
+        this.heapValues = new long[k];
+        this.heapIndex = new ConcurrentHashMap<>(k * 2);
+    }
+
+    public void add(String key, long weight) {
+        decay(System.currentTimeMillis());
+
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketch.length; row++) {
+            estimate = Math.min(estimate, sketch[row].addAndGet(index(hash, row), weight));
+        }
+
+        if (estimate <= admission || heapIndex.containsKey(key)) {
+            return;
+        }
+        synchronized (this) {
+            offer(key, estimate);
+        }
+    }
+
+    /**
+     * @return the estimated decayed total of the key, which is never below the true one
+     */
+    public long estimate(String key) {
+        decay(System.currentTimeMillis());
+        return sketchEstimate(key);
+    }
+
+    /**
+     * @return the tracked keys and their estimated totals, largest first
+     */
+    public synchronized List<Map.Entry<String, Long>> top() {
+        decay(System.currentTimeMillis());
+
+        for (int i = 0; i < heapSize; i++) {
+            heapValues[i] = sketchEstimate(heapKeys[i]);
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        updateAdmission();
+
+        List<Map.Entry<String, Long>> top = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            if (heapValues[i] > 0) {
+                top.add(new AbstractMap.SimpleImmutableEntry<>(heapKeys[i], heapValues[i]));
+            }
+        }
+        Collections.sort(top, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return Long.compare(b.getValue(), a.getValue());
+            }
+        });
+        return top;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    private void offer(String key, long estimate) {
+        if (heapIndex.containsKey(key)) {
+            return;
+        }
+        if (heapSize < heapKeys.length) {
+            heapKeys[heapSize] = key;
+            heapValues[heapSize] = estimate;
+            heapIndex.put(key, heapSize);
+            siftUp(heapSize++);
+            updateAdmission();
+            return;
+        }
+
+        // the smallest tracked key may have grown since it was last placed: refresh it before evicting it
+        for (int refreshed = 0; refreshed < heapSize; refreshed++) {
+            long current = sketchEstimate(heapKeys[0]);
+            if (current <= heapValues[0]) {
+                break;
+            }
+            heapValues[0] = current;
+            siftDown(0);
+        }
+        if (estimate > heapValues[0]) {
+            heapIndex.remove(heapKeys[0]);
+            heapKeys[0] = key;
+            heapValues[0] = estimate;
+            heapIndex.put(key, 0);
+            siftDown(0);
+        }
+        updateAdmission();
+    }
+
+    private void updateAdmission() {
+        admission = heapSize < heapKeys.length ? 0 : heapValues[0];
+    }
+
+    private long sketchEstimate(String key) {
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketch.length; row++) {
+            estimate = Math.min(estimate, sketch[row].get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    private void decay(long now) {
+        long start = windowStart.get();
+        long windows = (now - start) / windowMillis;
+        if (windows <= 0 || !windowStart.compareAndSet(start, start + windows * windowMillis)) {
+            return;
+        }
+
+        // counters are halved one by one, so adds racing with the decay are kept rather than overwritten
+        int shift = (int) Math.min(windows, 63);
+        for (AtomicLongArray row : sketch) {
+            for (int i = 0; i < row.length(); i++) {
+                long value;
+                do {
+                    value = row.get(i);
+                } while (!row.compareAndSet(i, value, value >>> shift));
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < heapSize; i++) {
+                heapValues[i] >>>= shift;
+            }
+            if (shift == 63) {
+                // everything has decayed away
+                Arrays.fill(heapKeys, 0, heapSize, null);
+                heapIndex.clear();
+                heapSize = 0;
+            }
+            updateAdmission();
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the key's characters. Rows are derived from this rather than {@link String#hashCode()}:
+     * keys sharing a 32-bit hash code would otherwise collide in every row.
+     */
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    private int index(long hash, int row) {
+        // seed the hash per row, then mix it with the finalizer of MurmurHash3
+        long h = hash ^ SEEDS[row];
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapValues[parent] <= heapValues[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && heapValues[left] < heapValues[smallest]) {
+                smallest = left;
+            }
+            if (right < heapSize && heapValues[right] < heapValues[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String key = heapKeys[i];
+        long value = heapValues[i];
+        heapKeys[i] = heapKeys[j];
+        heapValues[i] = heapValues[j];
+        heapKeys[j] = key;
+        heapValues[j] = value;
+        heapIndex.put(heapKeys[i], i);
+        heapIndex.put(heapKeys[j], j);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Accepts JPEG images over HTTP, for clients without a connection to the broker:
+ * <pre>
+ * curl --data-binary @frame.jpg -H 'Content-Type: image/jpeg' 'localhost:8080/images?source=robot-1'
+ * </pre>
+ * Answers 201 with the bucket and key of the stored image, 200 if the image was dropped (sampling, rate limit,
+ * duplicate or broken JPEG), 429 when the service is saturated or the source is over its rate limit with the defer
+ * policy, and 413 for images over {@code HTTP_INGEST_MAX_BYTES}.
+ */
+@RestController
+public class HttpImageIngestController {
+
+    @Autowired private HttpImageIngestor ingestor;
+
+    // form bodies would be parsed, and so consumed, by the container looking up request parameters
+    @RequestMapping(value = "/images", method = RequestMethod.POST, consumes = {"image/jpeg", "application/octet-stream"})
+    public DeferredResult<ResponseEntity<Map<String, Object>>> upload(
+            @RequestParam(value = "source", defaultValue = "http") String source,
+            HttpServletRequest request) throws IOException {
+        // the body is read from the request stream as is, not through a message converter
+        return ingestor.ingest(source, request.getContentLengthLong(), request.getInputStream());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds images uploaded over HTTP into the same admission, routing and upload steps as images received from the
+ * broker, on the lanes of their route.
+ * <p>
+ * At most {@code concurrency} request bodies are read and held at once; requests beyond that, and requests whose
+ * lane is saturated, are answered 429 without their body being read. A body is read straight from the request
+ * into one buffer, sized by its Content-Length, which is the image that is validated and uploaded. Only raw images
+ * are accepted: tweets arrive as Java serialization streams, which are not deserialized from HTTP clients.
+ */
+public class HttpImageIngestor {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpImageIngestor.class);
+
+    // the buffer of a body without Content-Length starts this large and doubles as needed
+    private static final int INITIAL_CHUNKED_SIZE = 64 * 1024;
+
+    private final Semaphore permits;
+    private final int concurrency;
+    private final int maxBytes;
+    private final long timeoutMillis;
+
+    private volatile ImagePersistenceMessageConsumer consumer;
+    private volatile ImageRoutingTable routingTable;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong saturated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public HttpImageIngestor(int concurrency, int maxBytes, long timeoutMillis) {
+        this.permits = new Semaphore(concurrency);
+        this.concurrency = concurrency;
+        this.maxBytes = maxBytes;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static HttpImageIngestor fromEnvironment() {
+        return new HttpImageIngestor(Utils.getEnvironmentIntValue("HTTP_INGEST_CONCURRENCY", 64),
+                Utils.getEnvironmentIntValue("HTTP_INGEST_MAX_BYTES", 16 * 1024 * 1024),
+                Utils.getEnvironmentLongValue("HTTP_INGEST_TIMEOUT_MS", 60000));
+    }
+
+    /**
+     * Starts accepting images. Until then requests are answered 503.
+     */
+    public void start(ImagePersistenceMessageConsumer consumer, ImageRoutingTable routingTable) {
+        this.routingTable = routingTable;
+        this.consumer = consumer;
+        logger.info("Accepting images over HTTP, {} at once, up to {} bytes each", concurrency, maxBytes);
+    }
+
+    /**
+     * @param source        source of the image, used for rate limits, sampling, routing and the object key
+     * @param contentLength the request's Content-Length, or -1 if it is not known
+     * @param body          the request body
+     * @return the response, set once the image has been stored or turned away
+     */
+    public DeferredResult<ResponseEntity<Map<String, Object>>> ingest(String source, long contentLength,
+                                                                      InputStream body) {
+        long receivedAt = System.nanoTime();
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeoutMillis,
+                response(HttpStatus.SERVICE_UNAVAILABLE, "error", "Timed out storing the image"));
+
+        ImagePersistenceMessageConsumer consumer = this.consumer;
+        if (consumer == null) {
+            result.setResult(response(HttpStatus.SERVICE_UNAVAILABLE, "error", "Not ready to accept images yet"));
+            return result;
+        }
+        if (contentLength > maxBytes) {
+            result.setResult(tooLarge());
+            return result;
+        }
+        if (!permits.tryAcquire()) {
+            saturated.incrementAndGet();
+            result.setResult(tooManyRequests("Too many uploads in progress"));
+            return result;
+        }
+
+        boolean submitted = false;
+        try {
+            ByteBuffer data = read(body, contentLength);
+            if (data == null) {
+                result.setResult(tooLarge());
+                return result;
+            }
+            received.incrementAndGet();
+
+            IncomingImage image = IncomingImage.raw(source, data);
+            SourceRateLimiter.Decision decision = consumer.admit(image, data.remaining());
+            if (decision == SourceRateLimiter.Decision.DEFER) {
+                throttled.incrementAndGet();
+                result.setResult(tooManyRequests("Source " + source + " is over its rate limit"));
+                return result;
+            }
+            if (decision == SourceRateLimiter.Decision.DROP) {
+                dropped.incrementAndGet();
+                result.setResult(response(HttpStatus.OK, "stored", false));
+                return result;
+            }
+
+            ImageRoute route = routingTable.route(source);
+            ImageLane lane = route.lane(image);
+            submitted = lane.submit(() -> {
+                try {
+                    String key = consumer.store(image, route, receivedAt, null);
+                    if (key == null) {
+                        dropped.incrementAndGet();
+                        result.setResult(response(HttpStatus.OK, "stored", false));
+                    } else {
+                        stored.incrementAndGet();
+                        Map<String, Object> created = new LinkedHashMap<>();
+                        created.put("stored", true);
+                        created.put("bucket", route.getBucket());
+                        created.put("key", key);
+                        result.setResult(new ResponseEntity<>(created, HttpStatus.CREATED));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed.incrementAndGet();
+                    logger.error("Could not persist image from {} to bucket {}", source, route.getBucket(), e);
+                    result.setResult(response(HttpStatus.BAD_GATEWAY, "error", "Could not store the image"));
+                } finally {
+                    permits.release();
+                }
+            });
+            if (!submitted) {
+                saturated.incrementAndGet();
+                result.setResult(tooManyRequests("Lane " + lane.getName() + " is saturated"));
+            }
+            return result;
+        } catch (IOException e) {
+            logger.debug("Could not read image from {}", source, e);
+            result.setResult(response(HttpStatus.BAD_REQUEST, "error", "Could not read the request body"));
+            return result;
+        } finally {
+            if (!submitted) {
+                permits.release();
+            }
+        }
+    }
+
+    public int getInFlightCount() {
+        return concurrency - permits.availablePermits();
+    }
+
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    /**
+     * @return images turned away by sampling, rate limits, deduplication or validation
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return requests answered 429 because their source was over its rate limit
+     */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * @return requests answered 429 because too many uploads were in progress, or their lane was saturated
+     */
+    public long getSaturatedCount() {
+        return saturated.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the body, or null if it is larger than the limit
+     */
+    private ByteBuffer read(InputStream body, long contentLength) throws IOException {
+        byte[] buffer = new byte[contentLength >= 0 ? (int) contentLength : Math.min(INITIAL_CHUNKED_SIZE, maxBytes)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                if (contentLength >= 0) {
+                    // the body ends where Content-Length says; anything more belongs to no image
+                    break;
+                }
+                if (length == maxBytes) {
+                    return body.read() < 0 ? ByteBuffer.wrap(buffer) : null;
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes, 2L * buffer.length));
+            }
+            int n = body.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        if (contentLength >= 0 && length < contentLength) {
+            throw new IOException("Body ended after " + length + " of " + contentLength + " bytes");
+        }
+        return ByteBuffer.wrap(buffer, 0, length);
+    }
+
+    private ResponseEntity<Map<String, Object>> tooLarge() {
+        return response(HttpStatus.PAYLOAD_TOO_LARGE, "error", "Images are limited to " + maxBytes + " bytes");
+    }
+
+    private static ResponseEntity<Map<String, Object>> tooManyRequests(String reason) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", reason);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").body(body);
+    }
+
+    private static ResponseEntity<Map<String, Object>> response(HttpStatus status, String name, Object value) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put(name, value);
+        return new ResponseEntity<>(body, status);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Pushes a directory tree of images and serialized tweets through the same classification, routing and upload
+ * steps as messages, for instance to catch up after an outage or to load historical data.
+ * <p>
+ * Files are memory-mapped rather than read, so an image goes from the page cache to the object store without a
+ * copy on the heap, and are processed on virtual threads, at most {@code concurrency} at a time. Rate limits and
+ * frame sampling are not applied: they throttle live traffic by its arrival time, which means nothing for files.
+ * The relative path of every file that has been handled is appended to a checkpoint file, and a backfill started
+ * again with the same checkpoint skips them. Paths are flushed to it at every progress report, so a crash may
+ * upload again, under new keys, the files completed since the last one. Files that failed are not recorded and
+ * are tried again. A checkpoint write that fails does not make its file count as failed, since it was handled; it is
+ * counted apart, as the files concerned will be handled again next time. The checkpoint is guarded by a
+ * {@link ReentrantLock} rather than a monitor, so a virtual thread blocked writing it does not pin its carrier.
+ */
+public class ImageBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBackfill.class);
+
+    private final ImagePersistenceMessageConsumer steps;
+    private final ImageRoutingTable routingTable;
+    private final int concurrency;
+    private final Path checkpoint;
+    private final long reportIntervalMillis;
+
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong checkpointErrors = new AtomicLong();
+
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    // guarded by checkpointLock
+    private BufferedWriter checkpointWriter;
+
+    /**
+     * @param checkpoint file recording the files already handled, created if needed
+     */
+    public ImageBackfill(ImagePersistenceMessageConsumer steps, ImageRoutingTable routingTable, int concurrency,
+                         Path checkpoint, long reportIntervalMillis) {
+        this.steps = steps;
+        this.routingTable = routingTable;
+        this.concurrency = concurrency;
+        this.checkpoint = checkpoint;
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    /**
+     * Processes every regular file under the directory, except hidden files, and returns once all are done.
+     */
+    public void run(Path root) throws IOException, InterruptedException {
+        Set<String> done = readCheckpoint();
+        logger.info("Backfilling {} with {} files at once, {} files already done according to {}", root,
+                concurrency, done.size(), checkpoint);
+
+        Semaphore permits = new Semaphore(concurrency);
+        ExecutorService workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("backfill-", 1).factory());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        Progress progress = new Progress(start);
+        reporter.scheduleAtFixedRate(() -> report(progress), reportIntervalMillis, reportIntervalMillis,
+                TimeUnit.MILLISECONDS);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             Stream<Path> files = Files.walk(root)) {
+            checkpointLock.lock();
+            try {
+                checkpointWriter = writer;
+            } finally {
+                checkpointLock.unlock();
+            }
+            Path checkpointFile = checkpoint.toAbsolutePath().normalize();
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                if (!Files.isRegularFile(file) || file.getFileName().toString().startsWith(".")
+                        || file.toAbsolutePath().normalize().equals(checkpointFile)) {
+                    continue;
+                }
+                String name = root.relativize(file).toString();
+                if (done.contains(name)) {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+
+                permits.acquire();
+                workers.execute(() -> {
+                    try {
+                        process(file, name);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+
+            // wait for the last files
+            permits.acquire(concurrency);
+            permits.release(concurrency);
+        } finally {
+            workers.shutdown();
+            reporter.shutdown();
+            reporter.awaitTermination(reportIntervalMillis, TimeUnit.MILLISECONDS);
+            checkpointLock.lock();
+            try {
+                checkpointWriter = null;
+            } finally {
+                checkpointLock.unlock();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info("Backfill of {} finished in {} s: {} stored, {} dropped, {} failed, {} skipped, {} checkpoint "
+                + "errors; {} files/s, {} MB/s", root, String.format("%.1f", seconds), stored.get(), dropped.get(),
+                failed.get(), skipped.get(), checkpointErrors.get(),
+                String.format("%.1f", (stored.get() + dropped.get()) / seconds),
+                String.format("%.1f", bytes.get() / seconds / 1024 / 1024));
+    }
+
+    /**
+     * @return files uploaded
+     */
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    /**
+     * @return files not uploaded on purpose: duplicates, rejected images, tweets without a photo
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return files skipped because the checkpoint records them as done
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * @return failed writes to the checkpoint; the files they were recording will be handled again
+     */
+    public long getCheckpointErrorCount() {
+        return checkpointErrors.get();
+    }
+
+    private void process(Path file, String name) {
+        try {
+            ByteBuffer content;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // the mapping stays valid once the channel is closed
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            IncomingImage image = steps.classify(content, file.toString());
+            ImageRoute route = routingTable.route(image.getSource());
+            String key = steps.store(image, route, System.nanoTime(), null);
+
+            (key != null ? stored : dropped).incrementAndGet();
+            bytes.addAndGet(content.remaining());
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warn("Could not backfill {}", file, e);
+            return;
+        }
+
+        try {
+            recordDone(name);
+        } catch (IOException e) {
+            checkpointErrors.incrementAndGet();
+            logger.warn("Could not record {} in checkpoint {}", name, checkpoint, e);
+        }
+    }
+
+    private Set<String> readCheckpoint() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (Files.exists(checkpoint)) {
+            for (String line : Files.readAllLines(checkpoint, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    done.add(line);
+                }
+            }
+        }
+        return done;
+    }
+
+    void recordDone(String name) throws IOException {
+        checkpointLock.lock();
+        try {
+            if (checkpointWriter != null) {
+                checkpointWriter.write(name);
+                checkpointWriter.newLine();
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void flushCheckpoint() {
+        checkpointLock.lock();
+        try {
+            if (checkpointWriter != null) {
+                checkpointWriter.flush();
+            }
+        } catch (IOException e) {
+            checkpointErrors.incrementAndGet();
+            logger.warn("Could not write checkpoint {}", checkpoint, e);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private void report(Progress progress) {
+        flushCheckpoint();
+        long now = System.nanoTime();
+        long files = stored.get() + dropped.get();
+        long total = bytes.get();
+        double seconds = (now - progress.time) / 1e9;
+        logger.info("Backfill: {} stored, {} dropped, {} failed, {} skipped, {} checkpoint errors; {} files/s, {} MB/s",
+                stored.get(), dropped.get(), failed.get(), skipped.get(), checkpointErrors.get(),
+                String.format("%.1f", (files - progress.files) / seconds),
+                String.format("%.1f", (total - progress.bytes) / seconds / 1024 / 1024));
+        progress.time = now;
+        progress.files = files;
+        progress.bytes = total;
+    }
+
+    /**
+     * Counts at the previous report, to report the rate since.
+     */
+    private static class Progress {
+
+        private long time;
+        private long files;
+        private long bytes;
+
+        Progress(long time) {
+            this.time = time;
+        }
+    }
+}
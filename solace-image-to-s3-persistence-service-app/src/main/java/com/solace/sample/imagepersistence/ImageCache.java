@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solace.sample.imagepersistence.store.ObjectStore;
+import com.solace.sample.imagepersistence.store.ObjectTooLargeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of recently stored images, so that dashboards showing the latest frames do not each cost a
+ * GET from the object store.
+ * <p>
+ * Images are copied into direct buffers when they are uploaded, and when they are read from the store on a miss,
+ * and evicted least recently used first once the cache holds more than {@code maxBytes}. The content stays off the
+ * heap, so a large cache adds nothing to garbage collection work; the JVM's {@code -XX:MaxDirectMemorySize} must
+ * leave room for it. Concurrent misses on the same image share a single read from the store.
+ * <p>
+ * Reads are limited to the buckets images are stored in, and to images of at most {@code maxReadBytes}, whose
+ * size the store checks before reading them.
+ */
+public class ImageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageCache.class);
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long maxReadBytes;
+    private volatile Set<String> buckets = Collections.emptySet();
+
+    // guarded by this; iteration order is least recently used first
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    private final ConcurrentHashMap<String, CompletableFuture<ByteBuffer>> loads = new ConcurrentHashMap<>();
+    private volatile ObjectStore objectStore;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes      bytes of images held at most, or 0 to only read through to the store
+     * @param maxEntryBytes images larger than this are served but not cached
+     */
+    public ImageCache(long maxBytes, int maxEntryBytes) {
+        this(maxBytes, maxEntryBytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxReadBytes larger images are not read at all
+     */
+    public ImageCache(long maxBytes, int maxEntryBytes, long maxReadBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxEntryBytes, maxBytes);
+        this.maxReadBytes = maxReadBytes;
+    }
+
+    public static ImageCache fromEnvironment() {
+        ImageCache cache = new ImageCache(Utils.getEnvironmentLongValue("IMAGE_CACHE_MB", 0) * 1024 * 1024,
+                Utils.getEnvironmentIntValue("IMAGE_CACHE_MAX_ENTRY_KB", 4096) * 1024,
+                Utils.getEnvironmentLongValue("IMAGE_CONTENT_MAX_BYTES", 16 * 1024 * 1024));
+        if (cache.isEnabled()) {
+            logger.info("Caching up to {} MB of recent images off heap, {} KB at most each",
+                    cache.maxBytes / 1024 / 1024, cache.maxEntryBytes / 1024);
+        }
+        return cache;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Sets the store read on a miss. Until then {@link #get} fails.
+     */
+    public void setObjectStore(ObjectStore objectStore) {
+        this.objectStore = objectStore;
+    }
+
+    /**
+     * Sets the buckets images are read from. Until then none is.
+     */
+    public void setBuckets(Collection<String> buckets) {
+        this.buckets = Collections.unmodifiableSet(new HashSet<>(buckets));
+    }
+
+    /**
+     * Caches a copy of an image that has just been stored.
+     *
+     * @param data the image, from its position to its limit. The buffer is not modified.
+     */
+    public void put(String bucket, String key, ByteBuffer data) {
+        if (isEnabled() && data.remaining() <= maxEntryBytes) {
+            add(bucket + "/" + key, copy(data));
+        }
+    }
+
+    /**
+     * @return the image, from the cache or else from the store, as a read-only buffer of its own; null if the store
+     * has no such image or the bucket is not one images are stored in
+     * @throws ObjectTooLargeException if the image is larger than {@code maxReadBytes}
+     * @throws IOException if the store could not be read
+     */
+    public ByteBuffer get(String bucket, String key) throws IOException {
+        if (!buckets.contains(bucket)) {
+            return null;
+        }
+        String id = bucket + "/" + key;
+        ByteBuffer cached = lookUp(id);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return checkSize(bucket, key, cached);
+        }
+        misses.incrementAndGet();
+
+        ObjectStore store = objectStore;
+        if (store == null) {
+            throw new IOException("The object store is not open yet");
+        }
+
+        CompletableFuture<ByteBuffer> load = new CompletableFuture<>();
+        CompletableFuture<ByteBuffer> existing = loads.putIfAbsent(id, load);
+        if (existing != null) {
+            return checkSize(bucket, key, await(existing));
+        }
+        try {
+            ByteBuffer stored = store.get(bucket, key, maxReadBytes);
+            ByteBuffer content = null;
+            if (stored != null) {
+                if (isEnabled() && stored.remaining() <= maxEntryBytes) {
+                    content = copy(stored);
+                    add(id, content);
+                } else {
+                    content = stored;
+                }
+            }
+            load.complete(content);
+            return content == null ? null : content.asReadOnlyBuffer();
+        } catch (IOException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, load);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private synchronized ByteBuffer lookUp(String id) {
+        ByteBuffer content = entries.get(id);
+        return content == null ? null : content.asReadOnlyBuffer();
+    }
+
+    private synchronized void add(String id, ByteBuffer content) {
+        ByteBuffer previous = entries.put(id, content);
+        if (previous != null) {
+            usedBytes -= previous.capacity();
+        }
+        usedBytes += content.capacity();
+
+        Iterator<Map.Entry<String, ByteBuffer>> eldest = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().getValue().capacity();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private ByteBuffer checkSize(String bucket, String key, ByteBuffer content) throws ObjectTooLargeException {
+        if (content != null && content.remaining() > maxReadBytes) {
+            throw new ObjectTooLargeException(bucket, key, content.remaining(), maxReadBytes);
+        }
+        return content;
+    }
+
+    private static ByteBuffer copy(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(data.remaining());
+        copy.put(data.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> load) throws IOException {
+        try {
+            ByteBuffer content = load.join();
+            return content == null ? null : content.asReadOnlyBuffer();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
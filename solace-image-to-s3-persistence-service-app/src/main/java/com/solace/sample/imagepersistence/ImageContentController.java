@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solace.sample.imagepersistence.store.ObjectTooLargeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Serves stored images by key, through the {@link ImageCache}:
+ * <pre>
+ * curl -H 'Range: bytes=0-1023' 'localhost:8080/images/content?bucket=jdiamond-reinvent&amp;key=...'
+ * </pre>
+ * A single byte range is answered 206 with that part of the image. Requests for several ranges get the whole
+ * image, which HTTP allows and which costs clients less than a multipart response would cost us.
+ * <p>
+ * Only the buckets of the routes are read from: a key in any other bucket is answered 404. Images over
+ * {@code IMAGE_CONTENT_MAX_BYTES} are answered 413 without being read.
+ */
+@RestController
+public class ImageContentController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageContentController.class);
+
+    // the servlet API only writes byte arrays, so the direct buffer is written through a chunk this large
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    // object keys are random and never reused, so an image never changes
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    @Autowired private ImageCache imageCache;
+
+    @RequestMapping(value = "/images/content", method = RequestMethod.GET)
+    public void content(@RequestParam("bucket") String bucket, @RequestParam("key") String key,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ByteBuffer image;
+        try {
+            image = imageCache.get(bucket, key);
+        } catch (ObjectTooLargeException e) {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Images are served up to " + e.getMaxBytes() + " bytes");
+            return;
+        } catch (IOException e) {
+            logger.warn("Could not read {}/{}", bucket, key, e);
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY, "Could not read the image");
+            return;
+        }
+        if (image == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No such image");
+            return;
+        }
+
+        int length = image.remaining();
+        response.setContentType("image/jpeg");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE));
+        } catch (IllegalArgumentException e) {
+            // a malformed Range header is ignored
+            ranges = null;
+        }
+
+        if (ranges != null && ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                start = length;
+                end = -1;
+            }
+            if (start >= length || end < start) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            image.position(image.position() + (int) start);
+            image.limit(image.position() + (int) (end - start + 1));
+        }
+
+        response.setContentLength(image.remaining());
+        write(image, response.getOutputStream());
+    }
+
+    private static void write(ByteBuffer content, ServletOutputStream out) throws IOException {
+        if (content.hasArray()) {
+            out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, content.remaining())];
+        while (content.hasRemaining()) {
+            int n = Math.min(chunk.length, content.remaining());
+            content.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Local, append-only index of persisted images, to answer "what did source X send in the last hour" without
+ * listing the bucket.
+ * <p>
+ * Entries are appended to a log of fixed-size segment files, each memory-mapped, so an append is a copy into the
+ * page cache and survives the process crashing. A record holds its length, a CRC32C of the rest, the upload time,
+ * size and content hash, and the bucket, key and source. Upload times are made non-decreasing as records are
+ * appended, so the log is in time order. In memory only two secondary indexes are kept: the time and log position
+ * of every record, and per source the numbers of its records. Queries binary search them and decode just the
+ * records returned. On start the segments are scanned to rebuild both; a torn record at the end of a segment, left
+ * by a crash, fails its checksum and is discarded along with the rest of the segment.
+ */
+public class ImageIndex implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageIndex.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+
+    // length, CRC32C, persisted at, size, hash
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+    private static final int CHECKED_OFFSET = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long[] times = new long[1024];
+    private long[] positions = new long[1024];
+    private int count;
+    private final Map<String, SourceRecords> bySource = new HashMap<>();
+    private long lastTime;
+    private long rebuildMillis;
+
+    /**
+     * Opens the index in a directory, creating it if needed, and rebuilds the in-memory indexes from its segments.
+     *
+     * @param segmentSize size of each segment file, which is mapped whole
+     */
+    public ImageIndex(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("Index segments must be at least 4 KB");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        rebuild();
+    }
+
+    private ImageIndex() {
+        this.directory = null;
+        this.segmentSize = 0;
+    }
+
+    /**
+     * @return an index in IMAGE_INDEX_PATH, or a disabled one if it is not set
+     */
+    public static ImageIndex fromEnvironment() throws IOException {
+        String path = Utils.getEnvironmentValue("IMAGE_INDEX_PATH", null);
+        if (path == null) {
+            return new ImageIndex();
+        }
+        ImageIndex index = new ImageIndex(Paths.get(path),
+                Utils.getEnvironmentIntValue("IMAGE_INDEX_SEGMENT_MB", 64) * 1024 * 1024);
+        logger.info("Image index in {}: {} entries from {} sources, rebuilt in {} ms", path, index.getEntryCount(),
+                index.getSourceCount(), index.getRebuildMillis());
+        return index;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Records a completed upload. The content hash is computed by the caller, see {@link #hash(ByteBuffer)}.
+     */
+    public void append(String bucket, String key, String source, long size, long hash) throws IOException {
+        byte[] bucketBytes = bucket.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + 6 + bucketBytes.length + keyBytes.length + sourceBytes.length;
+        if (bucketBytes.length > 0xFFFF || keyBytes.length > 0xFFFF || sourceBytes.length > 0xFFFF
+                || length > segmentSize) {
+            throw new IllegalArgumentException("Index entry of " + key + " is too large");
+        }
+
+        lock.writeLock().lock();
+        try {
+            MappedByteBuffer segment = segments.get(segments.size() - 1);
+            if (segment.remaining() < length) {
+                segment = addSegment();
+            }
+            int offset = segment.position();
+            long persistedAt = Math.max(lastTime, System.currentTimeMillis());
+
+            segment.position(offset + CHECKED_OFFSET);
+            segment.putLong(persistedAt);
+            segment.putLong(size);
+            segment.putLong(hash);
+            putString(segment, bucketBytes);
+            putString(segment, keyBytes);
+            putString(segment, sourceBytes);
+
+            CRC32C crc = new CRC32C();
+            ByteBuffer checked = segment.duplicate();
+            checked.position(offset + CHECKED_OFFSET).limit(offset + length);
+            crc.update(checked);
+            segment.putInt(offset + 4, (int) crc.getValue());
+            // the length goes in last: until then the record reads as the end of the log
+            segment.putInt(offset, length);
+
+            lastTime = persistedAt;
+            add(persistedAt, position(segments.size() - 1, offset), source);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param source the source whose images are returned, or null for all sources
+     * @param from   earliest upload time included, in milliseconds since the epoch
+     * @param to     upload time from which images are excluded
+     * @param limit  maximum number of entries returned
+     * @return the matching entries, newest first
+     */
+    public Result query(String source, long from, long to, int limit) {
+        lock.readLock().lock();
+        try {
+            List<ImageIndexEntry> entries = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+            if (source == null) {
+                int low = lowerBound(null, count, from);
+                int high = lowerBound(null, count, to);
+                for (int i = high - 1; i >= low && entries.size() < limit; i--) {
+                    entries.add(read(positions[i]));
+                }
+                return new Result(Math.max(0, high - low), entries);
+            }
+
+            SourceRecords records = bySource.get(source);
+            if (records == null) {
+                return new Result(0, entries);
+            }
+            int low = lowerBound(records, records.size, from);
+            int high = lowerBound(records, records.size, to);
+            for (int i = high - 1; i >= low && entries.size() < limit; i--) {
+                entries.add(read(positions[records.numbers[i]]));
+            }
+            return new Result(Math.max(0, high - low), entries);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the CRC32C of the content, from its position to its limit. The buffer is not modified.
+     */
+    public static long hash(ByteBuffer content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content.duplicate());
+        return crc.getValue();
+    }
+
+    public int getEntryCount() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSourceCount() {
+        lock.readLock().lock();
+        try {
+            return bySource.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getRebuildMillis() {
+        return rebuildMillis;
+    }
+
+    /**
+     * Writes the mapped segments out to disk.
+     */
+    @Override
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuild() throws IOException {
+        long start = System.nanoTime();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        // fixed-width numbers sort in order
+        files.sort(null);
+
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).getFileName().toString().equals(segmentName(i))) {
+                throw new IOException("Index segment " + segmentName(i) + " is missing in " + directory);
+            }
+            MappedByteBuffer segment = map(files.get(i));
+            segments.add(segment);
+            scan(segments.size() - 1, segment);
+        }
+        if (segments.isEmpty()) {
+            addSegment();
+        }
+        rebuildMillis = (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Reads the records of a segment into the in-memory indexes, and leaves its position after the last one.
+     */
+    private void scan(int number, MappedByteBuffer segment) {
+        int offset = 0;
+        CRC32C crc = new CRC32C();
+        while (offset + HEADER_SIZE <= segment.capacity()) {
+            int length = segment.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_SIZE + 6 || length > segment.capacity() - offset || !checksumMatches(segment, offset,
+                    length, crc)) {
+                logger.warn("Discarding index entries from offset {} of {}: torn or corrupt record", offset,
+                        segmentName(number));
+                // clear the rest, so that shorter records appended over it do not run into the remains
+                for (int i = offset; i < segment.capacity(); i++) {
+                    segment.put(i, (byte) 0);
+                }
+                break;
+            }
+
+            long persistedAt = segment.getLong(offset + CHECKED_OFFSET);
+            ByteBuffer record = segment.duplicate();
+            record.position(offset + HEADER_SIZE);
+            skipString(record);
+            skipString(record);
+            String source = getString(record);
+
+            lastTime = Math.max(lastTime, persistedAt);
+            add(persistedAt, position(number, offset), source);
+            offset += length;
+        }
+        segment.position(offset);
+    }
+
+    private static boolean checksumMatches(MappedByteBuffer segment, int offset, int length, CRC32C crc) {
+        crc.reset();
+        ByteBuffer checked = segment.duplicate();
+        checked.position(offset + CHECKED_OFFSET).limit(offset + length);
+        crc.update(checked);
+        return (int) crc.getValue() == segment.getInt(offset + 4);
+    }
+
+    private MappedByteBuffer addSegment() throws IOException {
+        MappedByteBuffer segment = map(directory.resolve(segmentName(segments.size())));
+        segments.add(segment);
+        return segment;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // the mapping grows the file to the full segment size, zero filled
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, channel.size()));
+        }
+    }
+
+    private void add(long persistedAt, long position, String source) {
+        if (count == times.length) {
+            times = Arrays.copyOf(times, count * 2);
+            positions = Arrays.copyOf(positions, count * 2);
+        }
+        times[count] = persistedAt;
+        positions[count] = position;
+
+        SourceRecords records = bySource.get(source);
+        if (records == null) {
+            records = new SourceRecords();
+            bySource.put(source, records);
+        }
+        records.add(count);
+        count++;
+    }
+
+    private ImageIndexEntry read(long position) {
+        ByteBuffer record = segments.get((int) (position >>> 32)).duplicate();
+        int offset = (int) position;
+        record.position(offset + CHECKED_OFFSET);
+        long persistedAt = record.getLong();
+        long size = record.getLong();
+        long hash = record.getLong();
+        String bucket = getString(record);
+        String key = getString(record);
+        String source = getString(record);
+        return new ImageIndexEntry(bucket, key, source, size, hash, persistedAt);
+    }
+
+    /**
+     * @return the first record, of all of them or of one source, uploaded at or after the time
+     */
+    private int lowerBound(SourceRecords records, int size, long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long middleTime = times[records == null ? middle : records.numbers[middle]];
+            if (middleTime < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static String segmentName(int number) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Numbers of the records of one source, in time order.
+     */
+    private static class SourceRecords {
+
+        private int[] numbers = new int[8];
+        private int size;
+
+        void add(int number) {
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            numbers[size++] = number;
+        }
+    }
+
+    /**
+     * Entries returned by a query, and how many matched in total.
+     */
+    public static class Result {
+
+        private final int matched;
+        private final List<ImageIndexEntry> entries;
+
+        Result(int matched, List<ImageIndexEntry> entries) {
+            this.matched = matched;
+            this.entries = entries;
+        }
+
+        public int getMatched() {
+            return matched;
+        }
+
+        public List<ImageIndexEntry> getEntries() {
+            return entries;
+        }
+    }
+}
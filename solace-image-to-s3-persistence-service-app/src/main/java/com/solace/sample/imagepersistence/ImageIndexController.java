@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Looks up persisted images in the local {@link ImageIndex}.
+ */
+@RestController
+public class ImageIndexController {
+
+    private static final int MAX_LIMIT = 10000;
+
+    @Autowired private ImageIndex imageIndex;
+
+    /**
+     * @param source only images of this source, or of all sources if not given
+     * @param last   only images uploaded within this duration before now, e.g. {@code 90s}, {@code 15m}, {@code 1h}
+     *               or {@code 2d}; overrides {@code from}
+     * @param from   only images uploaded at or after this time, in epoch milliseconds or ISO-8601
+     * @param to     only images uploaded before this time, in epoch milliseconds or ISO-8601
+     * @param limit  maximum number of images returned
+     * @return the number of matching images and the newest of them
+     */
+    @RequestMapping(value = "/images", method = RequestMethod.GET)
+    public Map<String, Object> images(@RequestParam(value = "source", required = false) String source,
+                                      @RequestParam(value = "last", required = false) String last,
+                                      @RequestParam(value = "from", required = false) String from,
+                                      @RequestParam(value = "to", required = false) String to,
+                                      @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        if (!imageIndex.isEnabled()) {
+            throw new IllegalStateException("The image index is disabled, set IMAGE_INDEX_PATH to enable it");
+        }
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 0 and " + MAX_LIMIT);
+        }
+        long now = System.currentTimeMillis();
+        long toMillis = to == null ? Long.MAX_VALUE : parseTime(to);
+        long fromMillis = last != null ? now - parseDuration(last) : from == null ? Long.MIN_VALUE : parseTime(from);
+
+        long start = System.nanoTime();
+        ImageIndex.Result result = imageIndex.query(source, fromMillis, toMillis, limit);
+
+        Map<String, Object> images = new LinkedHashMap<>();
+        images.put("matched", result.getMatched());
+        images.put("returned", result.getEntries().size());
+        images.put("queryMicros", (System.nanoTime() - start) / 1000);
+        images.put("images", result.getEntries());
+        return images;
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> badRequest(IllegalArgumentException e) {
+        return error(e);
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public Map<String, Object> disabled(IllegalStateException e) {
+        return error(e);
+    }
+
+    private static Map<String, Object> error(Exception e) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", e.getMessage());
+        return error;
+    }
+
+    private static long parseTime(String time) {
+        try {
+            return time.chars().allMatch(Character::isDigit) ? Long.parseLong(time) : Instant.parse(time).toEpochMilli();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected epoch milliseconds or an ISO-8601 time, not " + time);
+        }
+    }
+
+    private static long parseDuration(String duration) {
+        String upper = duration.trim().toUpperCase();
+        try {
+            // 2d -> P2D, 1h -> PT1H; full ISO-8601 durations are accepted as they are
+            return Duration.parse(upper.startsWith("P") ? upper : upper.endsWith("D") ? "P" + upper : "PT" + upper)
+                    .toMillis();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Expected a duration such as 15m, 1h or 2d, not " + duration);
+        }
+    }
+}
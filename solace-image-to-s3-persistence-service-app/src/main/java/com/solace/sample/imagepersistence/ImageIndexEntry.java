@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+/**
+ * One persisted image, as recorded by the {@link ImageIndex}.
+ */
+public class ImageIndexEntry {
+
+    private final String bucket;
+    private final String key;
+    private final String source;
+    private final long size;
+    private final long hash;
+    private final long persistedAt;
+
+    public ImageIndexEntry(String bucket, String key, String source, long size, long hash, long persistedAt) {
+        this.bucket = bucket;
+        this.key = key;
+        this.source = source;
+        this.size = size;
+        this.hash = hash;
+        this.persistedAt = persistedAt;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return CRC32C of the image content, as 8 hex digits. A string, so that JSON clients do not round it.
+     */
+    public String getHash() {
+        return String.format("%08x", hash);
+    }
+
+    long getHashValue() {
+        return hash;
+    }
+
+    /**
+     * @return when the upload completed, in milliseconds since the epoch
+     */
+    public long getPersistedAt() {
+        return persistedAt;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded worker pool with a bounded queue. A saturated lane rejects work instead of blocking the caller.
+ * <p>
+ * In {@link Mode#VIRTUAL} mode every task runs on its own virtual thread instead, and a semaphore bounds the
+ * lane to as many tasks as its pool and queue would hold together. The same number of messages is in flight
+ * in either mode, but in virtual mode all of them make progress at once, while blocked on a media download or
+ * an upload, without a platform thread and its stack for each.
+ */
+public class ImageLane {
+
+    /**
+     * How a lane runs its tasks.
+     */
+    public enum Mode {
+        PLATFORM, VIRTUAL;
+
+        /**
+         * @param name "platform" or "virtual", in any case
+         */
+        public static Mode fromName(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown worker mode: " + name + ", expected platform or virtual");
+        }
+    }
+
+    private final String name;
+    private final ExecutorService workers;
+    private final ThreadPoolExecutor pool;
+    private final Semaphore permits;
+    private final int limit;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ImageLane(String name, int threads, int queueCapacity) {
+        this(name, threads, queueCapacity, Mode.PLATFORM);
+    }
+
+    public ImageLane(final String name, int threads, int queueCapacity, Mode mode) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Lane " + name + " needs at least one thread and a positive queue capacity");
+        }
+        this.name = name;
+        this.limit = threads + queueCapacity;
+        if (mode == Mode.VIRTUAL) {
+            this.pool = null;
+            this.permits = new Semaphore(limit);
+            this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+        } else {
+            this.permits = null;
+            this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, name + "-" + count.incrementAndGet());
+                        }
+                    });
+            this.workers = pool;
+        }
+    }
+
+    /**
+     * Runs the task on this lane's workers.
+     *
+     * @return false if the lane is saturated and the task was not accepted
+     */
+    public boolean submit(final Runnable task) {
+        if (permits == null) {
+            try {
+                workers.execute(task);
+                return true;
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        }
+
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(timeout, unit);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isVirtual() {
+        return permits != null;
+    }
+
+    public int getActiveCount() {
+        return permits != null ? limit - permits.availablePermits() : pool.getActiveCount();
+    }
+
+    /**
+     * @return tasks waiting for a thread; always 0 in virtual mode, where every task starts right away
+     */
+    public int getQueuedCount() {
+        return permits != null ? 0 : pool.getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
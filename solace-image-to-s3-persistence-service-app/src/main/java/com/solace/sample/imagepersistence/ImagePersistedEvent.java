@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+/**
+ * Announces that an image has been stored. Serialized as JSON by {@link ImagePersistedEventPublisher}.
+ */
+public class ImagePersistedEvent {
+
+    private final String bucket;
+    private final String key;
+    private final String source;
+    private final long size;
+    private final long latencyMillis;
+    private final long persistedAt;
+
+    public ImagePersistedEvent(String bucket, String key, String source, long size, long latencyMillis) {
+        this.bucket = bucket;
+        this.key = key;
+        this.source = source;
+        this.size = size;
+        this.latencyMillis = latencyMillis;
+        this.persistedAt = System.currentTimeMillis();
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return time from the message being received by this service until its upload completed
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getPersistedAt() {
+        return persistedAt;
+    }
+}
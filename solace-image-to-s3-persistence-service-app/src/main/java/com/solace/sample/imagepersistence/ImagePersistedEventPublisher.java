@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solacesystems.jcsmp.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes an {@link ImagePersistedEvent} to a topic after each successful upload.
+ * <p>
+ * {@link #publish(ImagePersistedEvent)} only enqueues the event, so the persistence path never waits on the
+ * broker. A background thread drains the queue and sends the events in batches as guaranteed messages over
+ * the existing session; broker acknowledgements arrive through the streaming publish callbacks.
+ * Events are dropped, and counted, when the queue is full.
+ */
+public class ImagePersistedEventPublisher implements JCSMPStreamingPublishEventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagePersistedEventPublisher.class);
+
+    // the most messages a single sendMultiple call accepts
+    private static final int MAX_SEND_MULTIPLE = 50;
+
+    // pauses between attempts while the publish window is full
+    private static final long MIN_BACKOFF_NANOS = 50000;
+    private static final long MAX_BACKOFF_NANOS = 10000000;
+
+    private final JCSMPSession session;
+    private final Topic topic;
+    private final int batchSize;
+    private final BlockingQueue<ImagePersistedEvent> queue;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private XMLMessageProducer producer;
+    private Thread sender;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public ImagePersistedEventPublisher(JCSMPSession session, String topicName, int batchSize, int queueCapacity) {
+        this.session = session;
+        this.topic = JCSMPFactory.onlyInstance().createTopic(topicName);
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_SEND_MULTIPLE));
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Opens the producer and starts sending queued events. Events published before are kept in the queue.
+     */
+    public synchronized void start() throws JCSMPException {
+        if (sender != null) {
+            return;
+        }
+        producer = session.getMessageProducer(this);
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendLoop();
+            }
+        }, "persisted-event-publisher");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Queues an event for publishing without blocking.
+     *
+     * @param event the event to publish
+     */
+    public void publish(ImagePersistedEvent event) {
+        if (!queue.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public synchronized void close() {
+        running = false;
+        if (sender != null) {
+            sender.interrupt();
+            try {
+                sender.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sender.isAlive()) {
+                // closing the producer under a running sendMultiple is not safe: the session closes it later
+                logger.warn("Image persisted event publisher did not stop in time, leaving its producer open");
+            } else {
+                producer.close();
+            }
+        }
+        logger.info("Image persisted events: {} published, {} acknowledged, {} failed, {} dropped",
+                published.get(), acknowledged.get(), failed.get(), dropped.get());
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getAcknowledgedCount() {
+        return acknowledged.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void responseReceived(String messageID) {
+        acknowledged.incrementAndGet();
+    }
+
+    @Override
+    public void handleError(String messageID, JCSMPException cause, long timestamp) {
+        failed.incrementAndGet();
+        logger.warn("Image persisted event {} was not accepted by the broker", messageID, cause);
+    }
+
+    private void sendLoop() {
+        List<ImagePersistedEvent> batch = new ArrayList<>(batchSize);
+        JCSMPSendMultipleEntry[] entries = new JCSMPSendMultipleEntry[batchSize];
+
+        while (running || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                if (running) {
+                    continue;
+                }
+                // closing: send what is left without waiting
+                if (queue.drainTo(batch, 1) == 0) {
+                    break;
+                }
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            try {
+                send(batch, entries);
+            } catch (JCSMPException e) {
+                failed.addAndGet(batch.size());
+                logger.warn("Failed to publish {} image persisted event(s)", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void send(List<ImagePersistedEvent> batch, JCSMPSendMultipleEntry[] entries) throws JCSMPException {
+        int count = 0;
+        for (ImagePersistedEvent event : batch) {
+            TextMessage message = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+            message.setDeliveryMode(DeliveryMode.PERSISTENT);
+            try {
+                message.setText(objectMapper.writeValueAsString(event));
+            } catch (JsonProcessingException e) {
+                failed.incrementAndGet();
+                logger.warn("Could not serialize image persisted event for {}", event.getKey(), e);
+                continue;
+            }
+            entries[count++] = JCSMPFactory.onlyInstance().createSendMultipleEntry(message, topic);
+        }
+
+        // sendMultiple may accept only part of the batch when the publish window is full: back off until
+        // acknowledgements open it again rather than spin
+        int sent = 0;
+        long backoffNanos = MIN_BACKOFF_NANOS;
+        while (sent < count) {
+            int accepted = producer.sendMultiple(entries, sent, count - sent, 0);
+            if (accepted > 0) {
+                sent += accepted;
+                backoffNanos = MIN_BACKOFF_NANOS;
+            } else if (!running || Thread.currentThread().isInterrupted()) {
+                // closing: the window may never open again, and a set interrupt flag would make parkNanos spin
+                failed.addAndGet(count - sent);
+                logger.warn("Publish window still full on close, {} image persisted event(s) not sent", count - sent);
+                break;
+            } else {
+                LockSupport.parkNanos(backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+            }
+        }
+        published.addAndGet(sent);
+    }
+}
@@ -18,6 +18,9 @@
  */
 package com.solace.sample.imagepersistence;
 
+import com.solace.sample.imagepersistence.store.ContentChecksums;
+import com.solace.sample.imagepersistence.store.ObjectStore;
+import com.solace.sample.imagepersistence.store.ObjectStores;
 import com.solace.services.core.model.SolaceServiceCredentials;
 import com.solace.spring.cloud.core.SolaceMessagingInfo;
 import com.solacesystems.jcsmp.*;
@@ -27,15 +30,58 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 @SpringBootApplication
+@EnableConfigurationProperties(ImageRoutingProperties.class)
 public class ImagePersistenceApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(ImagePersistenceApplication.class, args);
     }
 
+    @Bean
+    public SourceRateLimiter sourceRateLimiter() {
+        return SourceRateLimiter.fromEnvironment();
+    }
+
+    @Bean
+    public FrameSampler frameSampler() {
+        return FrameSampler.fromEnvironment();
+    }
+
+    @Bean
+    public ImageIndex imageIndex() throws IOException {
+        return ImageIndex.fromEnvironment();
+    }
+
+    @Bean
+    public HttpImageIngestor httpImageIngestor() {
+        return HttpImageIngestor.fromEnvironment();
+    }
+
+    @Bean
+    public ImageCache imageCache() {
+        return ImageCache.fromEnvironment();
+    }
+
+    @Bean
+    public SourceStatistics sourceStatistics() {
+        return SourceStatistics.fromEnvironment();
+    }
+
     @Component
     static class Runner implements CommandLineRunner {
 
@@ -51,12 +97,219 @@ public class ImagePersistenceApplication {
 
         @Autowired(required=false) private SolaceMessagingInfo solaceMessagingInfo;
 
+        @Autowired private ImageRoutingProperties imageRoutingProperties;
+        @Autowired private ImagePersistenceMetrics metrics;
+        @Autowired private SourceRateLimiter rateLimiter;
+        @Autowired private FrameSampler frameSampler;
+        @Autowired private ImageIndex imageIndex;
+        @Autowired private HttpImageIngestor httpIngestor;
+        @Autowired private ImageCache imageCache;
+        @Autowired private ApplicationContext context;
+        @Autowired private SourceStatistics sourceStatistics;
+        @Autowired private BrokerConnectionMonitor connectionMonitor;
+
+        private ImageRoutingTable routingTable;
+        private ObjectStore objectStore;
+        private boolean clientAck;
+        private ImagePersistedEventPublisher eventPublisher;
+        private ContentChecksums.Mode uploadChecksums;
+        private ImageTrace.Sampler traceSampler;
+        private final List<Context> contexts = new ArrayList<>();
+        private final List<JCSMPSession> sessions = new ArrayList<>();
+        private final List<FlowReceiver> flows = new ArrayList<>();
+        private final List<ReactiveImageConsumer> reactiveConsumers = new ArrayList<>();
+
         @Override
         public void run(String... strings) throws Exception {
-            final JCSMPSession session = solaceFactory.createSession();
-
             String imageQueueName = Utils.getEnvironmentValue("IMAGE_QUEUE_NAME", "Q/imageIngress");
 
+            routingTable = ImageRoutingTable.fromProperties(imageRoutingProperties);
+            JpegValidator jpegValidator = JpegValidator.fromEnvironment();
+            DuplicateFrameFilter duplicateFrameFilter = DuplicateFrameFilter.fromEnvironment();
+            objectStore = ObjectStores.fromEnvironment();
+            logger.info("Persisting images to {}", objectStore.getClass().getSimpleName());
+            imageCache.setObjectStore(objectStore);
+            List<String> buckets = new ArrayList<>();
+            for (ImageRoute route : routingTable.getRoutes()) {
+                buckets.add(route.getBucket());
+            }
+            imageCache.setBuckets(buckets);
+            traceSampler = ImageTrace.Sampler.fromEnvironment();
+            // the S3 client computes an MD5 of every upload anyway, other stores would hash each image for nothing
+            uploadChecksums = ContentChecksums.Mode.valueOf(Utils.getEnvironmentValue("UPLOAD_CHECKSUMS",
+                    ObjectStores.type().equals("s3") ? "md5" : "off").toUpperCase());
+
+            String backfillDir = Utils.getEnvironmentValue("BACKFILL_DIR", null);
+            if (backfillDir != null) {
+                // push a directory through the upload steps instead of consuming the queue, then exit
+                ImagePersistenceMessageConsumer steps = new ImagePersistenceMessageConsumer(null, routingTable,
+                        objectStore);
+                configure(steps, jpegValidator, duplicateFrameFilter);
+                // rate limits and sampling pace live traffic, not files
+                steps.setRateLimiter(null);
+                steps.setFrameSampler(null);
+                ImageBackfill backfill = new ImageBackfill(steps, routingTable,
+                        Utils.getEnvironmentIntValue("BACKFILL_CONCURRENCY", 32),
+                        Paths.get(Utils.getEnvironmentValue("BACKFILL_CHECKPOINT", "backfill.checkpoint")),
+                        Utils.getEnvironmentLongValue("BACKFILL_REPORT_INTERVAL_MS", 5000));
+                backfill.run(Paths.get(backfillDir));
+                System.exit(SpringApplication.exit(context, () -> backfill.getFailedCount() == 0
+                        && backfill.getCheckpointErrorCount() == 0 ? 0 : 1));
+            }
+
+            // Client is the default: only client-acknowledged flows hand messages to the route lanes, so only
+            // they keep a slow route or slow tweet downloads from holding up the others. Auto mode uploads on the
+            // dispatcher thread.
+            // Each message is acknowledged as soon as its upload has finished. The API already groups
+            // acknowledgements on the wire, by SUB_ACK_TIME and SUB_ACK_WINDOW_THRESHOLD.
+            clientAck = "client".equalsIgnoreCase(Utils.getEnvironmentValue("ACK_MODE", "client"));
+
+            if (rateLimiter.isEnabled() && rateLimiter.getPolicy() == SourceRateLimiter.Policy.DEFER && !clientAck) {
+                throw new IllegalStateException("SOURCE_RATE_LIMIT_POLICY=defer requires ACK_MODE=client");
+            }
+
+            boolean reactive = "reactive".equalsIgnoreCase(Utils.getEnvironmentValue("CONSUMER_MODE", "listener"));
+            if (reactive && !clientAck) {
+                throw new IllegalStateException("CONSUMER_MODE=reactive requires ACK_MODE=client");
+            }
+
+            for (ImageRoute route : routingTable.getRoutes()) {
+                logger.info("Route {}: bucket {}, prefix '{}'", route.getName(), route.getBucket(), route.getPrefix());
+            }
+
+            Map<String, BrokerConnection> connections = new LinkedHashMap<>();
+            Map<String, JCSMPSession> brokerSessions = createSessions(connections);
+
+            String eventTopic = Utils.getEnvironmentValue("PERSISTED_EVENT_TOPIC", null);
+            if (eventTopic != null) {
+                // events of all brokers are published through the first one
+                Map.Entry<String, JCSMPSession> eventBroker = brokerSessions.entrySet().iterator().next();
+                eventPublisher = new ImagePersistedEventPublisher(eventBroker.getValue(), eventTopic,
+                        Utils.getEnvironmentIntValue("PERSISTED_EVENT_BATCH_SIZE", 50),
+                        Utils.getEnvironmentIntValue("PERSISTED_EVENT_QUEUE_CAPACITY", 10000));
+                eventPublisher.start();
+                logger.info("Publishing image persisted events to topic {} on broker {}", eventTopic, eventBroker.getKey());
+            }
+
+            metrics.setRoutingTable(routingTable);
+            metrics.setObjectStore(objectStore);
+            metrics.setEventPublisher(eventPublisher);
+            metrics.setRateLimiter(rateLimiter);
+            metrics.setFrameSampler(frameSampler);
+            metrics.setImageIndex(imageIndex);
+            metrics.setHttpIngestor(httpIngestor);
+            metrics.setImageCache(imageCache);
+            metrics.setJpegValidator(jpegValidator);
+            metrics.setDuplicateFrameFilter(duplicateFrameFilter);
+
+            // One flow per broker, all feeding the same routes, store and rate limits
+            for (Map.Entry<String, JCSMPSession> broker : brokerSessions.entrySet()) {
+                JCSMPSession session = broker.getValue();
+
+                ImagePersistenceMessageConsumer msgConsumer = new ImagePersistenceMessageConsumer(session, routingTable,
+                        objectStore, clientAck);
+                configure(msgConsumer, jpegValidator, duplicateFrameFilter);
+                msgConsumer.setBrokerConnection(connections.get(broker.getKey()));
+
+                if (reactive) {
+                    // the consumer's steps run as stages of a pipeline that starts and stops the flow on demand
+                    ReactiveImageConsumer pipeline = ReactiveImageConsumer.fromEnvironment(broker.getKey(), msgConsumer,
+                            routingTable, connections.get(broker.getKey()));
+                    reactiveConsumers.add(pipeline);
+
+                    // not registered with the broker connection: the publisher alone decides when the flow runs
+                    FlowReceiver cons = createFlow(session, imageQueueName, pipeline.getPublisher());
+                    flows.add(cons);
+
+                    logger.info("Connected to broker {}. Awaiting message on a reactive pipeline...", broker.getKey());
+                    pipeline.start(cons);
+                } else {
+                    FlowReceiver cons = createFlow(session, imageQueueName, msgConsumer);
+                    flows.add(cons);
+
+                    logger.info("Connected to broker {}. Awaiting message...", broker.getKey());
+                    connections.get(broker.getKey()).startFlow(cons);
+                }
+            }
+            metrics.setReactiveConsumers(reactiveConsumers);
+
+            // Images posted over HTTP go through the same steps, on the lanes of their route
+            ImagePersistenceMessageConsumer httpConsumer = new ImagePersistenceMessageConsumer(null, routingTable,
+                    objectStore);
+            configure(httpConsumer, jpegValidator, duplicateFrameFilter);
+            httpIngestor.start(httpConsumer, routingTable);
+
+            // Consumer sessions are now hooked up and running!
+
+        }
+
+        private void configure(ImagePersistenceMessageConsumer msgConsumer, JpegValidator jpegValidator,
+                               DuplicateFrameFilter duplicateFrameFilter) {
+            if (sourceStatistics.isEnabled()) {
+                msgConsumer.setSourceStatistics(sourceStatistics);
+            }
+            msgConsumer.setEventPublisher(eventPublisher);
+            msgConsumer.setJpegValidator(jpegValidator);
+            msgConsumer.setDuplicateFrameFilter(duplicateFrameFilter);
+            // always set: policies can be added at run time
+            msgConsumer.setFrameSampler(frameSampler);
+            msgConsumer.setImageIndex(imageIndex);
+            msgConsumer.setImageCache(imageCache);
+            msgConsumer.setUploadChecksums(uploadChecksums);
+            msgConsumer.setTraceSampler(traceSampler);
+            if (rateLimiter.isEnabled()) {
+                msgConsumer.setRateLimiter(rateLimiter);
+            }
+        }
+
+        /**
+         * Opens a session to each broker selected by IMAGE_BROKERS: "first" (the default) for the first bound
+         * service, or the application.properties broker when none is bound; "all" for every bound service; or a
+         * comma-separated list of service IDs. Each session gets its own context, and so its own I/O thread, and
+         * reports its events to its own {@link BrokerConnection}.
+         */
+        private Map<String, JCSMPSession> createSessions(Map<String, BrokerConnection> connections)
+                throws JCSMPException {
+            String brokers = Utils.getEnvironmentValue("IMAGE_BROKERS", "first");
+
+            Map<String, SpringJCSMPFactory> factories = new LinkedHashMap<>();
+            if ("first".equalsIgnoreCase(brokers)) {
+                factories.put(solaceServiceCredentials != null ? solaceServiceCredentials.getId() : "default", solaceFactory);
+            } else if ("all".equalsIgnoreCase(brokers)) {
+                for (SolaceServiceCredentials credentials : springJCSMPFactoryCloudFactory1.getSolaceServiceCredentials()) {
+                    factories.put(credentials.getId(), springJCSMPFactoryCloudFactory1.getSpringJCSMPFactory(credentials));
+                }
+                if (factories.isEmpty()) {
+                    throw new IllegalStateException("IMAGE_BROKERS=all but no Solace Messaging service is bound");
+                }
+            } else {
+                for (String id : brokers.split(",")) {
+                    SpringJCSMPFactory factory = springJCSMPFactoryCloudFactory1.getSpringJCSMPFactory(id.trim());
+                    if (factory == null) {
+                        throw new IllegalArgumentException("No Solace Messaging service with ID " + id.trim());
+                    }
+                    factories.put(id.trim(), factory);
+                }
+            }
+
+            Map<String, JCSMPSession> sessions = new LinkedHashMap<>();
+            for (Map.Entry<String, SpringJCSMPFactory> factory : factories.entrySet()) {
+                Context context = factory.getValue().createContext(null);
+                contexts.add(context);
+
+                BrokerConnection connection = connectionMonitor.connection(factory.getKey());
+                connections.put(factory.getKey(), connection);
+
+                JCSMPSession session = factory.getValue().createSession(context, connection);
+                sessions.put(factory.getKey(), session);
+                this.sessions.add(session);
+            }
+            return sessions;
+        }
+
+        private FlowReceiver createFlow(JCSMPSession session, String imageQueueName, XMLMessageListener msgConsumer)
+                throws JCSMPException {
+
             final EndpointProperties queueEndpointProps = new EndpointProperties();
             // set queue permissions to "consume" and access-type to "exclusive"
             queueEndpointProps.setPermission(EndpointProperties.PERMISSION_CONSUME);
@@ -73,19 +326,52 @@ public class ImagePersistenceApplication {
             // Create a Flow be able to bind to and consume messages from the Queue.
             final ConsumerFlowProperties flow_prop = new ConsumerFlowProperties();
             flow_prop.setEndpoint(queue);
-            flow_prop.setAckMode(JCSMPProperties.SUPPORTED_MESSAGE_ACK_AUTO);
+
+            if (clientAck) {
+                flow_prop.setAckMode(JCSMPProperties.SUPPORTED_MESSAGE_ACK_CLIENT);
+                // messages a saturated route cannot take are settled as failed and redelivered
+                flow_prop.addRequiredSettlementOutcomes(XMLMessage.Outcome.FAILED);
+            } else {
+                flow_prop.setAckMode(JCSMPProperties.SUPPORTED_MESSAGE_ACK_AUTO);
+            }
 
             EndpointProperties consumerEndpointProps = new EndpointProperties();
             consumerEndpointProps.setAccessType(EndpointProperties.ACCESSTYPE_NONEXCLUSIVE);
 
-            ImagePersistenceMessageConsumer msgConsumer = new ImagePersistenceMessageConsumer(session);
-            FlowReceiver cons = session.createFlow(msgConsumer, flow_prop, consumerEndpointProps);
-
-            logger.info("Connected. Awaiting message...");
-            cons.start();
-
-            // Consumer session is now hooked up and running!
+            return session.createFlow(msgConsumer, flow_prop, consumerEndpointProps);
+        }
 
+        @PreDestroy
+        public void shutdown() throws InterruptedException, IOException {
+            // stopped through their connections too, so that a reconnect does not start them again
+            for (BrokerConnection connection : connectionMonitor.getConnections()) {
+                connection.stopFlows();
+            }
+            for (FlowReceiver flow : flows) {
+                flow.stop();
+            }
+            for (ReactiveImageConsumer pipeline : reactiveConsumers) {
+                pipeline.shutdown(10, TimeUnit.SECONDS);
+            }
+            if (routingTable != null) {
+                // let in-flight uploads finish so their messages are still acknowledged
+                routingTable.shutdown(10, TimeUnit.SECONDS);
+            }
+            if (eventPublisher != null) {
+                eventPublisher.close();
+            }
+            for (FlowReceiver flow : flows) {
+                flow.close();
+            }
+            for (JCSMPSession session : sessions) {
+                session.closeSession();
+            }
+            for (Context context : contexts) {
+                context.destroy();
+            }
+            if (objectStore != null) {
+                objectStore.close();
+            }
         }
     }
 }
@@ -18,16 +18,9 @@
  */
 package com.solace.sample.imagepersistence;
 
-import com.amazonaws.AmazonServiceException;
-import com.amazonaws.SdkClientException;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-
+import com.solace.sample.imagepersistence.store.ContentChecksums;
+import com.solace.sample.imagepersistence.store.ObjectStore;
+import com.solace.sample.imagepersistence.store.ObjectStores;
 import com.solace.services.core.model.SolaceServiceCredentials;
 import com.solacesystems.jcsmp.*;
 
@@ -41,17 +34,41 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.*;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
-import java.util.UUID;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ImagePersistenceMessageConsumer implements XMLMessageListener {
 
+    // a media server's Content-Length is only trusted this far when sizing the download buffer
+    private static final int MAX_PREALLOCATED_MEDIA_SIZE = 16 * 1024 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private CountDownLatch latch = new CountDownLatch(1);
     private static final Logger logger = LoggerFactory.getLogger(ImagePersistenceMessageConsumer.class);
     private JCSMPSession session = null;
+    private ImageRoutingTable routingTable = null;
+    private ObjectStore objectStore = null;
+    private boolean clientAck = false;
+    private ImagePersistedEventPublisher eventPublisher = null;
+    private SourceRateLimiter rateLimiter = null;
+    private FrameSampler frameSampler = null;
+    private SourceStatistics sourceStatistics = null;
+    private BrokerConnection brokerConnection = null;
+    private JpegValidator jpegValidator = null;
+    private DuplicateFrameFilter duplicateFrameFilter = null;
+    private ImageIndex imageIndex = null;
+    private ImageCache imageCache = null;
+    private ImageTrace.Sampler traceSampler = null;
+    private ContentChecksums.Mode uploadChecksums = ContentChecksums.Mode.OFF;
+    private int mediaFetchTimeoutMillis = Utils.getEnvironmentIntValue("TWEET_MEDIA_TIMEOUT_MS", 10000);
 
     @Autowired private SpringJCSMPFactory solaceFactory;
 
@@ -60,128 +77,517 @@ public class ImagePersistenceMessageConsumer implements XMLMessageListener {
     @Autowired private SolaceServiceCredentials solaceServiceCredentials;
     @Autowired private JCSMPProperties jcsmpProperties;
 
-    public ImagePersistenceMessageConsumer(JCSMPSession session) {
+    public ImagePersistenceMessageConsumer(JCSMPSession session) throws IOException {
+        this(session, ImageRoutingTable.fromProperties(new ImageRoutingProperties()), ObjectStores.fromEnvironment());
+    }
+
+    /**
+     * Creates a consumer for an auto-acknowledged flow. Messages are persisted on the dispatching thread,
+     * to the bucket and prefix of their route.
+     */
+    public ImagePersistenceMessageConsumer(JCSMPSession session, ImageRoutingTable routingTable, ObjectStore objectStore) {
         this.session = session;
+        this.routingTable = routingTable;
+        this.objectStore = objectStore;
     }
 
-    @Override
-    public void onReceive(BytesXMLMessage msg) {
+    /**
+     * Creates a consumer for a client-acknowledged flow. Messages are persisted on the workers of their route's
+     * raw image or tweet lane and only acknowledged once their upload has finished.
+     *
+     * @param clientAck false for an auto-acknowledged flow
+     */
+    public ImagePersistenceMessageConsumer(JCSMPSession session, ImageRoutingTable routingTable, ObjectStore objectStore,
+                                           boolean clientAck) {
+        this.session = session;
+        this.routingTable = routingTable;
+        this.objectStore = objectStore;
+        this.clientAck = clientAck;
+    }
 
-        FileOutputStream fos = null;
+    /**
+     * Announces every successful upload through the given publisher.
+     */
+    public void setEventPublisher(ImagePersistedEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
 
-        String clientRegion = Utils.getEnvironmentValue("AWS_REGION", "us-east-2");
-        String bucketName = Utils.getEnvironmentValue("REINVENT_BUCKET", "jdiamond-reinvent");
-        String objectKeyPrefix = Utils.getEnvironmentValue("OBJECT_KEY_PREFIX", "");
-        String objKeyName = UUID.randomUUID().toString().replace("-", "") + ".jpg";
-        String source = "romo";
-        String filePath = null;
-        byte[] imageData = null;
-        boolean isJpeg = true;
+    /**
+     * Limits the rate of images accepted from each source. Deferring over-limit images needs a client-acknowledged
+     * flow: they are held unacknowledged until their slot.
+     */
+    public void setRateLimiter(SourceRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
 
-        if (msg instanceof TextMessage) {
-            logger.info("============= TextMessage received: " + ((TextMessage) msg).getText());
-        } else {
+    /**
+     * Keeps only the frames of each source that its sampling policy selects. Skipped frames are acknowledged.
+     */
+    public void setFrameSampler(FrameSampler frameSampler) {
+        this.frameSampler = frameSampler;
+    }
 
-            logger.info("============= Message received.");
+    /**
+     * Counts every received image, including those later throttled, towards its source's traffic.
+     */
+    public void setSourceStatistics(SourceStatistics sourceStatistics) {
+        this.sourceStatistics = sourceStatistics;
+    }
 
-            ByteBuffer binaryAttachment = msg.getAttachmentByteBuffer();
+    /**
+     * Counts received and redelivered messages against the broker the flow is bound to.
+     */
+    public void setBrokerConnection(BrokerConnection brokerConnection) {
+        this.brokerConnection = brokerConnection;
+    }
 
-            // See if the message is a tweet
-            try {
-                byte[] tweetBytes = binaryAttachment.array();
+    /**
+     * Records every upload in a local index, so that images can be looked up by source and time.
+     */
+    public void setImageIndex(ImageIndex imageIndex) {
+        this.imageIndex = imageIndex;
+    }
 
-                Status tweet = (Status) convertFromBytes(tweetBytes);
+    /**
+     * Keeps a copy of every uploaded image in the cache that serves {@code /images/content}.
+     */
+    public void setImageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
 
-                logger.info("Tweet received from " + tweet.getUser().getScreenName());
+    /**
+     * Traces the timing of the messages the sampler selects.
+     */
+    public void setTraceSampler(ImageTrace.Sampler traceSampler) {
+        this.traceSampler = traceSampler;
+    }
 
-                source = tweet.getUser().getScreenName();
+    /**
+     * Sends checksums of every image with its upload, so that the store can verify what it received.
+     */
+    public void setUploadChecksums(ContentChecksums.Mode uploadChecksums) {
+        this.uploadChecksums = uploadChecksums;
+    }
 
-                filePath = getFilePath(objKeyName, source);
+    /**
+     * Checks the JPEG structure of every image before it is uploaded, and stores its dimensions with it.
+     */
+    public void setJpegValidator(JpegValidator jpegValidator) {
+        this.jpegValidator = jpegValidator;
+    }
 
-                MediaEntity[] medias = tweet.getMediaEntities(); //get the media entities from the status
+    /**
+     * Skips the upload of frames that look like a frame recently uploaded from the same source.
+     */
+    public void setDuplicateFrameFilter(DuplicateFrameFilter duplicateFrameFilter) {
+        this.duplicateFrameFilter = duplicateFrameFilter;
+    }
 
-                for (MediaEntity m : medias) {
+    @Override
+    public void onReceive(final BytesXMLMessage msg) {
 
+        final long receivedAt = System.nanoTime();
 
-                    try {
-                        URL url = new URL(m.getMediaURL());
+        if (brokerConnection != null) {
+            brokerConnection.recordDelivery(msg);
+        }
 
-                        InputStream in = new BufferedInputStream(url.openStream());
-                        ByteArrayOutputStream out = new ByteArrayOutputStream();
-                        byte[] buf = new byte[1024];
-                        int n = 0;
-                        while (-1 != (n = in.read(buf))) {
-                            out.write(buf, 0, n);
-                        }
-                        out.close();
-                        in.close();
+        if (msg instanceof TextMessage) {
+            logger.debug("============= TextMessage received: {}", ((TextMessage) msg).getText());
+            if (clientAck) {
+                msg.ackMessage();
+            }
+        } else {
 
-                        imageData = out.toByteArray();
+            logger.debug("============= Message received.");
 
-                        //ByteBuffer media = ByteBuffer.wrap(imageData);
+            final ImageTrace trace = startTrace(msg, receivedAt);
+            final IncomingImage image = classify(msg);
 
-                        if (!"jpg".equals(getExtension(m.getType()))) {
-                            isJpeg = false;
-                        }
+            long delayNanos = admit(msg, image);
+            if (delayNanos < 0) {
+                latch.countDown();
+                return;
+            }
 
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
+            if (delayNanos > 0) {
+                // held here until its source's next free slot, rather than redelivered by the broker at once
+                rateLimiter.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(msg, image, receivedAt, trace);
                     }
+                }, delayNanos);
+            } else {
+                dispatch(msg, image, receivedAt, trace);
+            }
+        }
+
+        latch.countDown(); // unblock main thread
+    }
+
+    /**
+     * Persists an admitted image, on its lane for a client-acknowledged flow and on this thread otherwise.
+     */
+    private void dispatch(final BytesXMLMessage msg, final IncomingImage image, final long receivedAt,
+                          final ImageTrace trace) {
+        final ImageRoute route = routingTable.route(msg, image.getSource());
+        final ImageLane lane = route.lane(image);
+        if (trace != null) {
+            trace.classified();
+        }
 
-                    // only allowing one image per tweet
-                    break;
+        if (!clientAck) {
+            persist(image, route, receivedAt, trace);
+            return;
+        }
+
+        boolean accepted = lane.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store(image, route, receivedAt, trace);
+                } catch (IOException | RuntimeException e) {
+                    // not acknowledged: the broker redelivers it rather than the image being lost
+                    logger.error("Could not persist image from {} to bucket {}", image.getSource(),
+                            route.getBucket(), e);
+                    redeliver(msg, "Upload failed");
+                    return;
                 }
+                msg.ackMessage();
             }
-            catch (Exception ex) {
+        });
+
+        if (!accepted) {
+            // the lane is saturated: hand the message back rather than block the other lanes
+            redeliver(msg, "Lane " + lane.getName() + " is saturated");
+        }
+    }
+
+    /**
+     * @return a trace of the message, or null if it is not sampled
+     */
+    ImageTrace startTrace(BytesXMLMessage msg, long receivedAt) {
+        return traceSampler == null ? null : traceSampler.start(msg, receivedAt);
+    }
 
-                // Treat binaryAttachment as an image and not a tweet
-                imageData = new byte[binaryAttachment.remaining()];
-                binaryAttachment.get(imageData);
+    IncomingImage classify(BytesXMLMessage msg) {
 
-                filePath = getFilePath(objKeyName, source);
+        ByteBuffer binaryAttachment = msg.getAttachmentByteBuffer();
 
+        // See if the message is a tweet. Only attempt to deserialize Java serialization streams: failing on every
+        // raw image would cost an exception and its stack trace per message.
+        if (isSerialized(binaryAttachment)) {
+            IncomingImage tweet = decode(msg);
+            if (tweet != null) {
+                return tweet;
             }
+        }
 
-            try {
+        // Treat binaryAttachment as an image and not a tweet. It is uploaded straight from the message, without a copy.
+        return IncomingImage.raw("romo", binaryAttachment);
+    }
+
+    /**
+     * Deserializes the tweet carried by a message whose attachment {@link #isSerialized(ByteBuffer) is serialized}.
+     *
+     * @return the tweet, or null if the attachment is not a serialized tweet
+     */
+    IncomingImage decode(BytesXMLMessage msg) {
+        ByteBuffer binaryAttachment = msg.getAttachmentByteBuffer();
+        return decode(binaryAttachment.array(), binaryAttachment.arrayOffset() + binaryAttachment.position(),
+                binaryAttachment.remaining(), msg.getMessageId());
+    }
+
+    /**
+     * Classifies content read other than from a message, such as a file. The content may be a direct or mapped
+     * buffer: only a serialized tweet is copied, to be deserialized, while an image is kept in the buffer.
+     *
+     * @param origin what the content was read from, for logging
+     */
+    IncomingImage classify(ByteBuffer content, String origin) {
+        if (content.remaining() >= 2
+                && (content.getShort(content.position()) & 0xFFFF) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF)) {
+            IncomingImage tweet;
+            if (content.hasArray()) {
+                tweet = decode(content.array(), content.arrayOffset() + content.position(), content.remaining(), origin);
+            } else {
+                byte[] copy = new byte[content.remaining()];
+                content.duplicate().get(copy);
+                tweet = decode(copy, 0, copy.length, origin);
+            }
+            if (tweet != null) {
+                return tweet;
+            }
+        }
+        return IncomingImage.raw("romo", content);
+    }
+
+    private IncomingImage decode(byte[] bytes, int offset, int length, String origin) {
+        try {
+            Status tweet = (Status) convertFromBytes(bytes, offset, length);
+
+            logger.debug("Tweet received from {}", tweet.getUser().getScreenName());
+
+            return IncomingImage.tweet(tweet.getUser().getScreenName(), tweet.getMediaEntities());
+        }
+        catch (Exception ex) {
+            logger.debug("Content of {} is not a tweet", origin, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Counts the image towards its source's traffic and applies the source's rate limit and sampling policy.
+     * Dropped and skipped messages are acknowledged. Deferred messages book their source's next free slot, and
+     * are dropped too when it is too far away.
+     *
+     * @return nanoseconds to wait for the slot of a deferred message, 0 to persist the image now, or -1 if it is
+     * over its source's rate limit or not sampled, and must not be persisted
+     */
+    long admit(BytesXMLMessage msg, IncomingImage image) {
+        SourceRateLimiter.Decision decision = admit(image, msg.getAttachmentContentLength());
+        if (decision == SourceRateLimiter.Decision.DEFER) {
+            long delayNanos = rateLimiter.reserve(image.getSource());
+            if (delayNanos >= 0) {
+                logger.debug("Deferring message {} from {} by {} ms", msg.getMessageId(), image.getSource(),
+                        delayNanos / 1000000);
+                return delayNanos;
+            }
+            decision = SourceRateLimiter.Decision.DROP;
+        }
+        if (decision == SourceRateLimiter.Decision.DROP) {
+            logger.debug("Dropping message {} from {}", msg.getMessageId(), image.getSource());
+            if (clientAck) {
+                msg.ackMessage();
+            }
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Counts the image towards its source's traffic and applies the source's rate limit and sampling policy,
+     * leaving it to the caller to act on the decision.
+     *
+     * @param size size of the received message or request body
+     * @return DROP for images over the rate limit with the drop or sample policy, or skipped by sampling
+     */
+    SourceRateLimiter.Decision admit(IncomingImage image, int size) {
+        if (sourceStatistics != null) {
+            sourceStatistics.record(image.getSource(), size);
+        }
+
+        SourceRateLimiter.Decision decision = rateLimiter == null
+                ? SourceRateLimiter.Decision.ADMIT : rateLimiter.admit(image.getSource());
+        if (decision != SourceRateLimiter.Decision.ADMIT) {
+            logger.debug("Source {} is over its rate limit", image.getSource());
+            return decision;
+        }
+        if (frameSampler != null && !frameSampler.keep(image.getSource())) {
+            logger.debug("Frame sampling of {} skips an image", image.getSource());
+            return SourceRateLimiter.Decision.DROP;
+        }
+        return SourceRateLimiter.Decision.ADMIT;
+    }
 
-                if (isJpeg) {
+    static boolean isSerialized(ByteBuffer buffer) {
+        return buffer.hasArray() && buffer.remaining() >= 2
+                && (buffer.getShort(buffer.position()) & 0xFFFF) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF);
+    }
 
-                    logger.info("============= Image persisted to file : " + filePath);
+    private void persist(IncomingImage image, ImageRoute route, long receivedAt, ImageTrace trace) {
+        try {
+            store(image, route, receivedAt, trace);
+        }
+        catch(IOException e) {
+            logger.error("Could not persist image from {} to bucket {}", image.getSource(), route.getBucket(), e);
+        }
+    }
 
-                    AWSCredentialsProvider provider = new DefaultAWSCredentialsProviderChain();
-                    AWSCredentials credentials = provider.getCredentials();
+    /**
+     * Fetches the image if it is a tweet, and uploads it unless it is a duplicate.
+     *
+     * @return the key of the stored object, or null if the image was not stored
+     * @throws IOException if the upload failed
+     */
+    String store(IncomingImage image, ImageRoute route, long receivedAt, ImageTrace trace) throws IOException {
 
-                    AmazonS3 s3Client = AmazonS3ClientBuilder.standard()
-                            .withRegion(clientRegion)
-                            .withCredentials(provider)
-                            .build();
+        if (trace != null) {
+            trace.dequeued();
+        }
 
+        ByteBuffer imageData = image.isTweet() ? fetch(image, trace) : image.getImageData();
+        if (imageData == null) {
+            logger.debug("============= No image to persist from {}", image.getSource());
+            if (trace != null) {
+                trace.finish(image.getSource(), null, 0);
+            }
+            return null;
+        }
 
-                    // Upload a file as a new object with ContentType and title specified.
-                    InputStream fileInputStream = new ByteArrayInputStream(imageData);
-                    ObjectMetadata metadata = new ObjectMetadata();
-                    metadata.setContentType("image/jpeg");
-                    metadata.addUserMetadata("x-amz-meta-title", objKeyName);
-                    metadata.setContentLength(imageData.length);
+        if (isDuplicate(image.getSource(), imageData, trace)) {
+            return null;
+        }
 
-                    PutObjectRequest request = new PutObjectRequest(bucketName, objectKeyPrefix + filePath, fileInputStream, metadata);
-                    s3Client.putObject(request);
+        return upload(image.getSource(), imageData, route, receivedAt, trace);
+    }
+
+    /**
+     * Downloads the media of a tweet. Only the first media of a tweet is persisted, and only if it is a photo.
+     *
+     * @return the media, or null if the tweet has no photo or it could not be downloaded
+     */
+    ByteBuffer fetch(IncomingImage image, ImageTrace trace) {
+        ByteBuffer imageData = null;
+
+        for (MediaEntity m : image.getMedias()) {
+
+            if (!"jpg".equals(getExtension(m.getType()))) {
+                break;
+            }
+
+            try {
+                URL url = new URL(m.getMediaURL());
+
+                // bound the download so a slow media server only ever holds up the tweet lane
+                URLConnection connection = url.openConnection();
+                connection.setConnectTimeout(mediaFetchTimeoutMillis);
+                connection.setReadTimeout(mediaFetchTimeoutMillis);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        Math.max(1024, Math.min(connection.getContentLength(), MAX_PREALLOCATED_MEDIA_SIZE)));
+                try (InputStream in = connection.getInputStream()) {
+                    byte[] buf = new byte[8192];
+                    int n = 0;
+                    while (-1 != (n = in.read(buf))) {
+                        out.write(buf, 0, n);
+                    }
                 }
+
+                imageData = ByteBuffer.wrap(out.toByteArray());
+
+            } catch (Exception ex) {
+                logger.warn("Could not fetch media {} of tweet from {}", m.getMediaURL(), image.getSource(), ex);
             }
-            catch(AmazonServiceException e) {
-                // The call was transmitted successfully, but Amazon S3 couldn't process
-                // it, so it returned an error response.
-                e.printStackTrace();
+
+            // only allowing one image per tweet
+            break;
+        }
+
+        if (trace != null) {
+            trace.fetched();
+        }
+        return imageData;
+    }
+
+    boolean isDeduplicating() {
+        return duplicateFrameFilter != null && duplicateFrameFilter.isEnabled();
+    }
+
+    /**
+     * @return true if the image is a near duplicate of a recent frame of its source and must not be uploaded
+     */
+    boolean isDuplicate(String source, ByteBuffer imageData, ImageTrace trace) {
+        if (!isDeduplicating() || !duplicateFrameFilter.suppress(source, imageData)) {
+            return false;
+        }
+        logger.debug("Frame from {} looks like a recent one, not uploading it", source);
+        if (trace != null) {
+            trace.finish(source, null, imageData.remaining());
+        }
+        return true;
+    }
+
+    /**
+     * Stores a JPEG image under a new random key in its route's bucket and prefix, and announces it. With a
+     * {@link JpegValidator}, broken images are quarantined or dropped according to its policy.
+     *
+     * @return the key of the stored object, or null if the image was dropped
+     */
+    String upload(String source, ByteBuffer imageData, ImageRoute route, long receivedAt, ImageTrace trace)
+            throws IOException {
+
+        String bucketName = route.getBucket();
+        String objKeyName = newObjectName();
+        String objectKeyPrefix = route.getPrefix();
+        int size = imageData.remaining();
+        Map<String, String> metadata;
+
+        JpegValidator.Header header = jpegValidator != null && jpegValidator.isEnabled()
+                ? jpegValidator.validate(imageData) : null;
+        if (header == null) {
+            metadata = Collections.singletonMap("x-amz-meta-title", objKeyName);
+        } else if (header.isValid()) {
+            metadata = new HashMap<>(4);
+            metadata.put("x-amz-meta-title", objKeyName);
+            metadata.put("width", Integer.toString(header.getWidth()));
+            metadata.put("height", Integer.toString(header.getHeight()));
+        } else if (jpegValidator.getPolicy() == JpegValidator.Policy.REJECT) {
+            logger.warn("Dropping broken image from {}: {}", source, header.getProblem());
+            if (trace != null) {
+                trace.finish(source, null, size);
             }
-            catch(SdkClientException e) {
-                // Amazon S3 couldn't be contacted for a response, or the client
-                // couldn't parse the response from Amazon S3.
-                e.printStackTrace();
+            return null;
+        } else {
+            logger.warn("Quarantining broken image from {}: {}", source, header.getProblem());
+            objectKeyPrefix = jpegValidator.getQuarantinePrefix() + objectKeyPrefix;
+            metadata = new HashMap<>(4);
+            metadata.put("x-amz-meta-title", objKeyName);
+            metadata.put("invalid", header.getProblem());
+        }
+
+        String objectKey = objectKeyPrefix + getFilePath(objKeyName, source);
+        ContentChecksums checksums = uploadChecksums == ContentChecksums.Mode.OFF ? null
+                : ContentChecksums.compute(imageData, uploadChecksums == ContentChecksums.Mode.ALL);
+        long hash = 0;
+        if (imageIndex != null && imageIndex.isEnabled()) {
+            // the index hash is the same CRC32C, no need to read the image again
+            hash = checksums != null ? checksums.getCrc32c() : ImageIndex.hash(imageData);
+        }
+
+        // Upload a file as a new object with ContentType and title specified.
+        if (checksums == null) {
+            objectStore.put(bucketName, objectKey, imageData, "image/jpeg", metadata);
+        } else {
+            objectStore.put(bucketName, objectKey, imageData, "image/jpeg", metadata, checksums);
+        }
+
+        logger.debug("============= Image persisted to {}/{}", bucketName, objectKey);
+
+        if (imageIndex != null && imageIndex.isEnabled()) {
+            try {
+                imageIndex.append(bucketName, objectKey, source, size, hash);
+            } catch (IOException | RuntimeException e) {
+                // the image is stored, only the local lookup misses it
+                logger.warn("Could not index {}/{}", bucketName, objectKey, e);
             }
+        }
 
+        if (imageCache != null) {
+            imageCache.put(bucketName, objectKey, imageData);
         }
 
-        latch.countDown(); // unblock main thread
+        if (trace != null) {
+            trace.uploaded();
+            trace.finish(source, objectKey, size);
+        }
+
+        if (eventPublisher != null) {
+            long latencyMillis = (System.nanoTime() - receivedAt) / 1000000;
+            eventPublisher.publish(new ImagePersistedEvent(bucketName, objectKey, source, size, latencyMillis));
+        }
+
+        return objectKey;
+    }
+
+    void redeliver(BytesXMLMessage msg, String reason) {
+        logger.warn("{}, message {} will be redelivered", reason, msg.getMessageId());
+        try {
+            msg.settle(XMLMessage.Outcome.FAILED);
+        } catch (JCSMPException e) {
+            logger.error("Could not return message {} to the broker", msg.getMessageId(), e);
+        }
     }
 
     private String getFilePath(String objKeyName, String source) {
@@ -202,8 +608,31 @@ public class ImagePersistenceMessageConsumer implements XMLMessageListener {
         channel.write(buffer);
     }
 
-    private Object convertFromBytes(byte[] bytes) throws IOException, ClassNotFoundException {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+    /**
+     * @return a random 128-bit hex name with a .jpg extension, built without the intermediate strings of
+     * {@code UUID.randomUUID().toString()} or the lock of its shared {@code SecureRandom}
+     */
+    static String newObjectName() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] name = new char[36];
+        writeHex(random.nextLong(), name, 0);
+        writeHex(random.nextLong(), name, 16);
+        name[32] = '.';
+        name[33] = 'j';
+        name[34] = 'p';
+        name[35] = 'g';
+        return new String(name);
+    }
+
+    private static void writeHex(long value, char[] chars, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX_DIGITS[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+    private Object convertFromBytes(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes, offset, length);
              ObjectInput in = new ObjectInputStream(bis)) {
             return in.readObject();
         }
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solace.sample.imagepersistence.store.AdaptiveConcurrencyLimit;
+import com.solace.sample.imagepersistence.store.ConcurrencyLimitedObjectStore;
+import com.solace.sample.imagepersistence.store.ObjectStore;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Publishes the state of the persistence pipeline on the actuator {@code /metrics} endpoint.
+ * The {@link ImagePersistenceApplication.Runner} registers the pipeline components once it has built them.
+ */
+@Component
+public class ImagePersistenceMetrics implements PublicMetrics {
+
+    @Autowired private BrokerConnectionMonitor connectionMonitor;
+
+    private volatile ImageRoutingTable routingTable;
+    private volatile ObjectStore objectStore;
+    private volatile ImagePersistedEventPublisher eventPublisher;
+    private volatile SourceRateLimiter rateLimiter;
+    private volatile FrameSampler frameSampler;
+    private volatile ImageIndex imageIndex;
+    private volatile HttpImageIngestor httpIngestor;
+    private volatile ImageCache imageCache;
+    private volatile JpegValidator jpegValidator;
+    private volatile DuplicateFrameFilter duplicateFrameFilter;
+    private volatile List<ReactiveImageConsumer> reactiveConsumers = Collections.emptyList();
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        ImageRoutingTable routingTable = this.routingTable;
+        if (routingTable != null) {
+            for (ImageRoute route : routingTable.getRoutes()) {
+                addLane(metrics, "image.route." + route.getName() + ".raw", route.getRawLane());
+                addLane(metrics, "image.route." + route.getName() + ".tweet", route.getTweetLane());
+            }
+        }
+
+        if (objectStore instanceof ConcurrencyLimitedObjectStore) {
+            AdaptiveConcurrencyLimit limit = ((ConcurrencyLimitedObjectStore) objectStore).getLimit();
+            metrics.add(new Metric<>("image.upload.concurrency.limit", limit.getLimit()));
+            metrics.add(new Metric<>("image.upload.concurrency.inFlight", limit.getInFlight()));
+            metrics.add(new Metric<>("image.upload.concurrency.throttled", limit.getThrottledCount()));
+            metrics.add(new Metric<>("image.upload.concurrency.latencyInflated", limit.getInflatedCount()));
+        }
+
+        for (ReactiveImageConsumer pipeline : reactiveConsumers) {
+            String prefix = "image.reactive." + pipeline.getName();
+            metrics.add(new Metric<>(prefix + ".buffered", pipeline.getPublisher().getBufferedCount()));
+            metrics.add(new Metric<>(prefix + ".paused", pipeline.getPublisher().isPaused() ? 1 : 0));
+            metrics.add(new Metric<>(prefix + ".pauses", pipeline.getPublisher().getPauseCount()));
+            for (BoundedStage<?, ?> stage : pipeline.getStages()) {
+                metrics.add(new Metric<>(prefix + "." + stage.getName() + ".active", stage.getActiveCount()));
+                metrics.add(new Metric<>(prefix + "." + stage.getName() + ".waiting", stage.getWaitingCount()));
+                metrics.add(new Metric<>(prefix + "." + stage.getName() + ".failed", stage.getFailedCount()));
+            }
+        }
+
+        ImagePersistedEventPublisher eventPublisher = this.eventPublisher;
+        if (eventPublisher != null) {
+            metrics.add(new Metric<>("image.events.published", eventPublisher.getPublishedCount()));
+            metrics.add(new Metric<>("image.events.acknowledged", eventPublisher.getAcknowledgedCount()));
+            metrics.add(new Metric<>("image.events.failed", eventPublisher.getFailedCount()));
+            metrics.add(new Metric<>("image.events.dropped", eventPublisher.getDroppedCount()));
+        }
+
+        for (BrokerConnection connection : connectionMonitor.getConnections()) {
+            String prefix = "image.broker." + connection.getName();
+            metrics.add(new Metric<>(prefix + ".connected", connection.isConnected() ? 1 : 0));
+            metrics.add(new Metric<>(prefix + ".failed", connection.isFailed() ? 1 : 0));
+            metrics.add(new Metric<>(prefix + ".reconnects", connection.getReconnectCount()));
+            metrics.add(new Metric<>(prefix + ".downtime.currentMillis", connection.getCurrentDowntimeMillis()));
+            metrics.add(new Metric<>(prefix + ".downtime.lastMillis", connection.getLastDowntimeMillis()));
+            metrics.add(new Metric<>(prefix + ".downtime.maxMillis", connection.getMaxDowntimeMillis()));
+            metrics.add(new Metric<>(prefix + ".downtime.totalMillis", connection.getTotalDowntimeMillis()));
+            metrics.add(new Metric<>(prefix + ".delivered", connection.getDeliveredCount()));
+            metrics.add(new Metric<>(prefix + ".redelivered", connection.getRedeliveredCount()));
+        }
+
+        SourceRateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter != null && rateLimiter.isEnabled()) {
+            metrics.add(new Metric<>("image.sources.tracked", rateLimiter.getTrackedSourceCount()));
+            metrics.add(new Metric<>("image.sources.throttled", rateLimiter.getThrottledCount()));
+            if (rateLimiter.getPolicy() == SourceRateLimiter.Policy.DEFER) {
+                metrics.add(new Metric<>("image.sources.deferred", rateLimiter.getDeferredCount()));
+                metrics.add(new Metric<>("image.sources.deferralsRefused", rateLimiter.getDeferralsRefusedCount()));
+            }
+        }
+
+        FrameSampler frameSampler = this.frameSampler;
+        if (frameSampler != null) {
+            metrics.add(new Metric<>("image.sampling.kept", frameSampler.getKeptCount()));
+            metrics.add(new Metric<>("image.sampling.skipped", frameSampler.getSkippedCount()));
+            metrics.add(new Metric<>("image.sampling.sources", frameSampler.getTrackedSourceCount()));
+        }
+
+        HttpImageIngestor httpIngestor = this.httpIngestor;
+        if (httpIngestor != null) {
+            metrics.add(new Metric<>("image.http.inFlight", httpIngestor.getInFlightCount()));
+            metrics.add(new Metric<>("image.http.received", httpIngestor.getReceivedCount()));
+            metrics.add(new Metric<>("image.http.stored", httpIngestor.getStoredCount()));
+            metrics.add(new Metric<>("image.http.dropped", httpIngestor.getDroppedCount()));
+            metrics.add(new Metric<>("image.http.throttled", httpIngestor.getThrottledCount()));
+            metrics.add(new Metric<>("image.http.saturated", httpIngestor.getSaturatedCount()));
+            metrics.add(new Metric<>("image.http.failed", httpIngestor.getFailedCount()));
+        }
+
+        ImageCache imageCache = this.imageCache;
+        if (imageCache != null) {
+            metrics.add(new Metric<>("image.cache.hits", imageCache.getHitCount()));
+            metrics.add(new Metric<>("image.cache.misses", imageCache.getMissCount()));
+            metrics.add(new Metric<>("image.cache.evictions", imageCache.getEvictionCount()));
+            metrics.add(new Metric<>("image.cache.entries", imageCache.getEntryCount()));
+            metrics.add(new Metric<>("image.cache.bytes", imageCache.getUsedBytes()));
+        }
+
+        ImageIndex imageIndex = this.imageIndex;
+        if (imageIndex != null && imageIndex.isEnabled()) {
+            metrics.add(new Metric<>("image.index.entries", imageIndex.getEntryCount()));
+            metrics.add(new Metric<>("image.index.sources", imageIndex.getSourceCount()));
+            metrics.add(new Metric<>("image.index.segments", imageIndex.getSegmentCount()));
+        }
+
+        JpegValidator jpegValidator = this.jpegValidator;
+        if (jpegValidator != null && jpegValidator.isEnabled()) {
+            metrics.add(new Metric<>("image.jpeg.valid", jpegValidator.getValidCount()));
+            metrics.add(new Metric<>("image.jpeg.invalid", jpegValidator.getInvalidCount()));
+        }
+
+        DuplicateFrameFilter duplicateFrameFilter = this.duplicateFrameFilter;
+        if (duplicateFrameFilter != null && duplicateFrameFilter.isEnabled()) {
+            long frames = duplicateFrameFilter.getFrameCount();
+            long suppressed = duplicateFrameFilter.getSuppressedCount();
+            metrics.add(new Metric<>("image.dedup.frames", frames));
+            metrics.add(new Metric<>("image.dedup.suppressed", suppressed));
+            metrics.add(new Metric<>("image.dedup.suppressionRatio", frames == 0 ? 0.0 : (double) suppressed / frames));
+            metrics.add(new Metric<>("image.dedup.unhashable", duplicateFrameFilter.getUnhashableCount()));
+            metrics.add(new Metric<>("image.dedup.hashMicros", duplicateFrameFilter.getAverageHashMicros()));
+            metrics.add(new Metric<>("image.dedup.sources", duplicateFrameFilter.getTrackedSourceCount()));
+        }
+
+        return metrics;
+    }
+
+    public void setRoutingTable(ImageRoutingTable routingTable) {
+        this.routingTable = routingTable;
+    }
+
+    public void setObjectStore(ObjectStore objectStore) {
+        this.objectStore = objectStore;
+    }
+
+    public void setEventPublisher(ImagePersistedEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    public void setRateLimiter(SourceRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void setFrameSampler(FrameSampler frameSampler) {
+        this.frameSampler = frameSampler;
+    }
+
+    public void setImageIndex(ImageIndex imageIndex) {
+        this.imageIndex = imageIndex;
+    }
+
+    public void setHttpIngestor(HttpImageIngestor httpIngestor) {
+        this.httpIngestor = httpIngestor;
+    }
+
+    public void setImageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    public void setJpegValidator(JpegValidator jpegValidator) {
+        this.jpegValidator = jpegValidator;
+    }
+
+    public void setDuplicateFrameFilter(DuplicateFrameFilter duplicateFrameFilter) {
+        this.duplicateFrameFilter = duplicateFrameFilter;
+    }
+
+    public void setReactiveConsumers(List<ReactiveImageConsumer> reactiveConsumers) {
+        this.reactiveConsumers = reactiveConsumers;
+    }
+
+    private static void addLane(List<Metric<?>> metrics, String prefix, ImageLane lane) {
+        metrics.add(new Metric<>(prefix + ".active", lane.getActiveCount()));
+        metrics.add(new Metric<>(prefix + ".queued", lane.getQueuedCount()));
+        metrics.add(new Metric<>(prefix + ".rejected", lane.getRejectedCount()));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A route of the {@link ImageRoutingTable}: where matching images are stored and the bounded worker pools
+ * (bulkheads) that store them. Raw images and tweets, which first need a slow media download, run in separate
+ * lanes so tweets cannot hold up raw images. A saturated lane rejects work instead of blocking, so it cannot
+ * hold up any other route or lane.
+ */
+public class ImageRoute {
+
+    private final String name;
+    private final String bucket;
+    private final String prefix;
+
+    private final String destination;
+    private final String userPropertyName;
+    private final String userPropertyValue;
+    private final String source;
+
+    private final ImageLane rawLane;
+    private final ImageLane tweetLane;
+
+    public ImageRoute(ImageRoutingProperties.RouteProperties properties, String defaultBucket, String defaultPrefix,
+                      ImageLane.Mode mode) {
+        this(properties.getName(), properties.getBucket() != null ? properties.getBucket() : defaultBucket,
+                properties.getPrefix() != null ? properties.getPrefix() : defaultPrefix,
+                properties.getDestination(), properties.getUserPropertyName(), properties.getUserPropertyValue(),
+                properties.getSource(), properties.getThreads(), properties.getQueueCapacity(),
+                properties.getTweetThreads(), properties.getTweetQueueCapacity(), mode);
+    }
+
+    public ImageRoute(String name, String bucket, String prefix, String destination, String userPropertyName,
+                      String userPropertyValue, String source, int threads, int queueCapacity,
+                      int tweetThreads, int tweetQueueCapacity) {
+        this(name, bucket, prefix, destination, userPropertyName, userPropertyValue, source, threads, queueCapacity,
+                tweetThreads, tweetQueueCapacity, ImageLane.Mode.PLATFORM);
+    }
+
+    public ImageRoute(String name, String bucket, String prefix, String destination, String userPropertyName,
+                      String userPropertyValue, String source, int threads, int queueCapacity,
+                      int tweetThreads, int tweetQueueCapacity, ImageLane.Mode mode) {
+        this.name = name;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.destination = destination;
+        this.userPropertyName = userPropertyName;
+        this.userPropertyValue = userPropertyValue;
+        this.source = source;
+        this.rawLane = new ImageLane("route-" + name + "-raw", threads, queueCapacity, mode);
+        this.tweetLane = new ImageLane("route-" + name + "-tweet", tweetThreads, tweetQueueCapacity, mode);
+    }
+
+    /**
+     * @param msg the message, or null for an image received otherwise, which never matches a destination or user
+     *            property criterion
+     */
+    public boolean matches(BytesXMLMessage msg, String messageSource) {
+        if (destination != null && (msg == null || !matchesDestination(msg.getDestination()))) {
+            return false;
+        }
+        if (userPropertyName != null && (msg == null || !matchesUserProperty(msg.getProperties()))) {
+            return false;
+        }
+        return source == null || source.equals(messageSource);
+    }
+
+    /**
+     * @return the lane persisting the given kind of image
+     */
+    public ImageLane lane(IncomingImage image) {
+        return image.isTweet() ? tweetLane : rawLane;
+    }
+
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        rawLane.shutdown(timeout, unit);
+        tweetLane.shutdown(timeout, unit);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public ImageLane getRawLane() {
+        return rawLane;
+    }
+
+    public ImageLane getTweetLane() {
+        return tweetLane;
+    }
+
+    private boolean matchesDestination(Destination msgDestination) {
+        if (msgDestination == null) {
+            return false;
+        }
+        String msgDestinationName = msgDestination.getName();
+        if (destination.endsWith("*")) {
+            return msgDestinationName.startsWith(destination.substring(0, destination.length() - 1));
+        }
+        return destination.equals(msgDestinationName);
+    }
+
+    private boolean matchesUserProperty(SDTMap properties) {
+        if (properties == null || !properties.containsKey(userPropertyName)) {
+            return false;
+        }
+        if (userPropertyValue == null) {
+            return true;
+        }
+        try {
+            return userPropertyValue.equals(properties.getString(userPropertyName));
+        } catch (SDTException e) {
+            return false;
+        }
+    }
+}
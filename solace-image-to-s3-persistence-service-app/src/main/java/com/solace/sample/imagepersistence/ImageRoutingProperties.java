@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routing table mapping incoming images to a bucket, key prefix and worker pool.
+ * <p>
+ * Example:
+ * <pre>
+ * image.routing.routes[0].name=robots
+ * image.routing.routes[0].destination=robot/*
+ * image.routing.routes[0].bucket=robot-frames
+ * image.routing.routes[0].threads=8
+ * image.routing.routes[1].name=vip
+ * image.routing.routes[1].source=some_screen_name
+ * image.routing.routes[1].prefix=vip/
+ * </pre>
+ * Routes are evaluated in order and the first match wins. Messages matching no route go to the default route,
+ * configured by {@code REINVENT_BUCKET}, {@code OBJECT_KEY_PREFIX}, {@code IMAGE_WORKER_THREADS} and
+ * {@code TWEET_WORKER_THREADS}.
+ */
+@ConfigurationProperties("image.routing")
+public class ImageRoutingProperties {
+
+    private final List<RouteProperties> routes = new ArrayList<>();
+
+    public List<RouteProperties> getRoutes() {
+        return routes;
+    }
+
+    public static class RouteProperties {
+
+        /**
+         * Name of the route, used in logs and thread names.
+         */
+        private String name;
+
+        /**
+         * Destination the message was published to. A trailing '*' matches any destination with that prefix.
+         */
+        private String destination;
+
+        /**
+         * Name of a user property that must be present on the message.
+         */
+        private String userPropertyName;
+
+        /**
+         * Required value of the user property. If absent, any value matches.
+         */
+        private String userPropertyValue;
+
+        /**
+         * Source of the image: the tweet's screen name, or "romo" for raw images.
+         */
+        private String source;
+
+        /**
+         * Bucket the route uploads to. Defaults to REINVENT_BUCKET.
+         */
+        private String bucket;
+
+        /**
+         * Object key prefix of the route. Defaults to OBJECT_KEY_PREFIX.
+         */
+        private String prefix;
+
+        /**
+         * Number of threads persisting the route's raw images.
+         */
+        private int threads = 2;
+
+        /**
+         * Raw images waiting for one of the route's threads. Further images are handed back to the broker for redelivery.
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * Number of threads fetching and persisting the route's tweet media.
+         */
+        private int tweetThreads = 2;
+
+        /**
+         * Tweets waiting for one of the route's tweet threads. Further tweets are handed back to the broker for redelivery.
+         */
+        private int tweetQueueCapacity = 100;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public void setDestination(String destination) {
+            this.destination = destination;
+        }
+
+        public String getUserPropertyName() {
+            return userPropertyName;
+        }
+
+        public void setUserPropertyName(String userPropertyName) {
+            this.userPropertyName = userPropertyName;
+        }
+
+        public String getUserPropertyValue() {
+            return userPropertyValue;
+        }
+
+        public void setUserPropertyValue(String userPropertyValue) {
+            this.userPropertyValue = userPropertyValue;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public void setSource(String source) {
+            this.source = source;
+        }
+
+        public String getBucket() {
+            return bucket;
+        }
+
+        public void setBucket(String bucket) {
+            this.bucket = bucket;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getTweetThreads() {
+            return tweetThreads;
+        }
+
+        public void setTweetThreads(int tweetThreads) {
+            this.tweetThreads = tweetThreads;
+        }
+
+        public int getTweetQueueCapacity() {
+            return tweetQueueCapacity;
+        }
+
+        public void setTweetQueueCapacity(int tweetQueueCapacity) {
+            this.tweetQueueCapacity = tweetQueueCapacity;
+        }
+    }
+}
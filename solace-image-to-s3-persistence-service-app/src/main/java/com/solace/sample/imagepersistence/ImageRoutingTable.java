@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects the {@link ImageRoute} of an incoming image. Routes are evaluated in order, the default route last.
+ */
+public class ImageRoutingTable {
+
+    private final List<ImageRoute> routes;
+    private final ImageRoute defaultRoute;
+
+    public ImageRoutingTable(List<ImageRoute> routes, ImageRoute defaultRoute) {
+        this.routes = new ArrayList<>(routes);
+        this.defaultRoute = defaultRoute;
+    }
+
+    /**
+     * Builds the routing table from configuration, with the environment-configured bucket and prefix as default route.
+     */
+    public static ImageRoutingTable fromProperties(ImageRoutingProperties properties) {
+        String bucketName = Utils.getEnvironmentValue("REINVENT_BUCKET", "jdiamond-reinvent");
+        String objectKeyPrefix = Utils.getEnvironmentValue("OBJECT_KEY_PREFIX", "");
+        int workerThreads = Utils.getEnvironmentIntValue("IMAGE_WORKER_THREADS", 4);
+        int queueCapacity = Utils.getEnvironmentIntValue("IMAGE_WORKER_QUEUE_CAPACITY", 100);
+        int tweetThreads = Utils.getEnvironmentIntValue("TWEET_WORKER_THREADS", 4);
+        int tweetQueueCapacity = Utils.getEnvironmentIntValue("TWEET_WORKER_QUEUE_CAPACITY", 100);
+        ImageLane.Mode mode = ImageLane.Mode.fromName(Utils.getEnvironmentValue("IMAGE_WORKER_MODE", "platform"));
+
+        List<ImageRoute> routes = new ArrayList<>();
+        for (ImageRoutingProperties.RouteProperties route : properties.getRoutes()) {
+            routes.add(new ImageRoute(route, bucketName, objectKeyPrefix, mode));
+        }
+
+        return new ImageRoutingTable(routes, new ImageRoute("default", bucketName, objectKeyPrefix,
+                null, null, null, null, workerThreads, queueCapacity, tweetThreads, tweetQueueCapacity, mode));
+    }
+
+    public ImageRoute route(BytesXMLMessage msg, String source) {
+        for (ImageRoute route : routes) {
+            if (route.matches(msg, source)) {
+                return route;
+            }
+        }
+        return defaultRoute;
+    }
+
+    /**
+     * Routes an image that did not arrive as a message, by its source alone.
+     */
+    public ImageRoute route(String source) {
+        return route(null, source);
+    }
+
+    public List<ImageRoute> getRoutes() {
+        List<ImageRoute> all = new ArrayList<>(routes);
+        all.add(defaultRoute);
+        return Collections.unmodifiableList(all);
+    }
+
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ImageRoute route : getRoutes()) {
+            route.shutdown(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timing of a single sampled message, from its publication to its upload.
+ * <p>
+ * Spans are recorded in the order the message moves through the consumer: broker dwell (sender timestamp to
+ * receipt, subject to clock skew between publisher and consumer), classification, lane queueing, media fetch
+ * (tweets only) and upload. Finished traces are written as one line to the {@code image.trace} logger, which
+ * can be sent to its own file by the logging configuration.
+ */
+public class ImageTrace {
+
+    private static final Logger traceLogger = LoggerFactory.getLogger("image.trace");
+
+    private final String messageId;
+    private final long dwellMillis;
+    private long lastMark;
+
+    private long classifyNanos = -1;
+    private long queueNanos = -1;
+    private long fetchNanos = -1;
+    private long uploadNanos = -1;
+
+    private ImageTrace(String messageId, long dwellMillis, long receivedAt) {
+        this.messageId = messageId;
+        this.dwellMillis = dwellMillis;
+        this.lastMark = receivedAt;
+    }
+
+    /**
+     * Decides which messages are traced.
+     */
+    public static class Sampler {
+
+        private final double sampleRate;
+
+        /**
+         * @param sampleRate fraction of messages traced, from 0 (none) to 1 (all)
+         */
+        public Sampler(double sampleRate) {
+            if (!(sampleRate >= 0 && sampleRate <= 1)) {
+                throw new IllegalArgumentException("Trace sample rate must be between 0 and 1: " + sampleRate);
+            }
+            this.sampleRate = sampleRate;
+        }
+
+        public static Sampler fromEnvironment() {
+            String rate = Utils.getEnvironmentValue("TRACE_SAMPLE_RATE", "0");
+            Sampler sampler;
+            try {
+                sampler = new Sampler(Double.parseDouble(rate));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("TRACE_SAMPLE_RATE is not a number: " + rate, e);
+            }
+            if (sampler.isEnabled()) {
+                traceLogger.info("Tracing a fraction {} of messages", sampler.sampleRate);
+            }
+            return sampler;
+        }
+
+        public boolean isEnabled() {
+            return sampleRate > 0;
+        }
+
+        /**
+         * Starts a trace for the message if it is sampled.
+         *
+         * @param msg the received message
+         * @param receivedAt {@link System#nanoTime()} at receipt
+         * @return the trace, or null if the message is not sampled
+         */
+        public ImageTrace start(BytesXMLMessage msg, long receivedAt) {
+            if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+                return null;
+            }
+            Long senderTimestamp = msg.getSenderTimestamp();
+            long dwellMillis = senderTimestamp == null ? -1 : System.currentTimeMillis() - senderTimestamp;
+            return new ImageTrace(msg.getMessageId(), dwellMillis, receivedAt);
+        }
+    }
+
+    public void classified() {
+        classifyNanos = mark();
+    }
+
+    public void dequeued() {
+        queueNanos = mark();
+    }
+
+    public void fetched() {
+        fetchNanos = mark();
+    }
+
+    public void uploaded() {
+        uploadNanos = mark();
+    }
+
+    /**
+     * Writes the trace.
+     *
+     * @param source source of the image
+     * @param key object key, or null if nothing was uploaded
+     * @param size size of the image in bytes
+     */
+    public void finish(String source, String key, long size) {
+        traceLogger.info("id={} src={} key={} bytes={} dwell_ms={} classify_us={} queue_us={} fetch_us={} upload_us={}",
+                messageId, source, key, size, dwellMillis,
+                micros(classifyNanos), micros(queueNanos), micros(fetchNanos), micros(uploadNanos));
+    }
+
+    private long mark() {
+        long now = System.nanoTime();
+        long span = now - lastMark;
+        lastMark = now;
+        return span;
+    }
+
+    private static long micros(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1000;
+    }
+}
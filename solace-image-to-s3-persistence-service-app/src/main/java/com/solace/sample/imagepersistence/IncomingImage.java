@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import twitter4j.MediaEntity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A classified image message: either a raw image attachment, or a tweet whose media still has to be fetched.
+ */
+public class IncomingImage {
+
+    private final String source;
+    private final ByteBuffer imageData;
+    private final MediaEntity[] medias;
+
+    private IncomingImage(String source, ByteBuffer imageData, MediaEntity[] medias) {
+        this.source = source;
+        this.imageData = imageData;
+        this.medias = medias;
+    }
+
+    public static IncomingImage raw(String source, ByteBuffer imageData) {
+        return new IncomingImage(source, imageData, null);
+    }
+
+    public static IncomingImage tweet(String screenName, MediaEntity[] medias) {
+        return new IncomingImage(screenName, null, medias);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the attached image, read in place from the message, or null for a tweet
+     */
+    public ByteBuffer getImageData() {
+        return imageData;
+    }
+
+    /**
+     * @return the tweet's media entities, or null for a raw image
+     */
+    public MediaEntity[] getMedias() {
+        return medias;
+    }
+
+    public boolean isTweet() {
+        return medias != null;
+    }
+}
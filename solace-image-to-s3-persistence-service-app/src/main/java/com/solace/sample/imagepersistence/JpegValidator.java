@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that an attachment is a complete JPEG before it is uploaded, and reads its dimensions.
+ * <p>
+ * Only the marker structure is walked: SOI, the segments up to the first scan (SOS), of which the frame header
+ * (SOFn) gives the width and height, and the EOI at the end of the data. The entropy-coded scan data is never
+ * read, so the cost depends on the size of the headers and not of the image. This catches non-JPEG payloads,
+ * corrupt headers and truncated uploads, but not damage inside the scan data.
+ * Broken images are handled according to the {@link Policy}.
+ */
+public class JpegValidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(JpegValidator.class);
+
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int TEM = 0x01;
+    private static final int DHT = 0xC4;
+    private static final int JPG = 0xC8;
+    private static final int DAC = 0xCC;
+
+    public enum Policy {
+        /** Upload every image unchecked. */
+        OFF,
+        /** Upload broken images under the quarantine prefix, with the problem in their metadata. */
+        QUARANTINE,
+        /** Drop broken images: their messages are acknowledged without an upload. */
+        REJECT
+    }
+
+    private final Policy policy;
+    private final String quarantinePrefix;
+
+    private final AtomicLong valid = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+
+    public JpegValidator(Policy policy, String quarantinePrefix) {
+        this.policy = policy;
+        this.quarantinePrefix = quarantinePrefix;
+    }
+
+    public static JpegValidator fromEnvironment() {
+        JpegValidator validator = new JpegValidator(
+                Policy.valueOf(Utils.getEnvironmentValue("JPEG_VALIDATION", "quarantine").toUpperCase()),
+                Utils.getEnvironmentValue("JPEG_QUARANTINE_PREFIX", "quarantine/"));
+        if (validator.isEnabled()) {
+            logger.info("Validating JPEG structure before upload, broken images: {}", validator.policy);
+        }
+        return validator;
+    }
+
+    public boolean isEnabled() {
+        return policy != Policy.OFF;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public String getQuarantinePrefix() {
+        return quarantinePrefix;
+    }
+
+    /**
+     * Reads the header of an image and counts the outcome.
+     *
+     * @param data the image, from its position to its limit. The buffer is not modified.
+     */
+    public Header validate(ByteBuffer data) {
+        Header header = read(data);
+        (header.isValid() ? valid : invalid).incrementAndGet();
+        return header;
+    }
+
+    public long getValidCount() {
+        return valid.get();
+    }
+
+    public long getInvalidCount() {
+        return invalid.get();
+    }
+
+    /**
+     * Walks the markers of a JPEG image.
+     *
+     * @param data the image, from its position to its limit. The buffer is not modified.
+     * @return the dimensions of the image, or the first problem found
+     */
+    public static Header read(ByteBuffer data) {
+        int start = data.position();
+        int end = data.limit();
+
+        if (end - start < 4 || u8(data, start) != 0xFF || u8(data, start + 1) != SOI) {
+            return Header.invalid("no SOI marker, not a JPEG image");
+        }
+
+        // encoders and transports may pad the end of the file with zeros
+        int tail = end;
+        while (tail > start + 2 && data.get(tail - 1) == 0) {
+            tail--;
+        }
+        if (u8(data, tail - 2) != 0xFF || u8(data, tail - 1) != EOI) {
+            return Header.invalid("no EOI marker, image truncated");
+        }
+
+        int width = 0;
+        int height = 0;
+        int p = start + 2;
+        while (p < tail) {
+            if (u8(data, p) != 0xFF) {
+                return Header.invalid("expected a marker at offset " + (p - start));
+            }
+            // any number of 0xFF fill bytes may precede a marker
+            while (p < tail && u8(data, p) == 0xFF) {
+                p++;
+            }
+            if (p >= tail) {
+                break;
+            }
+            int marker = u8(data, p++);
+
+            if (marker == TEM || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+            if (marker == EOI || marker == SOI) {
+                return Header.invalid(String.format("unexpected marker 0x%02X before the first scan", marker));
+            }
+            if (p + 2 > tail) {
+                return Header.invalid("segment length missing at offset " + (p - start));
+            }
+            int length = u16(data, p);
+            if (length < 2 || p + length > tail) {
+                return Header.invalid(String.format("segment 0x%02X at offset %d overruns the image", marker, p - start));
+            }
+
+            if (marker >= 0xC0 && marker <= 0xCF && marker != DHT && marker != JPG && marker != DAC) {
+                if (length < 8) {
+                    return Header.invalid("frame header too short");
+                }
+                height = u16(data, p + 3);
+                width = u16(data, p + 5);
+                if (width == 0 || height == 0) {
+                    return Header.invalid("frame header without dimensions");
+                }
+            } else if (marker == SOS) {
+                if (width == 0) {
+                    return Header.invalid("scan before the frame header");
+                }
+                return Header.valid(width, height);
+            }
+            p += length;
+        }
+        return Header.invalid("no scan data");
+    }
+
+    private static int u8(ByteBuffer data, int index) {
+        return data.get(index) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer data, int index) {
+        return ((data.get(index) & 0xFF) << 8) | (data.get(index + 1) & 0xFF);
+    }
+
+    /**
+     * Outcome of reading a JPEG header.
+     */
+    public static final class Header {
+
+        private final int width;
+        private final int height;
+        private final String problem;
+
+        private Header(int width, int height, String problem) {
+            this.width = width;
+            this.height = height;
+            this.problem = problem;
+        }
+
+        static Header valid(int width, int height) {
+            return new Header(width, height, null);
+        }
+
+        static Header invalid(String problem) {
+            return new Header(0, 0, problem);
+        }
+
+        public boolean isValid() {
+            return problem == null;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return what is wrong with the image, or null if it is valid
+         */
+        public String getProblem() {
+            return problem;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Difference hash (dHash) of an image: 64 bits that change little when the image changes little.
+ * <p>
+ * The image is shrunk to 9x8 grey cells and each bit tells whether a cell is brighter than its right neighbour.
+ * Recompression, small shifts in exposure and sensor noise flip few bits, so the Hamming distance between two
+ * hashes measures how different two frames look. To keep the cost down the JPEG is decoded with subsampling, to
+ * at most {@value #DECODED_SIZE} pixels a side.
+ */
+public final class PerceptualHash {
+
+    private static final int DECODED_SIZE = 64;
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * @param jpeg the image, from its position to its limit. The buffer is not modified.
+     * @throws IOException if the image cannot be decoded
+     */
+    public static long dHash(ByteBuffer jpeg) throws IOException {
+        BufferedImage image = decodeSmall(jpeg);
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[COLUMNS * ROWS];
+        int[] counts = new int[COLUMNS * ROWS];
+        for (int y = 0; y < height; y++) {
+            int row = y * ROWS / height;
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                // integer approximation of Rec. 601 luma
+                int luma = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                int cell = row * COLUMNS + x * COLUMNS / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                int left = row * COLUMNS + column;
+                // compare averages without dividing: a/b < c/d <=> a*d < c*b
+                boolean brighter = sums[left] * counts[left + 1] < sums[left + 1] * counts[left];
+                hash = (hash << 1) | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return the number of bits that differ between two hashes, from 0 (alike) to 64
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static BufferedImage decodeSmall(ByteBuffer jpeg) throws IOException {
+        ByteArrayInputStream bytes;
+        if (jpeg.hasArray()) {
+            bytes = new ByteArrayInputStream(jpeg.array(), jpeg.arrayOffset() + jpeg.position(), jpeg.remaining());
+        } else {
+            byte[] copy = new byte[jpeg.remaining()];
+            jpeg.duplicate().get(copy);
+            bytes = new ByteArrayInputStream(copy);
+        }
+
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+        if (!readers.hasNext()) {
+            throw new IOException("No JPEG decoder available");
+        }
+        ImageReader reader = readers.next();
+        // createImageInputStream may cache the stream in a temporary file; the bytes are already in memory
+        try (ImageInputStream in = new MemoryCacheImageInputStream(bytes)) {
+            reader.setInput(in, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            if (width < COLUMNS || height < ROWS) {
+                throw new IOException("Image of " + width + "x" + height + " is too small to hash");
+            }
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(Math.max(1, width / DECODED_SIZE), Math.max(1, height / DECODED_SIZE), 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+}
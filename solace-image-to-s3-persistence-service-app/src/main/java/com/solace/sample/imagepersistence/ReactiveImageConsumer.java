@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.FlowReceiver;
+import com.solacesystems.jcsmp.TextMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Consumes a flow as a backpressured stream of stages instead of on route lanes.
+ * <p>
+ * Messages go from a {@link FlowReceiverPublisher} through these {@link BoundedStage}s:
+ * <ol>
+ * <li>classify: tells serialized tweets from raw images by their first bytes;</li>
+ * <li>decode: deserializes tweets, then applies source statistics, rate limits and routing, holding deferred
+ * messages until their source's next free slot;</li>
+ * <li>fetch: downloads the media of tweets;</li>
+ * <li>dedup: with a {@link DuplicateFrameFilter}, acknowledges frames that look like a recent one;</li>
+ * <li>upload: stores the image;</li>
+ * <li>ack: acknowledges the message.</li>
+ * </ol>
+ * Each stage has its own concurrency limit and every step runs on a virtual thread. Demand flows back from
+ * the ack stage, so when uploads slow down the earlier stages fill up, the publisher's buffer grows and the flow
+ * is stopped until the backlog clears. Messages that fail a step are settled as failed and redelivered.
+ * The flow must use client acknowledgements.
+ */
+public class ReactiveImageConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveImageConsumer.class);
+
+    private final String name;
+    private final ImagePersistenceMessageConsumer steps;
+    private final ImageRoutingTable routingTable;
+    private final BrokerConnection brokerConnection;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final FlowReceiverPublisher publisher;
+    private final List<BoundedStage<?, ?>> stages;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * @param name name of the flow, used in logs and metrics
+     * @param steps consumer whose classification, rate limiting, fetch and upload steps are reused
+     * @param bufferSize messages buffered before the flow is stopped; it restarts at half of them
+     */
+    public ReactiveImageConsumer(String name, ImagePersistenceMessageConsumer steps, ImageRoutingTable routingTable,
+                                 BrokerConnection brokerConnection, int bufferSize,
+                                 int classifyConcurrency, int decodeConcurrency, int fetchConcurrency,
+                                 int dedupConcurrency, int uploadConcurrency) {
+        this.name = name;
+        this.steps = steps;
+        this.routingTable = routingTable;
+        this.brokerConnection = brokerConnection;
+        this.publisher = new FlowReceiverPublisher(name, bufferSize, bufferSize / 2);
+
+        BoundedStage<BytesXMLMessage, ImageJob> classify = new BoundedStage<>("classify", classifyConcurrency,
+                executor, guard(this::classify, msg -> msg));
+        BoundedStage<ImageJob, ImageJob> decode = new BoundedStage<>("decode", decodeConcurrency, executor,
+                guard(this::decode));
+        BoundedStage<ImageJob, ImageJob> fetch = new BoundedStage<>("fetch", fetchConcurrency, executor,
+                guard(this::fetch));
+        BoundedStage<ImageJob, ImageJob> upload = new BoundedStage<>("upload", uploadConcurrency, executor,
+                guard(this::upload));
+
+        publisher.subscribe(classify);
+        classify.subscribe(decode);
+        decode.subscribe(fetch);
+        if (steps.isDeduplicating()) {
+            BoundedStage<ImageJob, ImageJob> dedup = new BoundedStage<>("dedup", dedupConcurrency, executor,
+                    guard(this::dedup));
+            fetch.subscribe(dedup);
+            dedup.subscribe(upload);
+            this.stages = List.of(classify, decode, fetch, dedup, upload);
+        } else {
+            fetch.subscribe(upload);
+            this.stages = List.of(classify, decode, fetch, upload);
+        }
+        upload.subscribe(new AckSubscriber(uploadConcurrency));
+    }
+
+    /**
+     * Builds the pipeline with the sizes set by the REACTIVE_* environment variables.
+     */
+    public static ReactiveImageConsumer fromEnvironment(String name, ImagePersistenceMessageConsumer steps,
+                                                        ImageRoutingTable routingTable,
+                                                        BrokerConnection brokerConnection) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new ReactiveImageConsumer(name, steps, routingTable, brokerConnection,
+                Utils.getEnvironmentIntValue("REACTIVE_BUFFER_SIZE", 512),
+                Utils.getEnvironmentIntValue("REACTIVE_CLASSIFY_CONCURRENCY", processors),
+                Utils.getEnvironmentIntValue("REACTIVE_DECODE_CONCURRENCY", processors),
+                Utils.getEnvironmentIntValue("REACTIVE_FETCH_CONCURRENCY", 64),
+                Utils.getEnvironmentIntValue("REACTIVE_DEDUP_CONCURRENCY", processors),
+                Utils.getEnvironmentIntValue("REACTIVE_UPLOAD_CONCURRENCY", 64));
+    }
+
+    /**
+     * @return the listener to create the flow with
+     */
+    public FlowReceiverPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Starts consuming. Delivery is stopped and restarted by the pipeline from then on.
+     */
+    public void start(FlowReceiver flow) {
+        publisher.start(flow);
+    }
+
+    /**
+     * Stops delivery and waits for the messages in the pipeline to be uploaded and acknowledged.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        publisher.complete();
+        if (!finished.await(timeout, unit)) {
+            logger.warn("Pipeline {} did not drain in time, unfinished messages will be redelivered", name);
+        }
+        executor.shutdown();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<BoundedStage<?, ?>> getStages() {
+        return stages;
+    }
+
+    private ImageJob classify(BytesXMLMessage msg) {
+        long receivedAt = System.nanoTime();
+        if (brokerConnection != null) {
+            brokerConnection.recordDelivery(msg);
+        }
+
+        if (msg instanceof TextMessage) {
+            logger.debug("============= TextMessage received: {}", ((TextMessage) msg).getText());
+            msg.ackMessage();
+            return null;
+        }
+
+        ImageJob job = new ImageJob(msg, receivedAt, steps.startTrace(msg, receivedAt));
+        ByteBuffer attachment = msg.getAttachmentByteBuffer();
+        if (!ImagePersistenceMessageConsumer.isSerialized(attachment)) {
+            // uploaded straight from the message, without a copy
+            job.image = IncomingImage.raw("romo", attachment);
+        }
+        return job;
+    }
+
+    private ImageJob decode(ImageJob job) throws InterruptedException {
+        if (job.image == null) {
+            job.image = steps.decode(job.msg);
+            if (job.image == null) {
+                job.image = IncomingImage.raw("romo", job.msg.getAttachmentByteBuffer());
+            }
+        }
+        long delayNanos = steps.admit(job.msg, job.image);
+        if (delayNanos < 0) {
+            return null;
+        }
+        if (delayNanos > 0) {
+            // wait for the source's next free slot on this virtual thread: the message holds its place in the
+            // decode stage, so a backlog of deferred messages stops the flow like any other slow stage
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        }
+        job.route = routingTable.route(job.msg, job.image.getSource());
+        if (job.trace != null) {
+            job.trace.classified();
+        }
+        return job;
+    }
+
+    private ImageJob fetch(ImageJob job) {
+        if (job.trace != null) {
+            job.trace.dequeued();
+        }
+        job.data = job.image.isTweet() ? steps.fetch(job.image, job.trace) : job.image.getImageData();
+        return job;
+    }
+
+    private ImageJob dedup(ImageJob job) {
+        if (job.data != null && steps.isDuplicate(job.image.getSource(), job.data, job.trace)) {
+            job.msg.ackMessage();
+            return null;
+        }
+        return job;
+    }
+
+    private ImageJob upload(ImageJob job) throws Exception {
+        if (job.data == null) {
+            logger.debug("============= No image to persist from {}", job.image.getSource());
+            if (job.trace != null) {
+                job.trace.finish(job.image.getSource(), null, 0);
+            }
+        } else {
+            steps.upload(job.image.getSource(), job.data, job.route, job.receivedAt, job.trace);
+        }
+        return job;
+    }
+
+    private BoundedStage.Step<ImageJob, ImageJob> guard(BoundedStage.Step<ImageJob, ImageJob> step) {
+        return guard(step, job -> job.msg);
+    }
+
+    /**
+     * Hands the message of a failed step back to the broker, so that it does not stay unacknowledged.
+     */
+    private <T> BoundedStage.Step<T, ImageJob> guard(BoundedStage.Step<T, ImageJob> step,
+                                                     Function<T, BytesXMLMessage> messageOf) {
+        return item -> {
+            try {
+                return step.apply(item);
+            } catch (Exception e) {
+                BytesXMLMessage msg = messageOf.apply(item);
+                logger.error("Could not process message {}", msg.getMessageId(), e);
+                steps.redeliver(msg, "Processing failed");
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Last stage: acknowledges processed messages and keeps demand flowing upstream.
+     */
+    private class AckSubscriber implements Flow.Subscriber<ImageJob> {
+
+        private final int window;
+        private Flow.Subscription subscription;
+
+        AckSubscriber(int window) {
+            this.window = window;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(window);
+        }
+
+        @Override
+        public void onNext(ImageJob job) {
+            job.msg.ackMessage();
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            logger.error("Pipeline {} failed", name, throwable);
+            finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * A message on its way through the stages.
+     */
+    private static class ImageJob {
+
+        final BytesXMLMessage msg;
+        final long receivedAt;
+        final ImageTrace trace;
+        IncomingImage image;
+        ImageRoute route;
+        ByteBuffer data;
+
+        ImageJob(BytesXMLMessage msg, long receivedAt, ImageTrace trace) {
+            this.msg = msg;
+            this.receivedAt = receivedAt;
+            this.trace = trace;
+        }
+    }
+}
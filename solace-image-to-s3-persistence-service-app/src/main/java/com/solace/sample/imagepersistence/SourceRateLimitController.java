@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows which sources are being held back by their rate limit.
+ */
+@RestController
+public class SourceRateLimitController {
+
+    @Autowired private SourceRateLimiter rateLimiter;
+
+    /**
+     * @param limit maximum number of sources returned
+     * @return the admitted and throttled counts of the most throttled sources, most throttled first
+     */
+    @RequestMapping(value = "/sources/throttled", method = RequestMethod.GET)
+    public List<Map<String, Object>> throttled(@RequestParam(value = "limit", defaultValue = "100") int limit) {
+        // snapshot the counters first, they keep moving while we sort
+        List<Map<String, Object>> sources = new ArrayList<>();
+        for (Map.Entry<String, SourceTokenBucket> entry : rateLimiter.getBuckets().entrySet()) {
+            long throttled = entry.getValue().getThrottledCount();
+            if (throttled > 0) {
+                Map<String, Object> source = new LinkedHashMap<>();
+                source.put("source", entry.getKey());
+                source.put("admitted", entry.getValue().getAdmittedCount());
+                source.put("throttled", throttled);
+                sources.add(source);
+            }
+        }
+
+        Collections.sort(sources, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                return Long.compare((Long) b.get("throttled"), (Long) a.get("throttled"));
+            }
+        });
+        return sources.size() > limit ? sources.subList(0, limit) : sources;
+    }
+}
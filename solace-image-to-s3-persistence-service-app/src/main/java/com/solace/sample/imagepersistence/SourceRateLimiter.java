@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-source rate limits, so that one chatty account or misbehaving robot cannot crowd out everyone else.
+ * <p>
+ * Every source gets its own {@link SourceTokenBucket}. Buckets live in a bounded map: buckets of sources that have
+ * been silent for {@code idleMillis} are swept out when the map is full, and sources that still find no room share
+ * a single overflow bucket. Messages over the limit are handled according to the {@link Policy}.
+ * <p>
+ * Deferred messages are not handed back to the broker, which would redeliver them at once. Each one books the
+ * next free slot of its source's bucket and is held until then, up to {@code maxDeferMillis}.
+ */
+public class SourceRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceRateLimiter.class);
+
+    static final String OVERFLOW_SOURCE = "(other)";
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    static final long DEFAULT_MAX_DEFER_MILLIS = 10000;
+
+    public enum Policy {
+        /**
+         * Hold over-limit messages until their source's next free slot, and drop those that would wait longer
+         * than {@code maxDeferMillis}. Needs client acknowledgement.
+         */
+        DEFER,
+        /** Keep one in every {@code sampleEvery} over-limit messages and drop the rest. */
+        SAMPLE,
+        /** Drop every over-limit message. */
+        DROP
+    }
+
+    public enum Decision {
+        ADMIT, DEFER, DROP
+    }
+
+    private final double rate;
+    private final int burst;
+    private final Policy policy;
+    private final int sampleEvery;
+    private final int maxSources;
+    private final long idleNanos;
+    private final long maxDeferNanos;
+    private final ScheduledExecutorService deferred;
+
+    private final ConcurrentHashMap<String, SourceTokenBucket> buckets = new ConcurrentHashMap<>();
+    private final SourceTokenBucket overflow;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final AtomicLong deferralsRefused = new AtomicLong();
+
+    /**
+     * @param rate messages per second allowed per source, or 0 to disable rate limiting
+     */
+    public SourceRateLimiter(double rate, int burst, Policy policy, int sampleEvery, int maxSources, long idleMillis) {
+        this(rate, burst, policy, sampleEvery, maxSources, idleMillis, DEFAULT_MAX_DEFER_MILLIS);
+    }
+
+    /**
+     * @param rate messages per second allowed per source, or 0 to disable rate limiting
+     * @param maxDeferMillis longest a deferred message is held for its source's next free slot
+     */
+    public SourceRateLimiter(double rate, int burst, Policy policy, int sampleEvery, int maxSources, long idleMillis,
+                             long maxDeferMillis) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.policy = policy;
+        this.sampleEvery = Math.max(1, sampleEvery);
+        this.maxSources = maxSources;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.maxDeferNanos = TimeUnit.MILLISECONDS.toNanos(maxDeferMillis);
+        this.deferred = rate > 0 && policy == Policy.DEFER
+                ? Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "deferred-messages");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        this.overflow = rate > 0 ? new SourceTokenBucket(rate, this.burst, System.nanoTime()) : null;
+    }
+
+    public static SourceRateLimiter fromEnvironment() {
+        double rate = Double.parseDouble(Utils.getEnvironmentValue("SOURCE_RATE_LIMIT", "0"));
+        SourceRateLimiter limiter = new SourceRateLimiter(rate,
+                Utils.getEnvironmentIntValue("SOURCE_RATE_BURST", (int) Math.max(1, Math.ceil(rate))),
+                Policy.valueOf(Utils.getEnvironmentValue("SOURCE_RATE_LIMIT_POLICY", "drop").toUpperCase()),
+                Utils.getEnvironmentIntValue("SOURCE_RATE_LIMIT_SAMPLE_EVERY", 10),
+                Utils.getEnvironmentIntValue("SOURCE_RATE_LIMIT_MAX_SOURCES", 10000),
+                Utils.getEnvironmentLongValue("SOURCE_RATE_LIMIT_IDLE_MS", 60000),
+                Utils.getEnvironmentLongValue("SOURCE_RATE_LIMIT_MAX_DEFER_MS", DEFAULT_MAX_DEFER_MILLIS));
+        if (limiter.isEnabled()) {
+            logger.info("Rate limiting each source to {} msg/s (burst {}), over-limit policy {}",
+                    rate, limiter.burst, limiter.policy);
+        }
+        return limiter;
+    }
+
+    public boolean isEnabled() {
+        return rate > 0;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public Decision admit(String source) {
+        if (!isEnabled()) {
+            return Decision.ADMIT;
+        }
+
+        long now = System.nanoTime();
+        SourceTokenBucket bucket = bucket(source, now);
+        if (bucket.tryAcquire(now)) {
+            return Decision.ADMIT;
+        }
+
+        switch (policy) {
+            case DEFER:
+                return Decision.DEFER;
+            case SAMPLE:
+                return bucket.getThrottledCount() % sampleEvery == 0 ? Decision.ADMIT : Decision.DROP;
+            default:
+                return Decision.DROP;
+        }
+    }
+
+    /**
+     * Books the next free slot of a source that {@link #admit(String) was deferred}.
+     *
+     * @return nanoseconds until the slot, or -1 if it is more than {@code maxDeferMillis} away and the message
+     * must be dropped instead
+     */
+    public long reserve(String source) {
+        long now = System.nanoTime();
+        long delay = bucket(source, now).reserve(now, maxDeferNanos);
+        if (delay < 0) {
+            deferralsRefused.incrementAndGet();
+        } else {
+            deferredCount.incrementAndGet();
+        }
+        return delay;
+    }
+
+    /**
+     * Runs the task once a deferred message's slot has come.
+     *
+     * @param delayNanos delay returned by {@link #reserve(String)}
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        deferred.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the bucket of every tracked source, including the shared overflow bucket
+     */
+    public Map<String, SourceTokenBucket> getBuckets() {
+        if (!isEnabled()) {
+            return Collections.emptyMap();
+        }
+        Map<String, SourceTokenBucket> all = new HashMap<>(buckets);
+        all.put(OVERFLOW_SOURCE, overflow);
+        return all;
+    }
+
+    public long getThrottledCount() {
+        long throttled = 0;
+        for (SourceTokenBucket bucket : getBuckets().values()) {
+            throttled += bucket.getThrottledCount();
+        }
+        return throttled;
+    }
+
+    /**
+     * @return messages held for a later slot
+     */
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * @return deferred messages dropped because their slot was more than {@code maxDeferMillis} away
+     */
+    public long getDeferralsRefusedCount() {
+        return deferralsRefused.get();
+    }
+
+    public int getTrackedSourceCount() {
+        return buckets.size();
+    }
+
+    private SourceTokenBucket bucket(String source, long now) {
+        SourceTokenBucket bucket = buckets.get(source);
+        if (bucket != null) {
+            return bucket;
+        }
+
+        if (buckets.size() >= maxSources) {
+            sweep(now);
+            if (buckets.size() >= maxSources) {
+                return overflow;
+            }
+        }
+
+        bucket = new SourceTokenBucket(rate, burst, now);
+        SourceTokenBucket existing = buckets.putIfAbsent(source, bucket);
+        return existing != null ? existing : bucket;
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, SourceTokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().isIdle(now, idleNanos)) {
+                buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
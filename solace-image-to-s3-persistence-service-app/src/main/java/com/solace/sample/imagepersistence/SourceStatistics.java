@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heaviest sources of recent traffic, by number of messages and by bytes received.
+ * <p>
+ * Every received message is recorded, from every flow and lane, so recording takes no lock in the common case
+ * (see {@link HeavyHitters}). With {@code k} set to 0 nothing is tracked and recording is skipped.
+ */
+public class SourceStatistics {
+
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int SKETCH_DEPTH = 4;
+
+    private final HeavyHitters messages;
+    private final HeavyHitters bytes;
+
+    private final long windowMillis;
+
+    /**
+     * @param k number of heaviest sources tracked, or 0 to disable the statistics
+     */
+    public SourceStatistics(int k, long windowMillis) {
+        this.messages = k > 0 ? new HeavyHitters(k, SKETCH_WIDTH, SKETCH_DEPTH, windowMillis) : null;
+        this.bytes = k > 0 ? new HeavyHitters(k, SKETCH_WIDTH, SKETCH_DEPTH, windowMillis) : null;
+        this.windowMillis = windowMillis;
+    }
+
+    public static SourceStatistics fromEnvironment() {
+        return new SourceStatistics(Utils.getEnvironmentIntValue("SOURCE_STATS_TOP_K", 50),
+                Utils.getEnvironmentLongValue("SOURCE_STATS_WINDOW_MS", 60000));
+    }
+
+    public boolean isEnabled() {
+        return messages != null;
+    }
+
+    public void record(String source, long size) {
+        if (!isEnabled()) {
+            return;
+        }
+        messages.add(source, 1);
+        bytes.add(source, size);
+    }
+
+    /**
+     * @param byBytes rank by bytes rather than by number of messages
+     * @param limit maximum number of sources returned
+     * @return the estimated decayed message and byte totals of the heaviest sources, heaviest first
+     */
+    public List<Map<String, Object>> top(boolean byBytes, int limit) {
+        List<Map<String, Object>> sources = new ArrayList<>();
+        if (!isEnabled()) {
+            return sources;
+        }
+        for (Map.Entry<String, Long> entry : (byBytes ? bytes : messages).top()) {
+            if (sources.size() >= limit) {
+                break;
+            }
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("source", entry.getKey());
+            source.put("messages", byBytes ? messages.estimate(entry.getKey()) : entry.getValue());
+            source.put("bytes", byBytes ? entry.getValue() : bytes.estimate(entry.getKey()));
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+}
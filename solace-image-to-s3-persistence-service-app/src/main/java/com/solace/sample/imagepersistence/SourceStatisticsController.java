@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shows which sources recent traffic comes from.
+ */
+@RestController
+public class SourceStatisticsController {
+
+    @Autowired private SourceStatistics sourceStatistics;
+
+    /**
+     * @param by "messages" or "bytes"
+     * @param limit maximum number of sources returned
+     */
+    @RequestMapping(value = "/sources/top", method = RequestMethod.GET)
+    public Map<String, Object> top(@RequestParam(value = "by", defaultValue = "messages") String by,
+                                   @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        boolean byBytes;
+        if ("bytes".equals(by)) {
+            byBytes = true;
+        } else if ("messages".equals(by)) {
+            byBytes = false;
+        } else {
+            throw new IllegalArgumentException("Unknown ranking: " + by);
+        }
+
+        Map<String, Object> top = new LinkedHashMap<>();
+        top.put("by", by);
+        top.put("halfLifeMillis", sourceStatistics.getWindowMillis());
+        top.put("sources", sourceStatistics.top(byBytes, limit));
+        return top;
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> badRequest(IllegalArgumentException e) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", e.getMessage());
+        return error;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket for one source, refilled at {@code rate} tokens per second up to {@code burst} tokens.
+ * <p>
+ * The bucket is kept as a single "theoretical arrival time" (the GCRA form of a token bucket): each admitted
+ * message pushes it forward by one emission interval, and a message is refused when that would put it more than
+ * {@code burst} intervals ahead of now. A single compare-and-set per message keeps it free of locks.
+ */
+public class SourceTokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    private final AtomicLong theoreticalArrival;
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    public SourceTokenBucket(double rate, int burst, long now) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        this.toleranceNanos = intervalNanos * burst;
+        this.theoreticalArrival = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param now current {@link System#nanoTime()}
+     * @return true if the message is within the rate
+     */
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > toleranceNanos) {
+                throttled.incrementAndGet();
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Books the next free slot for a message over the rate, so that it can be processed then instead of refused.
+     * Later messages queue up behind it.
+     *
+     * @param now current {@link System#nanoTime()}
+     * @param maxDelayNanos furthest slot to book
+     * @return nanoseconds from now until the slot, or -1 if the next free slot is further away than
+     * {@code maxDelayNanos} and nothing was booked
+     */
+    public long reserve(long now, long maxDelayNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long delay = Math.max(0, next - now - toleranceNanos);
+            if (delay > maxDelayNanos) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return delay;
+            }
+        }
+    }
+
+    /**
+     * @return true if the bucket has been full, and the source silent, for at least {@code idleNanos}
+     */
+    public boolean isIdle(long now, long idleNanos) {
+        return now - theoreticalArrival.get() > idleNanos;
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+}
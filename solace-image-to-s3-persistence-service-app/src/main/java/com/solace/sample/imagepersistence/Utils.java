@@ -12,4 +12,23 @@ public final class Utils {
 
         return envValue;
     }
+
+    public static int getEnvironmentIntValue(String varName, int defaultValue) {
+        return (int) getEnvironmentLongValue(varName, defaultValue);
+    }
+
+    public static long getEnvironmentLongValue(String varName, long defaultValue) {
+
+        String envValue = getEnvironmentValue(varName, null);
+
+        if (envValue == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(envValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Environment variable " + varName + " must be a number but was: " + envValue, e);
+        }
+    }
 }
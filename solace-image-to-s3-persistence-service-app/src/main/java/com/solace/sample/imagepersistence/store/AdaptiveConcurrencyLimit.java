@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to the observed latency of the calls it guards.
+ * <p>
+ * The limit follows an AIMD scheme. While latency stays within {@code latencyTolerance} times the lowest
+ * latency recently seen and the limit is actually being used, it grows by one per limit's worth of calls.
+ * On a throttling response it is halved; on latency inflation it shrinks by a tenth. Decreases happen at most
+ * once per observed round trip, so one burst of slow calls counts once.
+ * <p>
+ * A large upload naturally takes longer than a small one, so latency is only compared with that of uploads of
+ * a similar size: the lowest latency is kept per size class, each class twice as large as the previous one.
+ * Mixed traffic then does not read as inflation.
+ * <p>
+ * Waiting callers park on a {@link ReentrantLock} condition rather than in a monitor, so that virtual threads
+ * waiting for the limit release their carrier thread.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double THROTTLED_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final long MIN_LATENCY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // size classes: up to 16 KB, up to 32 KB, ... and 256 MB or more
+    private static final int SMALLEST_CLASS_SHIFT = 14;
+    private static final int SIZE_CLASSES = 16;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+
+    private double limit;
+    private int inFlight;
+    private final long[] minLatencyNanos = new long[SIZE_CLASSES];
+    private final long[] minLatencySince = new long[SIZE_CLASSES];
+    private long lastDecrease = System.nanoTime();
+
+    private long throttledCount;
+    private long inflatedCount;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    public AdaptiveConcurrencyLimit(int minLimit, int initialLimit, int maxLimit, double latencyTolerance) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || latencyTolerance <= 1) {
+            throw new IllegalArgumentException("Need 1 <= min <= initial <= max and a latency tolerance above 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.latencyTolerance = latencyTolerance;
+        Arrays.fill(minLatencyNanos, Long.MAX_VALUE);
+        Arrays.fill(minLatencySince, System.nanoTime());
+    }
+
+    /**
+     * Waits until a call may start.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a call that completed, successfully or with a throttling response, and adapts the limit to it.
+     *
+     * @param latencyNanos duration of the call
+     * @param bytes size of the content the call carried, which its latency is judged against
+     * @param throttled true if the call was rejected because the service is overloaded
+     */
+    public void release(long latencyNanos, long bytes, boolean throttled) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            boolean saturated = inFlight >= (int) limit / 2;
+            inFlight--;
+
+            if (throttled) {
+                throttledCount++;
+                decrease(THROTTLED_BACKOFF, latencyNanos, now);
+            } else {
+                int sizeClass = sizeClass(bytes);
+                if (now - minLatencySince[sizeClass] > MIN_LATENCY_WINDOW_NANOS) {
+                    // forget old minimums so the baseline can follow a lasting change in latency
+                    minLatencyNanos[sizeClass] = latencyNanos;
+                    minLatencySince[sizeClass] = now;
+                } else {
+                    minLatencyNanos[sizeClass] = Math.min(minLatencyNanos[sizeClass], latencyNanos);
+                }
+
+                if (latencyNanos > minLatencyNanos[sizeClass] * latencyTolerance) {
+                    inflatedCount++;
+                    decrease(LATENCY_BACKOFF, latencyNanos, now);
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a call that failed for a reason unrelated to load. The limit is left as it is.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getThrottledCount() {
+        lock.lock();
+        try {
+            return throttledCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getInflatedCount() {
+        lock.lock();
+        try {
+            return inflatedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the size class of an upload of the given size, 0 for anything under 16 KB
+     */
+    public static int sizeClass(long bytes) {
+        long units = bytes >>> SMALLEST_CLASS_SHIFT;
+        return units == 0 ? 0 : Math.min(SIZE_CLASSES - 1, 64 - Long.numberOfLeadingZeros(units));
+    }
+
+    private void decrease(double ratio, long latencyNanos, long now) {
+        if (now - lastDecrease < latencyNanos) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * ratio);
+        lastDecrease = now;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Bounds the number of concurrent uploads to another {@link ObjectStore} with an {@link AdaptiveConcurrencyLimit}.
+ * Reads are not limited.
+ */
+public class ConcurrencyLimitedObjectStore implements ObjectStore {
+
+    private final ObjectStore delegate;
+    private final AdaptiveConcurrencyLimit limit;
+
+    public ConcurrencyLimitedObjectStore(ObjectStore delegate, AdaptiveConcurrencyLimit limit) {
+        this.delegate = delegate;
+        this.limit = limit;
+    }
+
+    @Override
+    public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata)
+            throws IOException {
+        limited(bucket, key, data.remaining(), () -> delegate.put(bucket, key, data, contentType, userMetadata));
+    }
+
+    @Override
+    public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata,
+                    ContentChecksums checksums) throws IOException {
+        limited(bucket, key, data.remaining(),
+                () -> delegate.put(bucket, key, data, contentType, userMetadata, checksums));
+    }
+
+    private void limited(String bucket, String key, int bytes, Upload upload) throws IOException {
+        try {
+            limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to upload " + bucket + "/" + key);
+        }
+
+        long start = System.nanoTime();
+        try {
+            upload.run();
+        } catch (ObjectStoreException e) {
+            if (e.isThrottled()) {
+                limit.release(System.nanoTime() - start, bytes, true);
+            } else {
+                limit.release();
+            }
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            limit.release();
+            throw e;
+        }
+        limit.release(System.nanoTime() - start, bytes, false);
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key) throws IOException {
+        return delegate.get(bucket, key);
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key, long maxBytes) throws IOException {
+        return delegate.get(bucket, key, maxBytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    public AdaptiveConcurrencyLimit getLimit() {
+        return limit;
+    }
+
+    private interface Upload {
+        void run() throws IOException;
+    }
+}
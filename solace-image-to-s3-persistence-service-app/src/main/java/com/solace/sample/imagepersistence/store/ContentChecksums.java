@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * MD5, CRC32C and, optionally, SHA-256 of an object's content, sent with its upload so that it can be verified
+ * where it is stored.
+ * <p>
+ * The checksums are computed together in a single pass: the content is walked in chunks small enough to stay in
+ * the L1 cache, and each chunk is fed to every checksum before moving on, so the content is read from memory once
+ * whatever the number of checksums. The digests themselves are compute-bound, though: MD5 runs at about 500 MB/s
+ * and dominates the cost, so this only pays off for images larger than the CPU caches.
+ */
+public final class ContentChecksums {
+
+    public enum Mode {
+        /** Upload without checksums. */
+        OFF,
+        /** Send the MD5 and CRC32C. */
+        MD5,
+        /** Send the SHA-256 as well. */
+        ALL
+    }
+
+    /*
+     * User metadata keys of the checksums. They are bare names: the S3 client adds the x-amz-meta- prefix to
+     * every user metadata key when it sends the request.
+     */
+    public static final String MD5_KEY = "content-md5";
+    public static final String CRC32C_KEY = "crc32c";
+    public static final String SHA256_KEY = "sha256";
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final MessageDigest MD5 = getDigest("MD5");
+    private static final MessageDigest SHA256 = getDigest("SHA-256");
+
+    private final byte[] md5;
+    private final long crc32c;
+    private final byte[] sha256;
+
+    private ContentChecksums(byte[] md5, long crc32c, byte[] sha256) {
+        this.md5 = md5;
+        this.crc32c = crc32c;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * Computes the checksums of a buffer's content, from its position to its limit. The buffer is not modified.
+     *
+     * @param withSha256 whether to compute SHA-256 too, which costs several times more than MD5 and CRC32C together
+     */
+    public static ContentChecksums compute(ByteBuffer data, boolean withSha256) {
+        MessageDigest md5 = newDigest(MD5);
+        MessageDigest sha256 = withSha256 ? newDigest(SHA256) : null;
+        CRC32C crc = new CRC32C();
+
+        ByteBuffer chunk = data.duplicate();
+        int end = chunk.limit();
+        for (int start = chunk.position(); start < end; start += CHUNK_SIZE) {
+            chunk.limit(Math.min(end, start + CHUNK_SIZE));
+            chunk.position(start);
+            md5.update(chunk);
+            chunk.position(start);
+            crc.update(chunk);
+            if (sha256 != null) {
+                chunk.position(start);
+                sha256.update(chunk);
+            }
+        }
+        return new ContentChecksums(md5.digest(), crc.getValue(), sha256 == null ? null : sha256.digest());
+    }
+
+    public byte[] getMd5() {
+        return md5.clone();
+    }
+
+    /**
+     * @return the MD5 in the base64 form of a Content-MD5 header
+     */
+    public String getMd5Base64() {
+        return Base64.getEncoder().encodeToString(md5);
+    }
+
+    public long getCrc32c() {
+        return crc32c;
+    }
+
+    /**
+     * @return the CRC32C as the base64 of its four big-endian bytes, the form S3 uses for its own checksums
+     */
+    public String getCrc32cBase64() {
+        byte[] bytes = {(byte) (crc32c >>> 24), (byte) (crc32c >>> 16), (byte) (crc32c >>> 8), (byte) crc32c};
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return the SHA-256, or null if it was not computed
+     */
+    public byte[] getSha256() {
+        return sha256 == null ? null : sha256.clone();
+    }
+
+    /**
+     * @return the SHA-256 in base64, or null if it was not computed
+     */
+    public String getSha256Base64() {
+        return sha256 == null ? null : Base64.getEncoder().encodeToString(sha256);
+    }
+
+    /**
+     * Adds the checksums to a user metadata map, for stores that keep them rather than verify them.
+     */
+    public void addTo(Map<String, String> userMetadata) {
+        userMetadata.put(MD5_KEY, getMd5Base64());
+        userMetadata.put(CRC32C_KEY, getCrc32cBase64());
+        if (sha256 != null) {
+            userMetadata.put(SHA256_KEY, getSha256Base64());
+        }
+    }
+
+    private static MessageDigest getDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support MD5 and SHA-256
+            throw new IllegalStateException(algorithm + " is not available", e);
+        }
+    }
+
+    private static MessageDigest newDigest(MessageDigest prototype) {
+        // cloning skips the provider lookup of getInstance
+        try {
+            return (MessageDigest) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return getDigest(prototype.getAlgorithm());
+        }
+    }
+}
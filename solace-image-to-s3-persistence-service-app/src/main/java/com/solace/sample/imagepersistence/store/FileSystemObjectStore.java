@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ObjectStore} writing each object to {@code root/bucket/key} on the local filesystem.
+ * <p>
+ * Content is written through a {@link FileChannel} from the caller's buffer. Direct and mapped buffers are
+ * written as they are, while the JDK copies a heap buffer through a temporary direct buffer first. Objects are
+ * read back as memory-mapped buffers, without a copy. User metadata is kept in extended attributes where the
+ * filesystem supports them.
+ * <p>
+ * Objects are durable when {@link #put} returns. Each writer syncs its own temporary file on its own thread, so
+ * every object still costs one content sync. Only the directory syncs are shared: writers hand their synced file
+ * to a background thread that renames all files handed over in the last {@code directorySyncIntervalMillis} into
+ * place and then syncs each affected directory once for all of them.
+ */
+public class FileSystemObjectStore implements ObjectStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemObjectStore.class);
+
+    private final Path root;
+    private final long directorySyncIntervalMillis;
+    private final AtomicLong tempFileCounter = new AtomicLong();
+    private final Thread committer;
+
+    private List<Commit> pending = new ArrayList<>();
+    private boolean closed;
+    private volatile boolean metadataSupported = true;
+
+    public FileSystemObjectStore(Path root, long directorySyncIntervalMillis) throws IOException {
+        this.root = Files.createDirectories(root).toRealPath();
+        this.directorySyncIntervalMillis = directorySyncIntervalMillis;
+        this.committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitLoop();
+            }
+        }, "object-store-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    @Override
+    public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata)
+            throws IOException {
+        Path target = resolve(bucket, key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + tempFileCounter.incrementAndGet());
+
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer content = data.duplicate();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            writeMetadata(temp, userMetadata);
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        channel.close();
+
+        Commit commit = new Commit(temp, target);
+        synchronized (this) {
+            if (closed) {
+                Files.deleteIfExists(temp);
+                throw new IOException("Object store is closed");
+            }
+            pending.add(commit);
+            notifyAll();
+        }
+        commit.await();
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key) throws IOException {
+        return get(bucket, key, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key, long maxBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(bucket, key), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxBytes) {
+                throw new ObjectTooLargeException(bucket, key, size, maxBytes);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the object store");
+        }
+    }
+
+    private Path resolve(String bucket, String key) throws IOException {
+        Path bucketDirectory = root.resolve(bucket).normalize();
+        Path path = bucketDirectory.resolve(key).normalize();
+        if (!bucketDirectory.startsWith(root) || bucketDirectory.equals(root)
+                || !path.startsWith(bucketDirectory) || path.equals(bucketDirectory)) {
+            throw new IOException("Invalid object key: " + bucket + "/" + key);
+        }
+        return path;
+    }
+
+    private void writeMetadata(Path path, Map<String, String> userMetadata) throws IOException {
+        if (!metadataSupported || userMetadata.isEmpty()) {
+            return;
+        }
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        try {
+            if (view == null) {
+                throw new UnsupportedOperationException("no user-defined file attributes");
+            }
+            for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+                view.write(entry.getKey(), StandardCharsets.UTF_8.encode(entry.getValue()));
+            }
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.warn("Filesystem does not accept user metadata, it will not be stored: {}", e.toString());
+            metadataSupported = false;
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            List<Commit> group;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                group = pending;
+                pending = new ArrayList<>();
+            }
+
+            commit(group);
+
+            if (directorySyncIntervalMillis > 0) {
+                // let further writers join the next group
+                try {
+                    TimeUnit.MILLISECONDS.sleep(directorySyncIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void commit(List<Commit> group) {
+        Set<Path> directories = new HashSet<>();
+        for (Commit commit : group) {
+            try {
+                // the content is already synced by its writer, only the renames remain
+                Files.move(commit.temp, commit.target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                directories.add(commit.target.getParent());
+            } catch (IOException e) {
+                commit.fail(e);
+            }
+        }
+
+        IOException directoryFailure = null;
+        for (Path directory : directories) {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                directoryFailure = e;
+            }
+        }
+
+        for (Commit commit : group) {
+            if (directoryFailure != null) {
+                commit.fail(directoryFailure);
+            }
+            commit.done.countDown();
+        }
+    }
+
+    private static class Commit {
+
+        private final Path temp;
+        private final Path target;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException failure;
+
+        Commit(Path temp, Path target) {
+            this.temp = temp;
+            this.target = target;
+        }
+
+        void fail(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + target + " to be committed");
+            }
+            if (failure != null) {
+                throw new IOException("Could not commit " + target, failure);
+            }
+        }
+    }
+}
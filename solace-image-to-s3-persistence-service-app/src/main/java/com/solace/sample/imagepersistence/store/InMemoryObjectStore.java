@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ObjectStore} keeping objects on the heap, for tests and offline benchmarks. Nothing is evicted.
+ */
+public class InMemoryObjectStore implements ObjectStore {
+
+    private final ConcurrentHashMap<String, StoredObject> objects = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata) {
+        byte[] content = new byte[data.remaining()];
+        data.duplicate().get(content);
+        objects.put(bucket + "/" + key, new StoredObject(content, new HashMap<>(userMetadata)));
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key) {
+        StoredObject object = objects.get(bucket + "/" + key);
+        return object == null ? null : ByteBuffer.wrap(object.content).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the user metadata of an object, or null if there is no such object
+     */
+    public Map<String, String> getUserMetadata(String bucket, String key) {
+        StoredObject object = objects.get(bucket + "/" + key);
+        return object == null ? null : Collections.unmodifiableMap(object.userMetadata);
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    @Override
+    public void close() {
+        objects.clear();
+    }
+
+    private static class StoredObject {
+
+        private final byte[] content;
+        private final Map<String, String> userMetadata;
+
+        StoredObject(byte[] content, Map<String, String> userMetadata) {
+            this.content = content;
+            this.userMetadata = userMetadata;
+        }
+    }
+}
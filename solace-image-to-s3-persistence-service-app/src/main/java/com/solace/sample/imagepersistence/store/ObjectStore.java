@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Storage backend for persisted images.
+ */
+public interface ObjectStore {
+
+    /**
+     * Stores an object, replacing any object with the same key.
+     *
+     * @param bucket bucket, or top-level directory, of the object
+     * @param key key of the object within the bucket
+     * @param data content of the object, from its position to its limit. The buffer is not modified.
+     * @param contentType MIME type of the content
+     * @param userMetadata user metadata stored with the object
+     * @throws IOException if the object could not be stored
+     */
+    void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata)
+            throws IOException;
+
+    /**
+     * Stores an object with checksums of its content. Stores that can verify the checksums on receipt reject
+     * content that does not match them. The others keep them as user metadata, so that readers can check what
+     * they read.
+     *
+     * @param checksums checksums of {@code data}
+     * @throws IOException if the object could not be stored, or its content did not match the checksums
+     */
+    default void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata,
+                     ContentChecksums checksums) throws IOException {
+        Map<String, String> metadata = new HashMap<>(userMetadata);
+        checksums.addTo(metadata);
+        put(bucket, key, data, contentType, metadata);
+    }
+
+    /**
+     * Reads an object.
+     *
+     * @param bucket bucket of the object
+     * @param key key of the object
+     * @return a read-only buffer with the content of the object, or null if there is no such object
+     * @throws IOException if the object could not be read
+     */
+    ByteBuffer get(String bucket, String key) throws IOException;
+
+    /**
+     * Reads an object unless it is larger than {@code maxBytes}. Stores that know the size of an object before
+     * reading it check it first, so that an object that is too large is never read.
+     *
+     * @param maxBytes largest object to read
+     * @return a read-only buffer with the content of the object, or null if there is no such object
+     * @throws ObjectTooLargeException if the object is larger than {@code maxBytes}
+     * @throws IOException if the object could not be read
+     */
+    default ByteBuffer get(String bucket, String key, long maxBytes) throws IOException {
+        ByteBuffer content = get(bucket, key);
+        if (content != null && content.remaining() > maxBytes) {
+            throw new ObjectTooLargeException(bucket, key, content.remaining(), maxBytes);
+        }
+        return content;
+    }
+
+    /**
+     * Releases the resources held by the store. Objects already stored remain durable.
+     */
+    void close() throws IOException;
+}
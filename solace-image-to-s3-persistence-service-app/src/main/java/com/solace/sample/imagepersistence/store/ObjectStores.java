@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import com.solace.sample.imagepersistence.Utils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Creates the {@link ObjectStore} selected by the {@code OBJECT_STORE} and {@code UPLOAD_CONCURRENCY}
+ * environment variables.
+ */
+public final class ObjectStores {
+
+    private ObjectStores() {
+    }
+
+    /**
+     * @return the configured store, wrapped in a {@link ConcurrencyLimitedObjectStore} if
+     * {@code UPLOAD_CONCURRENCY} is {@code adaptive}
+     */
+    public static ObjectStore fromEnvironment() throws IOException {
+        ObjectStore store = createStore();
+
+        String concurrency = Utils.getEnvironmentValue("UPLOAD_CONCURRENCY", "unlimited");
+        switch (concurrency) {
+            case "unlimited":
+                return store;
+            case "adaptive":
+                return new ConcurrencyLimitedObjectStore(store, new AdaptiveConcurrencyLimit(
+                        Utils.getEnvironmentIntValue("UPLOAD_CONCURRENCY_MIN", 1),
+                        Utils.getEnvironmentIntValue("UPLOAD_CONCURRENCY_INITIAL", 8),
+                        Utils.getEnvironmentIntValue("UPLOAD_CONCURRENCY_MAX", 64),
+                        Double.parseDouble(Utils.getEnvironmentValue("UPLOAD_LATENCY_TOLERANCE", "2.0"))));
+            default:
+                throw new IllegalArgumentException("Unknown UPLOAD_CONCURRENCY: " + concurrency);
+        }
+    }
+
+    /**
+     * @return the configured store type: {@code s3}, {@code memory} or {@code filesystem}
+     */
+    public static String type() {
+        return Utils.getEnvironmentValue("OBJECT_STORE", "s3");
+    }
+
+    private static ObjectStore createStore() throws IOException {
+        String type = type();
+        switch (type) {
+            case "s3":
+                return new S3ObjectStore(Utils.getEnvironmentValue("AWS_REGION", "us-east-2"));
+            case "memory":
+                return new InMemoryObjectStore();
+            case "filesystem":
+                return new FileSystemObjectStore(Paths.get(Utils.getEnvironmentValue("OBJECT_STORE_PATH", "image-store")),
+                        Utils.getEnvironmentLongValue("OBJECT_STORE_DIRECTORY_SYNC_INTERVAL_MS", 5));
+            default:
+                throw new IllegalArgumentException("Unknown OBJECT_STORE: " + type);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import java.io.IOException;
+
+/**
+ * An object is larger than the caller is willing to read.
+ */
+public class ObjectTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long size;
+    private final long maxBytes;
+
+    public ObjectTooLargeException(String bucket, String key, long size, long maxBytes) {
+        super(bucket + "/" + key + " has " + size + " bytes, more than the " + maxBytes + " allowed");
+        this.size = size;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
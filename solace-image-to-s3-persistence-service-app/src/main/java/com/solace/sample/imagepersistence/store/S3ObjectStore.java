@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence.store;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.util.IOUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * {@link ObjectStore} backed by Amazon S3. One client is shared by all uploads.
+ */
+public class S3ObjectStore implements ObjectStore {
+
+    private final AmazonS3 s3Client;
+
+    public S3ObjectStore(String clientRegion) {
+        this(AmazonS3ClientBuilder.standard()
+                .withRegion(clientRegion)
+                .withCredentials(new DefaultAWSCredentialsProviderChain())
+                .build());
+    }
+
+    public S3ObjectStore(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata)
+            throws IOException {
+        put(bucket, key, data, newMetadata(data, contentType, userMetadata));
+    }
+
+    /**
+     * Sends the MD5 as the Content-MD5 header, which S3 checks before it stores the object: a mismatch fails the
+     * upload with BadDigest. This also saves the SDK computing the MD5 itself while it streams the content. S3
+     * does not verify the other checksums in this SDK version, they are stored as user metadata.
+     */
+    @Override
+    public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata,
+                    ContentChecksums checksums) throws IOException {
+        ObjectMetadata metadata = newMetadata(data, contentType, userMetadata);
+        metadata.setContentMD5(checksums.getMd5Base64());
+        metadata.addUserMetadata(ContentChecksums.CRC32C_KEY, checksums.getCrc32cBase64());
+        if (checksums.getSha256Base64() != null) {
+            metadata.addUserMetadata(ContentChecksums.SHA256_KEY, checksums.getSha256Base64());
+        }
+        put(bucket, key, data, metadata);
+    }
+
+    private void put(String bucket, String key, ByteBuffer data, ObjectMetadata metadata) throws IOException {
+        try {
+            s3Client.putObject(new PutObjectRequest(bucket, key, new ByteBufferInputStream(data), metadata));
+        } catch (AmazonServiceException e) {
+            // The call was transmitted successfully, but Amazon S3 couldn't process
+            // it, so it returned an error response.
+            throw new ObjectStoreException("S3 rejected upload of " + bucket + "/" + key, e, isThrottling(e));
+        } catch (SdkClientException e) {
+            // Amazon S3 couldn't be contacted for a response, or the client
+            // couldn't parse the response from Amazon S3.
+            throw new ObjectStoreException("Could not upload " + bucket + "/" + key + " to S3", e, false);
+        }
+    }
+
+    private static ObjectMetadata newMetadata(ByteBuffer data, String contentType, Map<String, String> userMetadata) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        metadata.setContentLength(data.remaining());
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            metadata.addUserMetadata(entry.getKey(), entry.getValue());
+        }
+        return metadata;
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key) throws IOException {
+        return get(bucket, key, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public ByteBuffer get(String bucket, String key, long maxBytes) throws IOException {
+        try (S3Object object = s3Client.getObject(bucket, key);
+             S3ObjectInputStream in = object.getObjectContent()) {
+            // the length is known from the response headers, before any of the content is read
+            long length = object.getObjectMetadata().getContentLength();
+            if (length > maxBytes) {
+                // drop the connection instead of draining the rest of the object to reuse it
+                in.abort();
+                throw new ObjectTooLargeException(bucket, key, length, maxBytes);
+            }
+            return ByteBuffer.wrap(IOUtils.toByteArray(in)).asReadOnlyBuffer();
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new ObjectStoreException("S3 rejected download of " + bucket + "/" + key, e, isThrottling(e));
+        } catch (SdkClientException e) {
+            throw new ObjectStoreException("Could not download " + bucket + "/" + key + " from S3", e, false);
+        }
+    }
+
+    @Override
+    public void close() {
+        s3Client.shutdown();
+    }
+
+    private static boolean isThrottling(AmazonServiceException e) {
+        return e.getStatusCode() == 503 || e.getStatusCode() == 429 || "SlowDown".equals(e.getErrorCode());
+    }
+}
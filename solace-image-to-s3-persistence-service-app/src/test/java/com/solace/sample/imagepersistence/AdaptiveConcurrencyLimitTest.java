@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.solace.sample.imagepersistence.store.AdaptiveConcurrencyLimit;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long SMALL = 20 * 1024;
+    private static final long LARGE = 5 * 1024 * 1024;
+
+    @Test
+    public void growsByAboutOnePerLimitOfCallsWhileUsed() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 10, 100, 2.0);
+        for (int i = 0; i < 10; i++) {
+            limit.acquire();
+        }
+        for (int i = 0; i < 100; i++) {
+            limit.release(1000000, SMALL, false);
+            limit.acquire();
+        }
+        // 100 calls at a limit around 10 add about 10
+        assertTrue("limit " + limit.getLimit(), limit.getLimit() >= 17 && limit.getLimit() <= 20);
+    }
+
+    @Test
+    public void doesNotGrowWhenIdle() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 10, 100, 2.0);
+        for (int i = 0; i < 100; i++) {
+            limit.acquire();
+            limit.release(1000000, SMALL, false);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void halvesOnThrottlingDownToTheMinimum() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 40, 100, 2.0);
+        limit.acquire();
+        limit.release(1, SMALL, true);
+        assertEquals(20, limit.getLimit());
+        for (int i = 0; i < 10; i++) {
+            limit.acquire();
+            limit.release(1, SMALL, true);
+        }
+        assertEquals(3, limit.getLimit());
+        assertEquals(11, limit.getThrottledCount());
+    }
+
+    @Test
+    public void shrinksByATenthWhenLatencyInflates() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 50, 100, 2.0);
+        limit.acquire();
+        limit.release(100, SMALL, false);
+        limit.acquire();
+        limit.release(1000, SMALL, false);
+        assertEquals(45, limit.getLimit());
+        assertEquals(1, limit.getInflatedCount());
+    }
+
+    @Test
+    public void judgesLatencyAgainstUploadsOfTheSameSize() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 50, 100, 2.0);
+        for (int i = 0; i < 1000; i++) {
+            limit.acquire();
+            // a 5 MB upload takes far longer than a 20 KB one without any congestion
+            limit.release(i % 2 == 0 ? 20000 : 2000000, i % 2 == 0 ? SMALL : LARGE, false);
+        }
+        assertEquals(0, limit.getInflatedCount());
+        assertEquals(50, limit.getLimit());
+    }
+
+    @Test
+    public void sizeClassesDoubleFrom16Kilobytes() {
+        assertEquals(0, AdaptiveConcurrencyLimit.sizeClass(0));
+        assertEquals(0, AdaptiveConcurrencyLimit.sizeClass(16 * 1024 - 1));
+        assertEquals(1, AdaptiveConcurrencyLimit.sizeClass(16 * 1024));
+        assertEquals(2, AdaptiveConcurrencyLimit.sizeClass(32 * 1024));
+        assertEquals(9, AdaptiveConcurrencyLimit.sizeClass(LARGE));
+        assertEquals(15, AdaptiveConcurrencyLimit.sizeClass(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void callersWaitForAReleaseAtTheLimit() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 2, 2, 2.0);
+        limit.acquire();
+        limit.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limit.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        limit.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(2, limit.getInFlight());
+        waiter.join();
+    }
+}
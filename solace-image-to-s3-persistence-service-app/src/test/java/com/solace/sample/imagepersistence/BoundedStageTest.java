@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+public class BoundedStageTest {
+
+    // steps run on the calling thread, so that each call settles the stage before returning
+    private final RecordingSubscription upstream = new RecordingSubscription();
+    private final RecordingSubscriber downstream = new RecordingSubscriber();
+
+    @Test
+    public void requestsItsConcurrencyOnceConnectedOnBothSides() {
+        BoundedStage<Integer, Integer> stage = stage(3, item -> item);
+        stage.onSubscribe(upstream);
+        assertEquals(0, upstream.requested);
+
+        stage.subscribe(downstream);
+        assertEquals(3, upstream.requested);
+    }
+
+    @Test
+    public void resultsWaitingForDemandHoldBackUpstream() {
+        BoundedStage<Integer, Integer> stage = connect(stage(2, item -> item * 10));
+        stage.onNext(1);
+        stage.onNext(2);
+        assertEquals(2, stage.getWaitingCount());
+        assertEquals(2, upstream.requested);
+
+        downstream.subscription.request(1);
+        assertEquals(Arrays.asList(10), downstream.items);
+        assertEquals(1, stage.getWaitingCount());
+        assertEquals(3, upstream.requested);
+
+        downstream.subscription.request(5);
+        assertEquals(Arrays.asList(10, 20), downstream.items);
+        assertEquals(4, upstream.requested);
+    }
+
+    @Test
+    public void itemsFinishedByTheStepReturnTheirCredit() {
+        BoundedStage<Integer, Integer> stage = connect(stage(2, item -> item % 2 == 0 ? null : item));
+        stage.onNext(2);
+        stage.onNext(4);
+        assertEquals(4, upstream.requested);
+        assertEquals(0, stage.getWaitingCount());
+        assertTrue(downstream.items.isEmpty());
+    }
+
+    @Test
+    public void failedItemsAreDroppedAndCounted() {
+        BoundedStage<Integer, Integer> stage = connect(stage(2, item -> {
+            throw new IllegalStateException("step failed");
+        }));
+        downstream.subscription.request(10);
+        stage.onNext(1);
+
+        assertEquals(1, stage.getFailedCount());
+        assertEquals(3, upstream.requested);
+        assertTrue(downstream.items.isEmpty());
+        assertFalse(downstream.completed);
+    }
+
+    @Test
+    public void completesOnceTheLastResultIsDelivered() {
+        BoundedStage<Integer, Integer> stage = connect(stage(2, item -> item));
+        stage.onNext(1);
+        stage.onComplete();
+        assertFalse(downstream.completed);
+
+        downstream.subscription.request(1);
+        assertEquals(Arrays.asList(1), downstream.items);
+        assertTrue(downstream.completed);
+        // no more requests once upstream is done
+        assertEquals(2, upstream.requested);
+    }
+
+    @Test
+    public void errorIsPassedOnAfterPendingResults() {
+        BoundedStage<Integer, Integer> stage = connect(stage(2, item -> item));
+        IllegalStateException error = new IllegalStateException("upstream failed");
+        stage.onNext(1);
+        stage.onError(error);
+        assertNull(downstream.error);
+
+        downstream.subscription.request(1);
+        assertEquals(Arrays.asList(1), downstream.items);
+        assertSame(error, downstream.error);
+        assertFalse(downstream.completed);
+    }
+
+    @Test
+    public void cancelIsPassedUpstream() {
+        connect(stage(2, item -> item));
+        downstream.subscription.cancel();
+        assertTrue(upstream.cancelled);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyMustBePositive() {
+        stage(0, item -> item);
+    }
+
+    private static BoundedStage<Integer, Integer> stage(int concurrency, BoundedStage.Step<Integer, Integer> step) {
+        return new BoundedStage<>("test", concurrency, Runnable::run, step);
+    }
+
+    private BoundedStage<Integer, Integer> connect(BoundedStage<Integer, Integer> stage) {
+        stage.onSubscribe(upstream);
+        stage.subscribe(downstream);
+        return stage;
+    }
+
+    private static class RecordingSubscription implements Flow.Subscription {
+
+        long requested;
+        boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+
+        final List<Integer> items = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.solacesystems.jcsmp.SessionEvent;
+import com.solacesystems.jcsmp.SessionEventArgs;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BrokerConnectionTest {
+
+    private final List<Runnable> resumes = new ArrayList<>();
+    private final BrokerConnection connection = new BrokerConnection("test", resumes::add);
+
+    @Test
+    public void reconnectRestartsOnlyTheFlowsLeftRunning() throws Exception {
+        FakeFlowReceiver running = new FakeFlowReceiver();
+        FakeFlowReceiver stopped = new FakeFlowReceiver();
+        FakeFlowReceiver closed = new FakeFlowReceiver();
+        connection.startFlow(running.get());
+        connection.startFlow(stopped.get());
+        connection.startFlow(closed.get());
+        connection.stopFlow(stopped.get());
+        closed.closed = true;
+
+        reconnect();
+
+        assertEquals(2, running.starts.get());
+        assertEquals(1, stopped.starts.get());
+        assertEquals(1, stopped.stops.get());
+        assertEquals(1, closed.starts.get());
+    }
+
+    @Test
+    public void flowStartedAgainIsRestartedOnReconnect() throws Exception {
+        FakeFlowReceiver flow = new FakeFlowReceiver();
+        connection.startFlow(flow.get());
+        connection.stopFlow(flow.get());
+        connection.startFlow(flow.get());
+
+        reconnect();
+
+        assertEquals(3, flow.starts.get());
+    }
+
+    @Test
+    public void stopFlowsKeepsAllFlowsStoppedAcrossReconnects() throws Exception {
+        FakeFlowReceiver first = new FakeFlowReceiver();
+        FakeFlowReceiver second = new FakeFlowReceiver();
+        connection.startFlow(first.get());
+        connection.startFlow(second.get());
+
+        connection.stopFlows();
+        reconnect();
+
+        assertEquals(1, first.starts.get());
+        assertEquals(1, second.starts.get());
+        assertEquals(1, first.stops.get());
+        assertEquals(1, second.stops.get());
+    }
+
+    @Test
+    public void flowMonitorIsNotHeldWhileStarting() throws Exception {
+        List<Boolean> monitorHeld = new ArrayList<>();
+        FakeFlowReceiver flow = new FakeFlowReceiver() {
+            @Override
+            void started() {
+                // the API may lock the flow itself, from its own threads
+                monitorHeld.add(Thread.holdsLock(get()));
+            }
+        };
+        connection.startFlow(flow.get());
+        reconnect();
+
+        assertEquals(2, monitorHeld.size());
+        assertFalse(monitorHeld.contains(Boolean.TRUE));
+    }
+
+    @Test
+    public void reconnectIsTimedAndCounted() throws Exception {
+        connection.handleEvent(event(SessionEvent.RECONNECTING));
+        assertFalse(connection.isConnected());
+        // repeated attempts do not restart the outage
+        Thread.sleep(20);
+        connection.handleEvent(event(SessionEvent.RECONNECTING));
+        connection.handleEvent(event(SessionEvent.RECONNECTED));
+
+        assertTrue(connection.isConnected());
+        assertEquals(1, connection.getReconnectCount());
+        assertTrue(connection.getLastDowntimeMillis() >= 20);
+        assertEquals(connection.getLastDowntimeMillis(), connection.getTotalDowntimeMillis());
+        assertFalse(connection.isFailed());
+
+        connection.handleEvent(event(SessionEvent.DOWN_ERROR));
+        assertTrue(connection.isFailed());
+        assertFalse(connection.isConnected());
+    }
+
+    @Test
+    public void reconnectsResumeFlowsOnOneThread() throws Exception {
+        BrokerConnection connection = new BrokerConnection("threads");
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch resumed = new CountDownLatch(3);
+        FakeFlowReceiver flow = new FakeFlowReceiver() {
+            @Override
+            void started() {
+                threads.add(Thread.currentThread());
+                resumed.countDown();
+            }
+        };
+        connection.startFlow(flow.get());
+        threads.clear();
+
+        for (int i = 0; i < 3; i++) {
+            connection.handleEvent(event(SessionEvent.RECONNECTING));
+            connection.handleEvent(event(SessionEvent.RECONNECTED));
+        }
+
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, threads.size());
+        Thread thread = threads.iterator().next();
+        assertEquals("resume-threads", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+
+    private void reconnect() {
+        connection.handleEvent(event(SessionEvent.RECONNECTING));
+        connection.handleEvent(event(SessionEvent.RECONNECTED));
+        // the restart runs off the I/O thread that delivered the event
+        assertEquals(1, resumes.size());
+        resumes.remove(0).run();
+    }
+
+    private static SessionEventArgs event(SessionEvent event) {
+        return new SessionEventArgs(event, "test", null, 0) {
+        };
+    }
+}
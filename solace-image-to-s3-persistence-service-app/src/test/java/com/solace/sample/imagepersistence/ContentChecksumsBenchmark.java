@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solace.sample.imagepersistence.store.ContentChecksums;
+import com.solace.sample.imagepersistence.store.InMemoryObjectStore;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+/**
+ * Measures what upload checksums add to an upload. For each image size, an upload to an {@link InMemoryObjectStore}
+ * (one copy of the content, standing in for the SDK streaming it) is timed without checksums, with MD5 and CRC32C,
+ * and with SHA-256 as well. The last column computes the three checksums one after the other, each over the whole
+ * image, instead of together chunk by chunk. Run it from the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.solace.sample.imagepersistence.ContentChecksumsBenchmark
+ * </pre>
+ */
+public class ContentChecksumsBenchmark {
+
+    private static final long MEASURE_NANOS = 2000000000L;
+    private static final Map<String, String> METADATA = Collections.singletonMap("x-amz-meta-title", "image");
+
+    private interface Upload {
+        void run(ByteBuffer image) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        Upload none = image -> store.put("bucket", "key", image, "image/jpeg", METADATA);
+        Upload md5 = image -> store.put("bucket", "key", image, "image/jpeg", METADATA,
+                ContentChecksums.compute(image, false));
+        Upload all = image -> store.put("bucket", "key", image, "image/jpeg", METADATA,
+                ContentChecksums.compute(image, true));
+        Upload separate = image -> {
+            MessageDigest.getInstance("MD5").update(image.duplicate());
+            new CRC32C().update(image.duplicate());
+            MessageDigest.getInstance("SHA-256").update(image.duplicate());
+            store.put("bucket", "key", image, "image/jpeg", METADATA);
+        };
+
+        System.out.printf("%-8s %12s %12s %12s %12s %12s %12s%n", "KB", "none us", "md5 us", "all us",
+                "separate us", "md5 +%", "all +%");
+        for (int kb : new int[] {16, 64, 256, 1024, 4096}) {
+            byte[] content = new byte[kb * 1024];
+            new Random(kb).nextBytes(content);
+            ByteBuffer image = ByteBuffer.wrap(content);
+            double noneNanos = time(none, image);
+            double md5Nanos = time(md5, image);
+            double allNanos = time(all, image);
+            double separateNanos = time(separate, image);
+            System.out.printf("%-8d %12.1f %12.1f %12.1f %12.1f %12.0f %12.0f%n", kb, noneNanos / 1000,
+                    md5Nanos / 1000, allNanos / 1000, separateNanos / 1000,
+                    100 * (md5Nanos - noneNanos) / noneNanos, 100 * (allNanos - noneNanos) / noneNanos);
+        }
+    }
+
+    private static double time(Upload upload, ByteBuffer image) throws Exception {
+        long warmupEnd = System.nanoTime() + MEASURE_NANOS / 2;
+        while (System.nanoTime() < warmupEnd) {
+            upload.run(image);
+        }
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            upload.run(image);
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return (double) elapsed / iterations;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.solace.sample.imagepersistence.store.ContentChecksums;
+import com.solace.sample.imagepersistence.store.InMemoryObjectStore;
+import com.solace.sample.imagepersistence.store.S3ObjectStore;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+public class ContentChecksumsTest {
+
+    @Test
+    public void matchesSeparatePassesAcrossChunkBoundaries() throws Exception {
+        Random random = new Random(7);
+        for (int size : new int[] {0, 1, 16 * 1024 - 1, 16 * 1024, 16 * 1024 + 1, 100000}) {
+            byte[] content = new byte[size + 10];
+            random.nextBytes(content);
+            ByteBuffer heap = ByteBuffer.wrap(content, 3, size);
+            ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+            direct.put(content).position(3);
+            direct.limit(3 + size);
+
+            for (ByteBuffer data : new ByteBuffer[] {heap, direct}) {
+                ContentChecksums checksums = ContentChecksums.compute(data, true);
+                assertArrayEquals(digest("MD5", content, 3, size), checksums.getMd5());
+                assertArrayEquals(digest("SHA-256", content, 3, size), checksums.getSha256());
+                CRC32C crc = new CRC32C();
+                crc.update(content, 3, size);
+                assertEquals(crc.getValue(), checksums.getCrc32c());
+                // the buffer is left as it was
+                assertEquals(3, data.position());
+                assertEquals(3 + size, data.limit());
+            }
+        }
+    }
+
+    @Test
+    public void encodesLikeS3() {
+        ContentChecksums checksums = ContentChecksums.compute(ByteBuffer.wrap("hello".getBytes()), false);
+        assertEquals("XUFAKrxLKna5cZ2REBfFkg==", checksums.getMd5Base64());
+        // CRC32C of "hello" is 0x9a71bb4c
+        assertEquals(Base64.getEncoder().encodeToString(new byte[] {(byte) 0x9a, 0x71, (byte) 0xbb, 0x4c}),
+                checksums.getCrc32cBase64());
+        assertNull(checksums.getSha256Base64());
+    }
+
+    @Test
+    public void s3StoreSendsTheMd5ForVerification() throws Exception {
+        AtomicReference<PutObjectRequest> sent = new AtomicReference<>();
+        AmazonS3 s3Client = (AmazonS3) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {AmazonS3.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("putObject") && args.length == 1) {
+                        sent.set((PutObjectRequest) args[0]);
+                    }
+                    return null;
+                });
+        ByteBuffer data = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        ContentChecksums checksums = ContentChecksums.compute(data, true);
+
+        new S3ObjectStore(s3Client).put("bucket", "key", data, "image/jpeg",
+                Collections.singletonMap("x-amz-meta-title", "key"), checksums);
+
+        ObjectMetadata metadata = sent.get().getMetadata();
+        assertEquals(checksums.getMd5Base64(), metadata.getContentMD5());
+        assertEquals(checksums.getCrc32cBase64(), metadata.getUserMetaDataOf(ContentChecksums.CRC32C_KEY));
+        assertEquals(checksums.getSha256Base64(), metadata.getUserMetaDataOf(ContentChecksums.SHA256_KEY));
+        assertEquals("key", metadata.getUserMetaDataOf("x-amz-meta-title"));
+        // the MD5 travels as the header, S3 keeps it as the ETag
+        assertFalse(metadata.getUserMetadata().containsKey(ContentChecksums.MD5_KEY));
+
+        Map<String, String> headers = S3Headers.of(metadata);
+        assertEquals(checksums.getMd5Base64(), headers.get("Content-MD5"));
+        assertEquals(checksums.getCrc32cBase64(), headers.get("x-amz-meta-crc32c"));
+        assertEquals(checksums.getSha256Base64(), headers.get("x-amz-meta-sha256"));
+        assertFalse(headers.containsKey("x-amz-meta-x-amz-meta-crc32c"));
+        assertFalse(headers.containsKey("x-amz-meta-x-amz-meta-sha256"));
+    }
+
+    @Test
+    public void consumerStoresChecksumsWithTheImage() throws Exception {
+        ImageRoutingTable routingTable = new ImageRoutingTable(Collections.<ImageRoute>emptyList(),
+                new ImageRoute("default", "bucket", "prefix/", null, null, null, null, 1, 1, 1, 1));
+        InMemoryObjectStore objectStore = new InMemoryObjectStore();
+        ImagePersistenceMessageConsumer consumer = new ImagePersistenceMessageConsumer(null, routingTable, objectStore);
+        ByteBuffer image = ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(1, 64, 48), 0.9f));
+        try {
+            String plainKey = consumer.upload("robot-1", image, routingTable.route("robot-1"), System.nanoTime(), null);
+            assertFalse(objectStore.getUserMetadata("bucket", plainKey).containsKey(ContentChecksums.CRC32C_KEY));
+
+            consumer.setUploadChecksums(ContentChecksums.Mode.ALL);
+            String key = consumer.upload("robot-1", image, routingTable.route("robot-1"), System.nanoTime(), null);
+            Map<String, String> metadata = objectStore.getUserMetadata("bucket", key);
+            ContentChecksums expected = ContentChecksums.compute(image, true);
+            assertEquals(expected.getMd5Base64(), metadata.get(ContentChecksums.MD5_KEY));
+            assertEquals(expected.getCrc32cBase64(), metadata.get(ContentChecksums.CRC32C_KEY));
+            assertEquals(expected.getSha256Base64(), metadata.get(ContentChecksums.SHA256_KEY));
+        } finally {
+            routingTable.shutdown(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static byte[] digest(String algorithm, byte[] content, int offset, int length) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        digest.update(content, offset, length);
+        return digest.digest();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs a simulated robot camera stream through a {@link DuplicateFrameFilter} and reports the share of frames
+ * suppressed and the CPU time spent per frame. The robot holds each scene for a number of frames, with sensor
+ * noise, before moving on. Run it from the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.solace.sample.imagepersistence.DuplicateFrameFilterBenchmark -Dexec.args="640 480 20"
+ * </pre>
+ * Arguments: frame width and height (default 640x480) and frames per scene (default 20).
+ */
+public class DuplicateFrameFilterBenchmark {
+
+    private static final int SCENES = 50;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 640;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 480;
+        int framesPerScene = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Random noise = new Random(7);
+        List<ByteBuffer> stream = new ArrayList<>();
+        long bytes = 0;
+        for (int scene = 0; scene < SCENES; scene++) {
+            BufferedImage image = SyntheticFrames.scene(scene, width, height);
+            for (int i = 0; i < framesPerScene; i++) {
+                byte[] jpeg = SyntheticFrames.capture(image, noise, 6, 0.85f);
+                bytes += jpeg.length;
+                stream.add(ByteBuffer.wrap(jpeg));
+            }
+        }
+        System.out.printf("%d frames of %dx%d, %d KB on average, %d frames per scene%n",
+                stream.size(), width, height, bytes / stream.size() / 1024, framesPerScene);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            DuplicateFrameFilter filter = new DuplicateFrameFilter(DuplicateFrameFilter.Policy.DROP, 6, 32, 60000,
+                    10, 100);
+            long cpuStart = System.nanoTime();
+            for (ByteBuffer frame : stream) {
+                filter.suppress("robot", frame);
+            }
+            double microsPerFrame = (System.nanoTime() - cpuStart) / 1000.0 / stream.size();
+            System.out.printf("round %d: suppressed %d of %d (%.1f%%), %.0f us per frame (hashing %.0f us)%n",
+                    round + 1, filter.getSuppressedCount(), filter.getFrameCount(),
+                    100.0 * filter.getSuppressedCount() / filter.getFrameCount(), microsPerFrame,
+                    filter.getAverageHashMicros());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class DuplicateFrameFilterTest {
+
+    @Test
+    public void noisyCapturesOfOneSceneHashAlike() throws Exception {
+        BufferedImage scene = SyntheticFrames.scene(1, 320, 240);
+        long a = PerceptualHash.dHash(ByteBuffer.wrap(SyntheticFrames.capture(scene, new Random(1), 8, 0.9f)));
+        long b = PerceptualHash.dHash(ByteBuffer.wrap(SyntheticFrames.capture(scene, new Random(2), 8, 0.6f)));
+        assertTrue(PerceptualHash.distance(a, b) + " bits apart", PerceptualHash.distance(a, b) <= 6);
+    }
+
+    @Test
+    public void differentScenesHashApart() throws Exception {
+        long a = PerceptualHash.dHash(ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(1, 320, 240), 0.9f)));
+        long b = PerceptualHash.dHash(ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(2, 320, 240), 0.9f)));
+        assertTrue(PerceptualHash.distance(a, b) + " bits apart", PerceptualHash.distance(a, b) > 12);
+    }
+
+    @Test
+    public void dropsRepeatsOfTheSameSourceOnly() throws Exception {
+        DuplicateFrameFilter filter = new DuplicateFrameFilter(DuplicateFrameFilter.Policy.DROP, 6, 8, 60000, 10, 100);
+        ByteBuffer frame = ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(1, 320, 240), 0.9f));
+        ByteBuffer other = ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(2, 320, 240), 0.9f));
+
+        assertFalse(filter.suppress("robot-1", frame));
+        assertTrue(filter.suppress("robot-1", frame));
+        assertFalse(filter.suppress("robot-2", frame));
+        assertFalse(filter.suppress("robot-1", other));
+        assertTrue(filter.suppress("robot-1", frame));
+
+        assertEquals(5, filter.getFrameCount());
+        assertEquals(2, filter.getSuppressedCount());
+        assertEquals(0, frame.position());
+    }
+
+    @Test
+    public void keepsFramesOnceTheirMatchHasExpired() throws Exception {
+        DuplicateFrameFilter filter = new DuplicateFrameFilter(DuplicateFrameFilter.Policy.DROP, 6, 8, 50, 10, 100);
+        ByteBuffer frame = ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(1, 320, 240), 0.9f));
+
+        assertFalse(filter.suppress("robot", frame));
+        Thread.sleep(100);
+        assertFalse(filter.suppress("robot", frame));
+    }
+
+    @Test
+    public void sampleKeepsOneInEveryNDuplicates() throws Exception {
+        DuplicateFrameFilter filter = new DuplicateFrameFilter(DuplicateFrameFilter.Policy.SAMPLE, 6, 8, 60000, 4, 100);
+        ByteBuffer frame = ByteBuffer.wrap(SyntheticFrames.encode(SyntheticFrames.scene(1, 320, 240), 0.9f));
+
+        int kept = 0;
+        for (int i = 0; i < 17; i++) {
+            if (!filter.suppress("robot", frame)) {
+                kept++;
+            }
+        }
+        // the first frame, then every fourth of the 16 duplicates
+        assertEquals(5, kept);
+    }
+
+    @Test
+    public void neverSuppressesWhatItCannotDecode() {
+        DuplicateFrameFilter filter = new DuplicateFrameFilter(DuplicateFrameFilter.Policy.DROP, 64, 8, 60000, 10, 100);
+        assertFalse(filter.suppress("robot", ByteBuffer.wrap(new byte[100])));
+        assertFalse(filter.suppress("robot", ByteBuffer.wrap(new byte[100])));
+        assertEquals(2, filter.getUnhashableCount());
+    }
+}
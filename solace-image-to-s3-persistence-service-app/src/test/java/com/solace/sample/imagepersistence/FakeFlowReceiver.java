@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.FlowReceiver;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A flow that records how often it was started and stopped, and whether it runs.
+ */
+class FakeFlowReceiver {
+
+    final AtomicInteger starts = new AtomicInteger();
+    final AtomicInteger stops = new AtomicInteger();
+    volatile boolean running;
+    volatile boolean closed;
+
+    private final FlowReceiver flow = (FlowReceiver) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {FlowReceiver.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "start":
+                        starts.incrementAndGet();
+                        running = true;
+                        started();
+                        return null;
+                    case "stop":
+                        stops.incrementAndGet();
+                        running = false;
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    FlowReceiver get() {
+        return flow;
+    }
+
+    /**
+     * Called on the thread that started the flow.
+     */
+    void started() {
+    }
+}
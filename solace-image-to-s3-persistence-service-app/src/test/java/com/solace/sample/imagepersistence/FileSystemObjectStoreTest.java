@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.solace.sample.imagepersistence.store.FileSystemObjectStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class FileSystemObjectStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+    private FileSystemObjectStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        root = folder.newFolder("store").toPath();
+        store = new FileSystemObjectStore(root, 5);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void concurrentWritesAreAllCommitted() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            final int n = i;
+            writes.add(writers.submit(() -> {
+                ByteBuffer data = ByteBuffer.allocateDirect(1000 + n);
+                data.put(0, (byte) n);
+                store.put("bucket", "dir-" + (n % 4) + "/object-" + n, data, "image/jpeg",
+                        Collections.<String, String>emptyMap());
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        writers.shutdown();
+
+        for (int i = 0; i < 64; i++) {
+            ByteBuffer object = store.get("bucket", "dir-" + (i % 4) + "/object-" + i);
+            assertEquals(1000 + i, object.remaining());
+            assertEquals((byte) i, object.get(0));
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(0, files.filter(path -> path.getFileName().toString().contains(".tmp-")).count());
+        }
+    }
+
+    @Test
+    public void missingObjectsReadAsNull() throws Exception {
+        assertNull(store.get("bucket", "missing"));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+public class FlowReceiverPublisherTest {
+
+    private final FlowReceiverPublisher publisher = new FlowReceiverPublisher("test", 4, 2);
+    private final FakeFlowReceiver flow = new FakeFlowReceiver();
+    private final RecordingSubscriber subscriber = new RecordingSubscriber();
+
+    @Test
+    public void messagesAreBufferedUntilRequested() {
+        publisher.subscribe(subscriber);
+        List<BytesXMLMessage> sent = receive(3);
+        assertTrue(subscriber.items.isEmpty());
+        assertEquals(3, publisher.getBufferedCount());
+
+        subscriber.subscription.request(2);
+        assertEquals(sent.subList(0, 2), subscriber.items);
+        assertEquals(1, publisher.getBufferedCount());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(sent, subscriber.items);
+        receive(1);
+        assertEquals(4, subscriber.items.size());
+    }
+
+    @Test
+    public void flowIsStoppedAtTheHighWatermarkAndRestartedAtTheLowOne() {
+        publisher.subscribe(subscriber);
+        publisher.start(flow.get());
+        assertTrue(flow.running);
+        assertFalse(publisher.isPaused());
+
+        receive(4);
+        await(() -> !flow.running && publisher.isPaused());
+        assertEquals(1, publisher.getPauseCount());
+
+        // still above the low watermark
+        subscriber.subscription.request(1);
+        assertEquals(3, publisher.getBufferedCount());
+        assertTrue(publisher.isPaused());
+
+        subscriber.subscription.request(1);
+        await(() -> flow.running && !publisher.isPaused());
+        assertEquals(1, publisher.getPauseCount());
+    }
+
+    @Test
+    public void pausedFlowRestartedByAReconnectIsStoppedAgain() throws Exception {
+        publisher.subscribe(subscriber);
+        publisher.start(flow.get());
+        receive(4);
+        await(() -> !flow.running);
+
+        // the API starts the flow again when the session reconnects
+        flow.get().start();
+        receive(1);
+        await(() -> !flow.running);
+        assertTrue(publisher.isPaused());
+        assertEquals(1, publisher.getPauseCount());
+    }
+
+    @Test
+    public void completeStopsTheFlowAndCompletesOnceTheBufferIsDrained() {
+        publisher.subscribe(subscriber);
+        publisher.start(flow.get());
+        receive(2);
+
+        publisher.complete();
+        assertFalse(flow.running);
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.items.size());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void cancelStopsTheFlow() {
+        publisher.subscribe(subscriber);
+        publisher.start(flow.get());
+        subscriber.subscription.cancel();
+        await(() -> !flow.running);
+
+        receive(1);
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.items.isEmpty());
+    }
+
+    @Test
+    public void nonPositiveRequestIsAnError() {
+        publisher.subscribe(subscriber);
+        receive(1);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.items.isEmpty());
+    }
+
+    @Test
+    public void secondSubscriberIsRejected() {
+        publisher.subscribe(subscriber);
+        RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+        assertTrue(subscriber.error == null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lowWatermarkMustBeBelowTheHighOne() {
+        new FlowReceiverPublisher("test", 4, 4);
+    }
+
+    private List<BytesXMLMessage> receive(int count) {
+        List<BytesXMLMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BytesMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+            messages.add(msg);
+            publisher.onReceive(msg);
+        }
+        return messages;
+    }
+
+    /**
+     * Waits for the flow to be updated, which happens off the calling thread.
+     */
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5000000000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met in time");
+            }
+            LockSupport.parkNanos(1000000);
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<BytesXMLMessage> {
+
+        final List<BytesXMLMessage> items = new CopyOnWriteArrayList<>();
+        volatile Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(BytesXMLMessage item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
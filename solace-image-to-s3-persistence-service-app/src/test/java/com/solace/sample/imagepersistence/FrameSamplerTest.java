@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameSamplerTest {
+
+    @Test
+    public void parsesPolicies() {
+        assertSame(FrameSamplingPolicy.ALL, FrameSamplingPolicy.parse("all"));
+        assertSame(FrameSamplingPolicy.ALL, FrameSamplingPolicy.parse("every:1"));
+        assertEquals("every:10", FrameSamplingPolicy.parse(" Every: 10 ").toString());
+        assertEquals("rate:2.5", FrameSamplingPolicy.parse("rate:2.5").toString());
+        assertEquals("interval:500", FrameSamplingPolicy.parse("interval:500").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPolicies() {
+        FrameSamplingPolicy.parse("rate:fast");
+    }
+
+    @Test
+    public void keepsEveryFrameWithoutPolicies() {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.ALL, 100, 60000);
+        assertFalse(sampler.isActive());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sampler.keep("robot"));
+        }
+    }
+
+    @Test
+    public void keepsEveryNthFramePerSource() {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.everyNth(3), 100, 60000);
+        int kept = 0;
+        for (int i = 0; i < 9; i++) {
+            if (sampler.keep("robot-1")) {
+                kept++;
+            }
+        }
+        assertEquals(3, kept);
+        // another source has its own count
+        assertTrue(sampler.keep("robot-2"));
+        assertEquals(4, sampler.getKeptCount());
+        assertEquals(6, sampler.getSkippedCount());
+    }
+
+    @Test
+    public void limitsBurstsToASecondsWorthOfFrames() {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.maxRate(5), 100, 60000);
+        int kept = 0;
+        for (int i = 0; i < 50; i++) {
+            if (sampler.keep("robot")) {
+                kept++;
+            }
+        }
+        assertEquals(5, kept);
+    }
+
+    @Test
+    public void keepsFramesOnceTheIntervalHasPassed() throws Exception {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.minInterval(50), 100, 60000);
+        assertTrue(sampler.keep("robot"));
+        assertFalse(sampler.keep("robot"));
+        Thread.sleep(60);
+        assertTrue(sampler.keep("robot"));
+        assertFalse(sampler.keep("robot"));
+    }
+
+    @Test
+    public void appliesPolicyChangesToTheNextFrame() {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.ALL, 100, 60000);
+        assertTrue(sampler.keep("robot"));
+
+        sampler.setPolicy("robot", FrameSamplingPolicy.everyNth(2));
+        assertTrue(sampler.keep("robot"));
+        assertFalse(sampler.keep("robot"));
+        assertTrue(sampler.keep("other"));
+
+        sampler.setDefaultPolicy(FrameSamplingPolicy.minInterval(60000));
+        assertTrue(sampler.keep("other"));
+        assertFalse(sampler.keep("other"));
+
+        sampler.removePolicy("robot");
+        assertTrue(sampler.keep("robot"));
+        assertFalse(sampler.keep("robot"));
+    }
+
+    @Test
+    public void sharesOneStateBeyondMaxSources() {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.minInterval(60000), 2, 60000);
+        assertTrue(sampler.keep("a"));
+        assertTrue(sampler.keep("b"));
+        assertTrue(sampler.keep("c"));
+        assertFalse(sampler.keep("d"));
+        // a source with a policy of its own is always tracked
+        sampler.setPolicy("e", FrameSamplingPolicy.minInterval(60000));
+        assertTrue(sampler.keep("e"));
+    }
+
+    @Test
+    public void refusesPoliciesBeyondMaxPolicies() {
+        FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.ALL, 100, 2, 60000);
+        sampler.setPolicy("a", FrameSamplingPolicy.everyNth(2));
+        sampler.setPolicy("b", FrameSamplingPolicy.everyNth(2));
+        try {
+            sampler.setPolicy("c", FrameSamplingPolicy.everyNth(2));
+            fail("Set a policy beyond the limit");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("At most 2 sources"));
+        }
+        assertNull(sampler.getPolicy("c"));
+
+        // changing an existing policy, or adding one after a removal, still works
+        sampler.setPolicy("a", FrameSamplingPolicy.everyNth(3));
+        sampler.removePolicy("b");
+        sampler.setPolicy("c", FrameSamplingPolicy.everyNth(2));
+        assertEquals(2, sampler.getPolicies().size());
+    }
+
+    @Test
+    public void keepsExactlyEveryNthFrameUnderContention() throws Exception {
+        final FrameSampler sampler = new FrameSampler(FrameSamplingPolicy.everyNth(10), 100, 60000);
+        final AtomicInteger kept = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (sampler.keep("robot")) {
+                        kept.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertEquals(8000, kept.get());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class HeavyHittersTest {
+
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public void topListsTrackedKeysLargestFirst() {
+        HeavyHitters hitters = new HeavyHitters(3, 1024, 4, HOUR);
+        hitters.add("camera-1", 5);
+        hitters.add("camera-2", 30);
+        hitters.add("camera-3", 10);
+        hitters.add("camera-1", 20);
+
+        List<Map.Entry<String, Long>> top = hitters.top();
+        assertEquals(3, top.size());
+        assertEquals("camera-2", top.get(0).getKey());
+        assertEquals(30L, (long) top.get(0).getValue());
+        assertEquals("camera-1", top.get(1).getKey());
+        assertEquals(25L, (long) top.get(1).getValue());
+        assertEquals("camera-3", top.get(2).getKey());
+    }
+
+    @Test
+    public void largerKeyReplacesTheSmallestTrackedOne() {
+        HeavyHitters hitters = new HeavyHitters(2, 1024, 4, HOUR);
+        hitters.add("a", 10);
+        hitters.add("b", 20);
+        hitters.add("c", 5);
+        assertEquals(keys("b", "a"), keysOf(hitters.top()));
+
+        // "c" now totals 35, more than the smallest tracked key
+        hitters.add("c", 30);
+        assertEquals(keys("c", "b"), keysOf(hitters.top()));
+    }
+
+    @Test
+    public void estimateIsNeverBelowTheTrueTotal() {
+        // a narrow sketch so that keys share columns
+        HeavyHitters hitters = new HeavyHitters(4, 16, 2, HOUR);
+        for (int i = 0; i < 200; i++) {
+            hitters.add("source-" + i, i + 1);
+        }
+        for (int i = 0; i < 200; i++) {
+            assertTrue(hitters.estimate("source-" + i) >= i + 1);
+        }
+    }
+
+    @Test
+    public void keysWithTheSameHashCodeDoNotShareAllRows() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(HeavyHitters.hash("Aa"), HeavyHitters.hash("BB"));
+
+        HeavyHitters hitters = new HeavyHitters(4, 1024, 4, HOUR);
+        hitters.add("Aa", 100);
+        assertEquals(100, hitters.estimate("Aa"));
+        assertEquals(0, hitters.estimate("BB"));
+    }
+
+    @Test
+    public void totalsAreHalvedEveryWindow() throws InterruptedException {
+        HeavyHitters hitters = new HeavyHitters(2, 1024, 4, 100);
+        hitters.add("a", 1024);
+        assertEquals(1024, hitters.estimate("a"));
+
+        Thread.sleep(250);
+        // at least two windows have passed; allow for a slow scheduler
+        long decayed = hitters.estimate("a");
+        assertTrue("estimate " + decayed, decayed <= 256 && decayed >= 1024 >> 5);
+        assertEquals(decayed, (long) hitters.top().get(0).getValue());
+    }
+
+    @Test
+    public void countsConcurrentAddsWithoutLosingAny() throws Exception {
+        HeavyHitters hitters = new HeavyHitters(3, 1024, 4, HOUR);
+        int threads = 8;
+        int adds = 20000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < adds; i++) {
+                    hitters.add("heavy", 3);
+                    hitters.add("medium", 2);
+                    hitters.add("light-" + (i % 100), 1);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(hitters.estimate("heavy") >= 3L * threads * adds);
+        List<Map.Entry<String, Long>> top = hitters.top();
+        assertEquals("heavy", top.get(0).getKey());
+        assertEquals(3L * threads * adds, (long) top.get(0).getValue());
+        assertEquals("medium", top.get(1).getKey());
+        assertEquals(2L * threads * adds, (long) top.get(1).getValue());
+    }
+
+    @Test
+    public void disabledStatisticsRecordNothing() {
+        SourceStatistics statistics = new SourceStatistics(0, HOUR);
+        assertFalse(statistics.isEnabled());
+        statistics.record("robot-1", 1000);
+        assertTrue(statistics.top(false, 10).isEmpty());
+    }
+
+    private static List<String> keys(String... keys) {
+        List<String> list = new ArrayList<>();
+        for (String key : keys) {
+            list.add(key);
+        }
+        return list;
+    }
+
+    private static List<String> keysOf(List<Map.Entry<String, Long>> entries) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.solace.sample.imagepersistence.store.InMemoryObjectStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class HttpImageIngestorTest {
+
+    private ImageRoutingTable routingTable;
+    private InMemoryObjectStore objectStore;
+    private ImagePersistenceMessageConsumer consumer;
+    private byte[] jpeg;
+
+    @Before
+    public void setUp() throws Exception {
+        routingTable = new ImageRoutingTable(Collections.<ImageRoute>emptyList(), new ImageRoute("default", "bucket",
+                "prefix/", null, null, null, null, 1, 1, 1, 1));
+        objectStore = new InMemoryObjectStore();
+        consumer = new ImagePersistenceMessageConsumer(null, routingTable, objectStore);
+        jpeg = SyntheticFrames.encode(SyntheticFrames.scene(1, 64, 48), 0.9f);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        routingTable.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void storesThePostedImage() throws Exception {
+        HttpImageIngestor ingestor = new HttpImageIngestor(4, 1024 * 1024, 10000);
+        ingestor.start(consumer, routingTable);
+
+        ResponseEntity<Map<String, Object>> response = await(ingestor.ingest("robot-1", jpeg.length,
+                new ByteArrayInputStream(jpeg)));
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        String key = (String) response.getBody().get("key");
+        assertNotNull(objectStore.get("bucket", key));
+        assertEquals(jpeg.length, objectStore.get("bucket", key).remaining());
+        assertEquals(0, ingestor.getInFlightCount());
+    }
+
+    @Test
+    public void readsBodiesWithoutContentLength() throws Exception {
+        HttpImageIngestor ingestor = new HttpImageIngestor(4, 1024 * 1024, 10000);
+        ingestor.start(consumer, routingTable);
+        byte[] large = new byte[200 * 1024];
+        System.arraycopy(jpeg, 0, large, 0, jpeg.length);
+
+        ResponseEntity<Map<String, Object>> response = await(ingestor.ingest("robot-1", -1,
+                new ByteArrayInputStream(large)));
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(large.length, objectStore.get("bucket", (String) response.getBody().get("key")).remaining());
+    }
+
+    @Test
+    public void refusesImagesOverTheLimit() throws Exception {
+        HttpImageIngestor ingestor = new HttpImageIngestor(4, 100, 10000);
+        ingestor.start(consumer, routingTable);
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE,
+                await(ingestor.ingest("robot-1", jpeg.length, new ByteArrayInputStream(jpeg))).getStatusCode());
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE,
+                await(ingestor.ingest("robot-1", -1, new ByteArrayInputStream(jpeg))).getStatusCode());
+        assertEquals(0, ingestor.getInFlightCount());
+    }
+
+    @Test
+    public void answers429WhenSaturated() throws Exception {
+        HttpImageIngestor ingestor = new HttpImageIngestor(0, 1024 * 1024, 10000);
+        ingestor.start(consumer, routingTable);
+
+        ResponseEntity<Map<String, Object>> response = await(ingestor.ingest("robot-1", jpeg.length,
+                new ByteArrayInputStream(jpeg)));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+        assertEquals(1, ingestor.getSaturatedCount());
+    }
+
+    @Test
+    public void answers429ForSourcesOverTheirRateLimit() throws Exception {
+        consumer.setRateLimiter(new SourceRateLimiter(1, 1, SourceRateLimiter.Policy.DEFER, 10, 100, 60000));
+        HttpImageIngestor ingestor = new HttpImageIngestor(4, 1024 * 1024, 10000);
+        ingestor.start(consumer, routingTable);
+
+        assertEquals(HttpStatus.CREATED,
+                await(ingestor.ingest("robot-1", jpeg.length, new ByteArrayInputStream(jpeg))).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                await(ingestor.ingest("robot-1", jpeg.length, new ByteArrayInputStream(jpeg))).getStatusCode());
+        assertEquals(1, ingestor.getThrottledCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResponseEntity<Map<String, Object>> await(DeferredResult<ResponseEntity<Map<String, Object>>> result)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!result.hasResult() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        return (ResponseEntity<Map<String, Object>>) result.getResult();
+    }
+}
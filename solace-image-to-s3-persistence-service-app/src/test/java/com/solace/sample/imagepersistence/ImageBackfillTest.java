@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+
+import com.solace.sample.imagepersistence.store.InMemoryObjectStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ImageBackfillTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ImageRoutingTable routingTable;
+    private InMemoryObjectStore objectStore;
+    private ImagePersistenceMessageConsumer steps;
+    private Path root;
+    private Path checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        routingTable = new ImageRoutingTable(Collections.<ImageRoute>emptyList(), new ImageRoute("default", "bucket",
+                "prefix/", null, null, null, null, 1, 1, 1, 1));
+        objectStore = new InMemoryObjectStore();
+        steps = new ImagePersistenceMessageConsumer(null, routingTable, objectStore);
+
+        root = folder.newFolder("images").toPath();
+        byte[] jpeg = SyntheticFrames.encode(SyntheticFrames.scene(1, 64, 48), 0.9f);
+        for (int i = 0; i < 20; i++) {
+            Path directory = Files.createDirectories(root.resolve("day-" + (i % 4)));
+            Files.write(directory.resolve("frame-" + i + ".jpg"), jpeg);
+        }
+        Files.write(root.resolve(".DS_Store"), new byte[10]);
+        checkpoint = folder.getRoot().toPath().resolve("backfill.checkpoint");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        routingTable.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void uploadsEveryFileAndRecordsIt() throws Exception {
+        ImageBackfill backfill = new ImageBackfill(steps, routingTable, 4, checkpoint, 60000);
+        backfill.run(root);
+
+        assertEquals(20, backfill.getStoredCount());
+        assertEquals(0, backfill.getFailedCount());
+        assertEquals(20, objectStore.size());
+        List<String> done = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+        assertEquals(20, done.size());
+    }
+
+    @Test
+    public void resumesFromItsCheckpoint() throws Exception {
+        Files.write(checkpoint, ("day-0/frame-0.jpg\nday-1/frame-1.jpg\nday-2/frame-2.jpg\n")
+                .replace('/', root.getFileSystem().getSeparator().charAt(0)).getBytes(StandardCharsets.UTF_8));
+
+        ImageBackfill backfill = new ImageBackfill(steps, routingTable, 4, checkpoint, 60000);
+        backfill.run(root);
+        assertEquals(3, backfill.getSkippedCount());
+        assertEquals(17, backfill.getStoredCount());
+
+        ImageBackfill again = new ImageBackfill(steps, routingTable, 4, checkpoint, 60000);
+        again.run(root);
+        assertEquals(20, again.getSkippedCount());
+        assertEquals(0, again.getStoredCount());
+        assertEquals(17, objectStore.size());
+    }
+
+    @Test
+    public void countsCheckpointErrorsApartFromFailures() throws Exception {
+        ImageBackfill backfill = new ImageBackfill(steps, routingTable, 4, checkpoint, 60000) {
+            @Override
+            void recordDone(String name) throws IOException {
+                throw new IOException("No space left on device");
+            }
+        };
+        backfill.run(root);
+
+        assertEquals(20, backfill.getStoredCount());
+        assertEquals(0, backfill.getFailedCount());
+        assertEquals(20, backfill.getCheckpointErrorCount());
+        assertEquals(20, objectStore.size());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.solace.sample.imagepersistence.store.InMemoryObjectStore;
+import com.solace.sample.imagepersistence.store.ObjectTooLargeException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+public class ImageCacheTest {
+
+    private InMemoryObjectStore objectStore;
+
+    @Before
+    public void setUp() {
+        objectStore = new InMemoryObjectStore();
+    }
+
+    @Test
+    public void servesUploadedImagesWithoutReadingTheStore() throws Exception {
+        ImageCache cache = new ImageCache(1024, 1024);
+        cache.setObjectStore(objectStore);
+        cache.setBuckets(Collections.singleton("bucket"));
+        cache.put("bucket", "a", ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+        ByteBuffer image = cache.get("bucket", "a");
+        assertTrue(image.isDirect());
+        assertTrue(image.isReadOnly());
+        assertEquals(3, image.remaining());
+        assertEquals(1, cache.getHitCount());
+        // the store never had it
+        assertNull(objectStore.get("bucket", "a"));
+    }
+
+    @Test
+    public void readsThroughAndKeepsWhatItRead() throws Exception {
+        ImageCache cache = new ImageCache(1024, 1024);
+        cache.setObjectStore(objectStore);
+        cache.setBuckets(Collections.singleton("bucket"));
+        objectStore.put("bucket", "a", ByteBuffer.wrap(new byte[100]), "image/jpeg",
+                Collections.<String, String>emptyMap());
+
+        assertEquals(100, cache.get("bucket", "a").remaining());
+        assertEquals(100, cache.get("bucket", "a").remaining());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertNull(cache.get("bucket", "missing"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedBeyondItsSize() throws Exception {
+        ImageCache cache = new ImageCache(300, 300);
+        cache.setObjectStore(objectStore);
+        cache.setBuckets(Collections.singleton("bucket"));
+        cache.put("bucket", "a", ByteBuffer.wrap(new byte[100]));
+        cache.put("bucket", "b", ByteBuffer.wrap(new byte[100]));
+        cache.put("bucket", "c", ByteBuffer.wrap(new byte[100]));
+        cache.get("bucket", "a");
+        cache.put("bucket", "d", ByteBuffer.wrap(new byte[100]));
+
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(300, cache.getUsedBytes());
+        assertEquals(1, cache.getEvictionCount());
+        // b was the least recently used, so it is gone and the store does not have it either
+        assertNull(cache.get("bucket", "b"));
+    }
+
+    @Test
+    public void doesNotCacheLargeImages() {
+        ImageCache cache = new ImageCache(1000, 100);
+        cache.put("bucket", "a", ByteBuffer.wrap(new byte[101]));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void servesByteRanges() throws Exception {
+        ImageCache cache = new ImageCache(1024, 1024);
+        cache.setObjectStore(objectStore);
+        cache.setBuckets(Collections.singleton("bucket"));
+        byte[] content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        cache.put("bucket", "a", ByteBuffer.wrap(content));
+        ImageContentController controller = new ImageContentController();
+        ReflectionTestUtils.setField(controller, "imageCache", cache);
+
+        MockHttpServletResponse whole = get(controller, null);
+        assertEquals(200, whole.getStatus());
+        assertEquals(100, whole.getContentAsByteArray().length);
+
+        MockHttpServletResponse part = get(controller, "bytes=10-19");
+        assertEquals(206, part.getStatus());
+        assertEquals("bytes 10-19/100", part.getHeader("Content-Range"));
+        assertEquals(10, part.getContentAsByteArray().length);
+        assertEquals(10, part.getContentAsByteArray()[0]);
+
+        MockHttpServletResponse suffix = get(controller, "bytes=-5");
+        assertEquals("bytes 95-99/100", suffix.getHeader("Content-Range"));
+
+        MockHttpServletResponse beyond = get(controller, "bytes=200-");
+        assertEquals(416, beyond.getStatus());
+        assertEquals("bytes */100", beyond.getHeader("Content-Range"));
+
+        assertEquals(200, get(controller, "bytes=0-1,5-6").getStatus());
+    }
+
+    @Test
+    public void readsOnlyTheBucketsImagesAreStoredIn() throws Exception {
+        ImageCache cache = new ImageCache(1024, 1024);
+        cache.setObjectStore(objectStore);
+        cache.setBuckets(Collections.singleton("bucket"));
+        objectStore.put("other", "a", ByteBuffer.wrap(new byte[10]), "image/jpeg",
+                Collections.<String, String>emptyMap());
+        cache.put("other", "b", ByteBuffer.wrap(new byte[10]));
+
+        assertNull(cache.get("other", "a"));
+        assertNull(cache.get("other", "b"));
+        assertEquals(0, cache.getMissCount());
+
+        ImageContentController controller = new ImageContentController();
+        ReflectionTestUtils.setField(controller, "imageCache", cache);
+        assertEquals(404, get(controller, "other", "a", null).getStatus());
+    }
+
+    @Test
+    public void refusesImagesOverTheReadLimit() throws Exception {
+        ImageCache cache = new ImageCache(1024, 1024, 50);
+        cache.setObjectStore(objectStore);
+        cache.setBuckets(Collections.singleton("bucket"));
+        objectStore.put("bucket", "a", ByteBuffer.wrap(new byte[51]), "image/jpeg",
+                Collections.<String, String>emptyMap());
+        cache.put("bucket", "b", ByteBuffer.wrap(new byte[51]));
+        cache.put("bucket", "c", ByteBuffer.wrap(new byte[50]));
+
+        try {
+            cache.get("bucket", "a");
+            fail("Read an image over the limit");
+        } catch (ObjectTooLargeException e) {
+            assertEquals(51, e.getSize());
+            assertEquals(50, e.getMaxBytes());
+        }
+        // b and c were cached on upload, a was not read
+        assertEquals(2, cache.getEntryCount());
+
+        ImageContentController controller = new ImageContentController();
+        ReflectionTestUtils.setField(controller, "imageCache", cache);
+        assertEquals(413, get(controller, "bucket", "a", null).getStatus());
+        assertEquals(413, get(controller, "bucket", "b", null).getStatus());
+        assertEquals(200, get(controller, "bucket", "c", null).getStatus());
+    }
+
+    private static MockHttpServletResponse get(ImageContentController controller, String range) throws Exception {
+        return get(controller, "bucket", "a", range);
+    }
+
+    private static MockHttpServletResponse get(ImageContentController controller, String bucket, String key,
+                                               String range) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/images/content");
+        if (range != null) {
+            request.addHeader("Range", range);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.content(bucket, key, request, response);
+        return response;
+    }
+}
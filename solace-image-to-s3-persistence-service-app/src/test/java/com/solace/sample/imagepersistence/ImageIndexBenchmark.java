@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Appends a large number of entries to an {@link ImageIndex}, queries it by source and time, and measures how
+ * long reopening it takes. Run it from the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.solace.sample.imagepersistence.ImageIndexBenchmark -Dexec.args="1000000 1000"
+ * </pre>
+ * Arguments: number of entries (default 1,000,000) and number of sources (default 1,000).
+ */
+public class ImageIndexBenchmark {
+
+    private static final int QUERIES = 10000;
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int sources = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Path directory = Files.createTempDirectory("image-index");
+
+        ImageIndex index = new ImageIndex(directory, 64 * 1024 * 1024);
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+            String source = "robot-" + random.nextInt(sources);
+            index.append("jdiamond-reinvent", "images/" + source + "/" + Long.toHexString(random.nextLong()) + ".jpg",
+                    source, 50000 + random.nextInt(100000), random.nextLong() & 0xFFFFFFFFL);
+        }
+        long appendNanos = System.nanoTime() - start;
+        index.close();
+        System.out.printf("appended %d entries in %d ms (%.0f ns each), %d segments%n", entries,
+                appendNanos / 1000000, (double) appendNanos / entries, index.getSegmentCount());
+
+        long[] latencies = new long[QUERIES];
+        long now = System.currentTimeMillis();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < QUERIES; i++) {
+                long queryStart = System.nanoTime();
+                index.query("robot-" + random.nextInt(sources), now - 3600000, Long.MAX_VALUE, 100);
+                latencies[i] = System.nanoTime() - queryStart;
+            }
+        }
+        Arrays.sort(latencies);
+        System.out.printf("query by source, last hour, 100 newest: p50 %d us, p99 %d us, max %d us%n",
+                latencies[QUERIES / 2] / 1000, latencies[QUERIES * 99 / 100] / 1000, latencies[QUERIES - 1] / 1000);
+
+        start = System.nanoTime();
+        ImageIndex reopened = new ImageIndex(directory, 64 * 1024 * 1024);
+        System.out.printf("reopened %d entries from %d sources in %d ms%n", reopened.getEntryCount(),
+                reopened.getSourceCount(), (System.nanoTime() - start) / 1000000);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ImageIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsImagesBySourceNewestFirst() throws Exception {
+        ImageIndex index = new ImageIndex(folder.getRoot().toPath(), 64 * 1024);
+        for (int i = 0; i < 30; i++) {
+            index.append("bucket", "key-" + i, i % 3 == 0 ? "robot-1" : "robot-2", 1000 + i, i);
+        }
+
+        ImageIndex.Result result = index.query("robot-1", Long.MIN_VALUE, Long.MAX_VALUE, 4);
+        assertEquals(10, result.getMatched());
+        List<ImageIndexEntry> entries = result.getEntries();
+        assertEquals(4, entries.size());
+        assertEquals("key-27", entries.get(0).getKey());
+        assertEquals("key-18", entries.get(3).getKey());
+        assertEquals("robot-1", entries.get(0).getSource());
+        assertEquals(1027, entries.get(0).getSize());
+        assertEquals("0000001b", entries.get(0).getHash());
+
+        assertEquals(30, index.query(null, Long.MIN_VALUE, Long.MAX_VALUE, 100).getMatched());
+        assertEquals(0, index.query("robot-3", Long.MIN_VALUE, Long.MAX_VALUE, 100).getMatched());
+    }
+
+    @Test
+    public void selectsByUploadTime() throws Exception {
+        ImageIndex index = new ImageIndex(folder.getRoot().toPath(), 64 * 1024);
+        index.append("bucket", "old", "robot", 1, 1);
+        Thread.sleep(20);
+        long between = System.currentTimeMillis();
+        Thread.sleep(20);
+        index.append("bucket", "new", "robot", 1, 2);
+
+        List<ImageIndexEntry> recent = index.query("robot", between, Long.MAX_VALUE, 10).getEntries();
+        assertEquals(1, recent.size());
+        assertEquals("new", recent.get(0).getKey());
+        List<ImageIndexEntry> earlier = index.query(null, Long.MIN_VALUE, between, 10).getEntries();
+        assertEquals(1, earlier.size());
+        assertEquals("old", earlier.get(0).getKey());
+    }
+
+    @Test
+    public void rebuildsFromItsSegmentsOnReopen() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ImageIndex index = new ImageIndex(directory, 4096);
+        for (int i = 0; i < 500; i++) {
+            index.append("bucket", "prefix/robot-" + (i % 7) + "/" + i + ".jpg", "robot-" + (i % 7), i, i);
+        }
+        index.close();
+
+        ImageIndex reopened = new ImageIndex(directory, 4096);
+        assertEquals(index.getSegmentCount(), reopened.getSegmentCount());
+        assertEquals(500, reopened.getEntryCount());
+        assertEquals(7, reopened.getSourceCount());
+        assertEquals("prefix/robot-2/499.jpg",
+                reopened.query("robot-2", Long.MIN_VALUE, Long.MAX_VALUE, 1).getEntries().get(0).getKey());
+
+        reopened.append("bucket", "after", "robot-2", 1, 1);
+        assertEquals("after", reopened.query(null, Long.MIN_VALUE, Long.MAX_VALUE, 1).getEntries().get(0).getKey());
+    }
+
+    @Test
+    public void discardsATornRecordAndAppendsOverIt() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ImageIndex index = new ImageIndex(directory, 64 * 1024);
+        index.append("bucket", "first", "robot", 1, 1);
+        index.append("bucket", "second", "robot", 1, 2);
+        index.close();
+
+        // damage the last byte of the second record, as if the process died while writing it
+        File segment = directory.resolve("segment-00000000.idx").toFile();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(0);
+            int first = file.readInt();
+            file.seek(first);
+            int second = file.readInt();
+            file.seek(first + second - 1);
+            file.write(0x55);
+        }
+
+        ImageIndex reopened = new ImageIndex(directory, 64 * 1024);
+        assertEquals(1, reopened.getEntryCount());
+        reopened.append("bucket", "third", "robot", 1, 3);
+        reopened.close();
+        assertEquals(2, new ImageIndex(directory, 64 * 1024).getEntryCount());
+    }
+
+    @Test
+    public void hashesTheRemainingContentOnly() {
+        ByteBuffer content = ByteBuffer.wrap(new byte[] {9, 1, 2, 3});
+        content.position(1);
+        assertEquals(ImageIndex.hash(ByteBuffer.wrap(new byte[] {1, 2, 3})), ImageIndex.hash(content));
+        assertEquals(1, content.position());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solace.sample.imagepersistence.store.ObjectStore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a lane of platform threads with a lane of virtual threads on many concurrent slow uploads.
+ * <p>
+ * Each upload blocks for a fixed time, the way a {@code putObject} call waits on S3. The same number of uploads
+ * is pushed through three lanes: a platform pool of typical size, a platform pool with one thread per upload and
+ * a virtual lane admitting all uploads at once. For each the wall time, upload rate, peak number of platform
+ * threads and growth of the resident set are printed. Run it on Java 21 from the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.solace.sample.imagepersistence.ImageLaneBenchmark -Dexec.args="10000 500 200"
+ * </pre>
+ * Arguments: number of uploads (default 10000), duration of each upload in milliseconds (default 500) and size of
+ * the typical platform pool (default 200). Run each lane in a fresh JVM, by adding its name as fourth argument
+ * ({@code platform}, {@code platform-per-upload} or {@code virtual}), for resident set figures that are not
+ * inflated by the previous runs.
+ */
+public class ImageLaneBenchmark {
+
+    private static final ByteBuffer IMAGE = ByteBuffer.allocate(16 * 1024);
+
+    public static void main(String[] args) throws Exception {
+        int uploads = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        long uploadMillis = args.length > 1 ? Long.parseLong(args[1]) : 500;
+        int poolSize = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        String only = args.length > 3 ? args[3] : null;
+
+        System.out.printf("%d uploads of %d ms each%n", uploads, uploadMillis);
+        System.out.printf("%-22s %10s %12s %14s %12s%n", "lane", "wall ms", "uploads/s", "peak threads", "RSS +MB");
+        if (only == null || only.equals("platform")) {
+            run("platform", new ImageLane("platform", poolSize, uploads, ImageLane.Mode.PLATFORM),
+                    uploads, uploadMillis);
+        }
+        if (only == null || only.equals("platform-per-upload")) {
+            run("platform-per-upload", new ImageLane("platform-per-upload", uploads, 1, ImageLane.Mode.PLATFORM),
+                    uploads, uploadMillis);
+        }
+        if (only == null || only.equals("virtual")) {
+            run("virtual", new ImageLane("virtual", 1, uploads, ImageLane.Mode.VIRTUAL), uploads, uploadMillis);
+        }
+    }
+
+    private static void run(String name, ImageLane lane, int uploads, long uploadMillis) throws Exception {
+        final ObjectStore store = new SlowObjectStore(uploadMillis);
+        final CountDownLatch done = new CountDownLatch(uploads);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long rssBefore = residentSetKilobytes();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < uploads; i++) {
+            final String key = "image-" + i;
+            Runnable upload = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        store.put("bucket", key, IMAGE.duplicate(), "image/jpeg",
+                                Collections.<String, String>emptyMap());
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            // a saturated lane rejects work; stand in for the broker redelivering it a little later
+            while (!lane.submit(upload)) {
+                Thread.sleep(1);
+            }
+        }
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long rssAfter = residentSetKilobytes();
+        lane.shutdown(10, TimeUnit.SECONDS);
+
+        System.out.printf("%-22s %10d %12.0f %14d %12s%n", name, wallMillis, uploads * 1000.0 / wallMillis,
+                threads.getPeakThreadCount(),
+                rssBefore < 0 || rssAfter < 0 ? "n/a" : String.valueOf((rssAfter - rssBefore) / 1024));
+    }
+
+    /**
+     * @return VmRSS of this process in kilobytes, or -1 where /proc is not available
+     */
+    private static long residentSetKilobytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    /**
+     * Store whose uploads block for a fixed time and keep nothing.
+     */
+    private static class SlowObjectStore implements ObjectStore {
+
+        private final long uploadMillis;
+
+        SlowObjectStore(long uploadMillis) {
+            this.uploadMillis = uploadMillis;
+        }
+
+        @Override
+        public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata)
+                throws IOException {
+            try {
+                Thread.sleep(uploadMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public ByteBuffer get(String bucket, String key) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImagePersistedEventPublisherTest {
+
+    @Test
+    public void givesUpOnAFullWindowWhenClosed() throws Exception {
+        CountDownLatch attempted = new CountDownLatch(1);
+        AtomicBoolean closing = new AtomicBoolean();
+        AtomicInteger attemptsOnClose = new AtomicInteger();
+        AtomicBoolean closedWhileSending = new AtomicBoolean();
+        XMLMessageProducer producer = (XMLMessageProducer) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {XMLMessageProducer.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "sendMultiple":
+                            if (closing.get()) {
+                                attemptsOnClose.incrementAndGet();
+                            }
+                            attempted.countDown();
+                            // the publish window never opens
+                            return 0;
+                        case "close":
+                            closedWhileSending.set(isSenderAlive());
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        JCSMPSession session = (JCSMPSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {JCSMPSession.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getMessageProducer")) {
+                        return producer;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        ImagePersistedEventPublisher publisher = new ImagePersistedEventPublisher(session, "images/persisted", 10, 10);
+        publisher.publish(new ImagePersistedEvent("bucket", "key", "robot-1", 3, 1));
+        publisher.start();
+        assertTrue(attempted.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        closing.set(true);
+        publisher.close();
+
+        // a sender that kept backing off would spin until the 5 s join timeout
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(attemptsOnClose.get() < 10);
+        assertFalse(closedWhileSending.get());
+        assertFalse(isSenderAlive());
+        assertEquals(1, publisher.getFailedCount());
+        assertEquals(0, publisher.getPublishedCount());
+    }
+
+    private static boolean isSenderAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("persisted-event-publisher") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.solace.sample.imagepersistence.store.ObjectStore;
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the consumer to an allocation budget per message, whatever the size of the image.
+ * <p>
+ * Allocation is measured with the per-thread allocation counter of HotSpot, the same counter JMH's
+ * {@code -prof gc} reads, around a steady-state run of raw images through the consumer into a store that
+ * keeps nothing.
+ */
+public class ImagePersistenceAllocationTest {
+
+    // bytes allocated per message; a raw image currently takes about 700
+    private static final long ALLOCATION_BUDGET = 2048;
+
+    private static final int WARMUP_MESSAGES = 50000;
+    private static final int MEASURED_MESSAGES = 20000;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private ImageRoutingTable routingTable;
+    private CountingObjectStore objectStore;
+    private ImagePersistenceMessageConsumer consumer;
+
+    @Before
+    public void setUp() {
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        routingTable = new ImageRoutingTable(Collections.<ImageRoute>emptyList(), new ImageRoute("default", "bucket",
+                "prefix/", null, null, null, null, 1, 1, 1, 1));
+        objectStore = new CountingObjectStore();
+        consumer = new ImagePersistenceMessageConsumer(null, routingTable, objectStore);
+        consumer.setRateLimiter(new SourceRateLimiter(1e9, 1000000, SourceRateLimiter.Policy.DROP, 10, 100, 60000));
+        consumer.setSourceStatistics(new SourceStatistics(50, 60000));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        routingTable.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void smallImagesStayWithinBudget() {
+        assertWithinBudget(1024);
+    }
+
+    @Test
+    public void largeImagesStayWithinBudget() {
+        assertWithinBudget(1024 * 1024);
+    }
+
+    private void assertWithinBudget(int imageSize) {
+        BytesMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+        msg.setData(new byte[imageSize]);
+
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_MESSAGES; i++) {
+            consumer.onReceive(msg);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_MESSAGES; i++) {
+            consumer.onReceive(msg);
+        }
+        long perMessage = (threadBean.getThreadAllocatedBytes(threadId) - before) / MEASURED_MESSAGES;
+
+        assertEquals(WARMUP_MESSAGES + MEASURED_MESSAGES, objectStore.puts);
+        assertTrue(perMessage + " bytes allocated per " + imageSize + " byte image, budget is " + ALLOCATION_BUDGET,
+                perMessage <= ALLOCATION_BUDGET);
+    }
+
+    private static class CountingObjectStore implements ObjectStore {
+
+        private int puts;
+
+        @Override
+        public void put(String bucket, String key, ByteBuffer data, String contentType, Map<String, String> userMetadata) {
+            puts++;
+        }
+
+        @Override
+        public ByteBuffer get(String bucket, String key) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
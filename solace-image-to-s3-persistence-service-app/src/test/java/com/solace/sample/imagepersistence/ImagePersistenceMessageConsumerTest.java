@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.solace.sample.imagepersistence.store.InMemoryObjectStore;
+import com.solace.sample.imagepersistence.store.ObjectStore;
+import com.solacesystems.jcsmp.XMLMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ImagePersistenceMessageConsumerTest {
+
+    private ImageRoutingTable routingTable;
+    private FailingObjectStore objectStore;
+    private ImagePersistenceMessageConsumer consumer;
+
+    @Before
+    public void setUp() {
+        routingTable = new ImageRoutingTable(Collections.<ImageRoute>emptyList(), new ImageRoute("default", "bucket",
+                "prefix/", null, null, null, null, 2, 10, 1, 10));
+        objectStore = new FailingObjectStore();
+        consumer = new ImagePersistenceMessageConsumer(null, routingTable, objectStore, true);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        routingTable.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void acknowledgesOnceStored() throws Exception {
+        RecordingMessage msg = new RecordingMessage(new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2});
+        consumer.onReceive(msg.get());
+
+        assertTrue(msg.await(5, TimeUnit.SECONDS));
+        assertEquals(1, msg.getAckCount());
+        assertNull(msg.getOutcome());
+        assertEquals(1, objectStore.size());
+    }
+
+    @Test
+    public void redeliversWhenTheUploadFails() throws Exception {
+        objectStore.failure = new IOException("store is down");
+        RecordingMessage msg = new RecordingMessage(new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2});
+        consumer.onReceive(msg.get());
+
+        assertTrue(msg.await(5, TimeUnit.SECONDS));
+        assertEquals(XMLMessage.Outcome.FAILED, msg.getOutcome());
+        assertEquals(0, msg.getAckCount());
+    }
+
+    @Test
+    public void redeliversWhenTheUploadThrows() throws Exception {
+        objectStore.failure = new IllegalStateException("bug");
+        RecordingMessage msg = new RecordingMessage(new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2});
+        consumer.onReceive(msg.get());
+
+        assertTrue(msg.await(5, TimeUnit.SECONDS));
+        assertEquals(XMLMessage.Outcome.FAILED, msg.getOutcome());
+        assertEquals(0, msg.getAckCount());
+    }
+
+    @Test
+    public void holdsDeferredMessagesUntilTheirSlotInsteadOfRedeliveringThem() throws Exception {
+        // 10 messages per second, no burst: each message after the first waits 100 ms for its slot
+        consumer.setRateLimiter(new SourceRateLimiter(10, 1, SourceRateLimiter.Policy.DEFER, 10, 10, 60000, 1000));
+        RecordingMessage[] msgs = new RecordingMessage[3];
+        long start = System.nanoTime();
+        for (int i = 0; i < msgs.length; i++) {
+            msgs[i] = new RecordingMessage(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) i});
+            consumer.onReceive(msgs[i].get());
+        }
+
+        for (RecordingMessage msg : msgs) {
+            assertTrue(msg.await(5, TimeUnit.SECONDS));
+            assertEquals(1, msg.getAckCount());
+            assertNull(msg.getOutcome());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(3, objectStore.size());
+    }
+
+    @Test
+    public void dropsDeferredMessagesWhoseSlotIsTooFarAway() throws Exception {
+        // one message per 1000 s: the second message's slot is beyond the 1 s deferral limit
+        SourceRateLimiter limiter = new SourceRateLimiter(0.001, 1, SourceRateLimiter.Policy.DEFER, 10, 10, 60000, 1000);
+        consumer.setRateLimiter(limiter);
+        RecordingMessage first = new RecordingMessage(new byte[] {(byte) 0xFF, (byte) 0xD8, 1});
+        RecordingMessage second = new RecordingMessage(new byte[] {(byte) 0xFF, (byte) 0xD8, 2});
+        consumer.onReceive(first.get());
+        consumer.onReceive(second.get());
+
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertEquals(1, second.getAckCount());
+        assertNull(second.getOutcome());
+        assertEquals(1, objectStore.size());
+        assertEquals(1, limiter.getDeferralsRefusedCount());
+    }
+
+    private static class FailingObjectStore implements ObjectStore {
+
+        private final InMemoryObjectStore stored = new InMemoryObjectStore();
+        private volatile Exception failure;
+
+        @Override
+        public void put(String bucket, String key, ByteBuffer data, String contentType,
+                        Map<String, String> userMetadata) throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            stored.put(bucket, key, data, contentType, userMetadata);
+        }
+
+        @Override
+        public ByteBuffer get(String bucket, String key) {
+            return stored.get(bucket, key);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        int size() {
+            return stored.size();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import org.junit.Test;
+
+public class ImageTraceTest {
+
+    private final BytesMessage msg = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+
+    @Test
+    public void tracesAllOrNothing() {
+        for (int i = 0; i < 100; i++) {
+            assertNull(new ImageTrace.Sampler(0).start(msg, System.nanoTime()));
+            assertNotNull(new ImageTrace.Sampler(1).start(msg, System.nanoTime()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRatesAboveOne() {
+        new ImageTrace.Sampler(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaN() {
+        new ImageTrace.Sampler(Double.NaN);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures the cost of {@link JpegValidator#read(ByteBuffer)} on JPEGs of increasing size, next to a full
+ * {@link ImageIO} decode of the same images for scale. Run it from the test classpath:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.solace.sample.imagepersistence.JpegValidatorBenchmark
+ * </pre>
+ */
+public class JpegValidatorBenchmark {
+
+    private static final long MEASURE_NANOS = 2000000000L;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-12s %10s %14s %14s %14s%n", "image", "KB", "validate ns", "validate MB/s", "decode MB/s");
+        for (int side : new int[] {256, 1024, 2048, 4096}) {
+            byte[] jpeg = encodeNoise(side);
+            double validateNanos = timeValidate(ByteBuffer.wrap(jpeg));
+            double decodeNanos = timeDecode(jpeg);
+            double megabytes = jpeg.length / (1024.0 * 1024.0);
+            System.out.printf("%-12s %10d %14.0f %14.0f %14.1f%n", side + "x" + side, jpeg.length / 1024,
+                    validateNanos, megabytes / (validateNanos / 1e9), megabytes / (decodeNanos / 1e9));
+        }
+    }
+
+    private static double timeValidate(ByteBuffer jpeg) {
+        int sink = 0;
+        for (int i = 0; i < 200000; i++) {
+            sink += JpegValidator.read(jpeg).getWidth();
+        }
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 10000; i++) {
+                sink += JpegValidator.read(jpeg).getWidth();
+            }
+            iterations += 10000;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (double) elapsed / iterations;
+    }
+
+    private static double timeDecode(byte[] jpeg) throws Exception {
+        ImageIO.read(new ByteArrayInputStream(jpeg));
+        long iterations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            ImageIO.read(new ByteArrayInputStream(jpeg));
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return (double) elapsed / iterations;
+    }
+
+    private static byte[] encodeNoise(int side) throws Exception {
+        BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(side);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
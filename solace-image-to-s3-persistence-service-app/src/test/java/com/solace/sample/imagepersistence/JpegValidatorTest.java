@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.solace.sample.imagepersistence.store.S3ObjectStore;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JpegValidatorTest {
+
+    private static byte[] jpeg;
+
+    @BeforeClass
+    public static void encodeImage() throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        jpeg = out.toByteArray();
+    }
+
+    @Test
+    public void readsDimensionsOfValidImage() {
+        JpegValidator.Header header = JpegValidator.read(ByteBuffer.wrap(jpeg));
+        assertTrue(header.getProblem(), header.isValid());
+        assertEquals(64, header.getWidth());
+        assertEquals(48, header.getHeight());
+    }
+
+    @Test
+    public void readsFromPositionToLimitWithoutMovingThem() {
+        byte[] framed = new byte[jpeg.length + 20];
+        System.arraycopy(jpeg, 0, framed, 10, jpeg.length);
+        ByteBuffer buffer = ByteBuffer.wrap(framed, 10, jpeg.length);
+
+        assertTrue(JpegValidator.read(buffer).isValid());
+        assertEquals(10, buffer.position());
+        assertEquals(10 + jpeg.length, buffer.limit());
+    }
+
+    @Test
+    public void acceptsZeroPaddingAfterEoi() {
+        assertTrue(JpegValidator.read(ByteBuffer.wrap(Arrays.copyOf(jpeg, jpeg.length + 16))).isValid());
+    }
+
+    @Test
+    public void rejectsTruncatedImage() {
+        JpegValidator.Header header = JpegValidator.read(ByteBuffer.wrap(Arrays.copyOf(jpeg, jpeg.length / 2)));
+        assertFalse(header.isValid());
+        assertTrue(header.getProblem(), header.getProblem().contains("truncated"));
+    }
+
+    @Test
+    public void rejectsOtherFormats() {
+        assertFalse(JpegValidator.read(ByteBuffer.wrap("GIF89a not a jpeg".getBytes())).isValid());
+        assertFalse(JpegValidator.read(ByteBuffer.allocate(0)).isValid());
+    }
+
+    @Test
+    public void rejectsSegmentOverrunningImage() {
+        byte[] corrupt = jpeg.clone();
+        // the first segment after SOI claims to be longer than the whole image
+        corrupt[4] = (byte) 0xFF;
+        corrupt[5] = (byte) 0xFF;
+        assertFalse(JpegValidator.read(ByteBuffer.wrap(corrupt)).isValid());
+    }
+
+    @Test
+    public void rejectsImageWithoutFrameHeader() {
+        // SOI, SOS with an empty scan header, EOI
+        byte[] noFrame = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2, (byte) 0xFF, (byte) 0xD9};
+        JpegValidator.Header header = JpegValidator.read(ByteBuffer.wrap(noFrame));
+        assertFalse(header.isValid());
+        assertEquals("scan before the frame header", header.getProblem());
+    }
+
+    @Test
+    public void countsOutcomes() {
+        JpegValidator validator = new JpegValidator(JpegValidator.Policy.QUARANTINE, "quarantine/");
+        validator.validate(ByteBuffer.wrap(jpeg));
+        validator.validate(ByteBuffer.wrap(new byte[100]));
+        assertEquals(1, validator.getValidCount());
+        assertEquals(1, validator.getInvalidCount());
+    }
+
+    @Test
+    public void storesDimensionsAsUserMetadata() throws Exception {
+        JpegValidator validator = new JpegValidator(JpegValidator.Policy.QUARANTINE, "quarantine/");
+        Map<String, String> headers = S3Headers.of(upload(validator, jpeg).getMetadata());
+        assertEquals("64", headers.get("x-amz-meta-width"));
+        assertEquals("48", headers.get("x-amz-meta-height"));
+        assertFalse(headers.containsKey("x-amz-meta-x-amz-meta-width"));
+        assertFalse(headers.containsKey("x-amz-meta-x-amz-meta-height"));
+    }
+
+    @Test
+    public void storesProblemOfQuarantinedImageAsUserMetadata() throws Exception {
+        JpegValidator validator = new JpegValidator(JpegValidator.Policy.QUARANTINE, "quarantine/");
+        PutObjectRequest sent = upload(validator, Arrays.copyOf(jpeg, jpeg.length / 2));
+        assertTrue(sent.getKey(), sent.getKey().startsWith("quarantine/"));
+        Map<String, String> headers = S3Headers.of(sent.getMetadata());
+        assertTrue(headers.get("x-amz-meta-invalid"), headers.get("x-amz-meta-invalid").contains("truncated"));
+        assertFalse(headers.containsKey("x-amz-meta-x-amz-meta-invalid"));
+    }
+
+    /**
+     * @return the request a consumer validating with {@code validator} sends to S3 for {@code image}
+     */
+    private PutObjectRequest upload(JpegValidator validator, byte[] image) throws Exception {
+        AtomicReference<PutObjectRequest> sent = new AtomicReference<>();
+        AmazonS3 s3Client = (AmazonS3) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {AmazonS3.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("putObject") && args.length == 1) {
+                        sent.set((PutObjectRequest) args[0]);
+                    }
+                    return null;
+                });
+        ImageRoutingTable routingTable = new ImageRoutingTable(Collections.<ImageRoute>emptyList(),
+                new ImageRoute("default", "bucket", "prefix/", null, null, null, null, 1, 1, 1, 1));
+        ImagePersistenceMessageConsumer consumer =
+                new ImagePersistenceMessageConsumer(null, routingTable, new S3ObjectStore(s3Client));
+        consumer.setJpegValidator(validator);
+        consumer.upload("robot-1", ByteBuffer.wrap(image), routingTable.route("robot-1"), System.nanoTime(), null);
+        return sent.get();
+    }
+}
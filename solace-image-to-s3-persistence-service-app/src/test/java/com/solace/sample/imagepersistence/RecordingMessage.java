@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.XMLMessage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A message as received from a client-acknowledged flow: messages made by {@link JCSMPFactory} ignore
+ * {@code ackMessage()}, so this one records its acknowledgement or settlement instead.
+ */
+class RecordingMessage {
+
+    private final BytesMessage message;
+    private final AtomicInteger acks = new AtomicInteger();
+    private final AtomicReference<XMLMessage.Outcome> outcome = new AtomicReference<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    RecordingMessage(byte[] data) {
+        BytesMessage delegate = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+        delegate.setData(data);
+        message = (BytesMessage) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {BytesMessage.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("ackMessage")) {
+                        acks.incrementAndGet();
+                        done.countDown();
+                        return null;
+                    }
+                    if (method.getName().equals("settle")) {
+                        outcome.set((XMLMessage.Outcome) args[0]);
+                        done.countDown();
+                        return null;
+                    }
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    BytesMessage get() {
+        return message;
+    }
+
+    int getAckCount() {
+        return acks.get();
+    }
+
+    /**
+     * @return the outcome the message was settled with, or null if it was not settled
+     */
+    XMLMessage.Outcome getOutcome() {
+        return outcome.get();
+    }
+
+    /**
+     * Waits for the message to be acknowledged or settled.
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+}
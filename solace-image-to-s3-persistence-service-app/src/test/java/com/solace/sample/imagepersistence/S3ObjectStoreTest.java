@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.solace.sample.imagepersistence.store.ObjectTooLargeException;
+import com.solace.sample.imagepersistence.store.S3ObjectStore;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class S3ObjectStoreTest {
+
+    private final HttpGet request = new HttpGet("http://localhost/bucket/key");
+    private final AtomicInteger bytesRead = new AtomicInteger();
+
+    @Test
+    public void readsObjectsUpToTheLimit() throws Exception {
+        ByteBuffer content = store(100).get("bucket", "key", 100);
+        assertEquals(100, content.remaining());
+        assertTrue(content.isReadOnly());
+        assertFalse(request.isAborted());
+    }
+
+    @Test
+    public void abortsTheDownloadOfObjectsOverTheLimit() throws Exception {
+        try {
+            store(101).get("bucket", "key", 100);
+            fail("Read an object over the limit");
+        } catch (ObjectTooLargeException e) {
+            assertEquals(101, e.getSize());
+        }
+        assertEquals(0, bytesRead.get());
+        assertTrue(request.isAborted());
+    }
+
+    @Test
+    public void missingObjectIsNull() throws Exception {
+        AmazonS3 s3Client = (AmazonS3) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {AmazonS3.class}, (proxy, method, args) -> {
+                    AmazonServiceException e = new AmazonServiceException("The specified key does not exist.");
+                    e.setStatusCode(404);
+                    throw e;
+                });
+        assertNull(new S3ObjectStore(s3Client).get("bucket", "key", 100));
+    }
+
+    /**
+     * @return a store whose only object has {@code size} bytes, counting the bytes read from it
+     */
+    private S3ObjectStore store(int size) {
+        AmazonS3 s3Client = (AmazonS3) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {AmazonS3.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getObject")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    S3Object object = new S3Object();
+                    object.setBucketName((String) args[0]);
+                    object.setKey((String) args[1]);
+                    object.getObjectMetadata().setContentLength(size);
+                    InputStream content = new ByteArrayInputStream(new byte[size]) {
+                        @Override
+                        public synchronized int read(byte[] b, int off, int len) {
+                            int n = super.read(b, off, len);
+                            bytesRead.addAndGet(Math.max(n, 0));
+                            return n;
+                        }
+                    };
+                    object.setObjectContent(new S3ObjectInputStream(content, request));
+                    return object;
+                });
+        return new S3ObjectStore(s3Client);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.sample.imagepersistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SourceRateLimiterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void bucketAdmitsItsBurstThenOneMessagePerInterval() {
+        long now = 1000 * SECOND;
+        SourceTokenBucket bucket = new SourceTokenBucket(10, 5, now);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(now));
+        }
+        assertFalse(bucket.tryAcquire(now));
+
+        // 10 per second: one more token every 100 ms
+        assertFalse(bucket.tryAcquire(now + SECOND / 20));
+        assertTrue(bucket.tryAcquire(now + SECOND / 10));
+        assertFalse(bucket.tryAcquire(now + SECOND / 10));
+        assertEquals(6, bucket.getAdmittedCount());
+        assertEquals(3, bucket.getThrottledCount());
+    }
+
+    @Test
+    public void bucketRefillsNoFurtherThanItsBurst() {
+        long now = 1000 * SECOND;
+        SourceTokenBucket bucket = new SourceTokenBucket(10, 3, now);
+        long later = now + 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire(later));
+        }
+        assertFalse(bucket.tryAcquire(later));
+    }
+
+    @Test
+    public void concurrentCallersShareTheBurstExactly() throws Exception {
+        long now = 1000 * SECOND;
+        SourceTokenBucket bucket = new SourceTokenBucket(1, 1000, now);
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (bucket.tryAcquire(now)) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, admitted.get());
+        assertEquals(3000, bucket.getThrottledCount());
+    }
+
+    @Test
+    public void bucketIsIdleOnceFullAgainForTheIdleTime() {
+        long now = 1000 * SECOND;
+        SourceTokenBucket bucket = new SourceTokenBucket(10, 5, now);
+        bucket.tryAcquire(now);
+        assertFalse(bucket.isIdle(now + SECOND / 20, SECOND));
+        assertTrue(bucket.isIdle(now + 2 * SECOND, SECOND));
+    }
+
+    @Test
+    public void admitsEverythingWhenDisabled() {
+        SourceRateLimiter limiter = new SourceRateLimiter(0, 1, SourceRateLimiter.Policy.DROP, 10, 10, 60000);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("robot"));
+        }
+        assertTrue(limiter.getBuckets().isEmpty());
+    }
+
+    @Test
+    public void limitsEachSourceOnItsOwn() {
+        // one message per 1000 s: nothing refills during the test
+        SourceRateLimiter limiter = new SourceRateLimiter(0.001, 2, SourceRateLimiter.Policy.DROP, 10, 10, 60000);
+        assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("a"));
+        assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("a"));
+        assertEquals(SourceRateLimiter.Decision.DROP, limiter.admit("a"));
+        assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("b"));
+        assertEquals(2, limiter.getTrackedSourceCount());
+        assertEquals(1, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void defersOverLimitMessages() {
+        SourceRateLimiter limiter = new SourceRateLimiter(0.001, 1, SourceRateLimiter.Policy.DEFER, 10, 10, 60000);
+        assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("a"));
+        assertEquals(SourceRateLimiter.Decision.DEFER, limiter.admit("a"));
+    }
+
+    @Test
+    public void bucketBooksSuccessiveSlotsUpToTheMaximumDelay() {
+        long now = 1000 * SECOND;
+        SourceTokenBucket bucket = new SourceTokenBucket(10, 1, now);
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+
+        assertEquals(SECOND / 10, bucket.reserve(now, SECOND));
+        assertEquals(2 * SECOND / 10, bucket.reserve(now, SECOND));
+        // nothing is booked beyond the maximum delay
+        assertEquals(-1, bucket.reserve(now, SECOND / 4));
+        assertEquals(3 * SECOND / 10, bucket.reserve(now, SECOND));
+        // once the bookings have passed, a message is due right away
+        assertEquals(0, bucket.reserve(now + SECOND, SECOND));
+    }
+
+    @Test
+    public void samplesOneInEveryOverLimitMessages() {
+        SourceRateLimiter limiter = new SourceRateLimiter(0.001, 1, SourceRateLimiter.Policy.SAMPLE, 3, 10, 60000);
+        assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("a"));
+        StringBuilder decisions = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            decisions.append(limiter.admit("a").name().charAt(0));
+        }
+        assertEquals("DDADDA", decisions.toString());
+    }
+
+    @Test
+    public void sourcesBeyondTheMaximumShareTheOverflowBucket() {
+        SourceRateLimiter limiter = new SourceRateLimiter(0.001, 1, SourceRateLimiter.Policy.DROP, 10, 2, 60000);
+        limiter.admit("a");
+        limiter.admit("b");
+        assertEquals(SourceRateLimiter.Decision.ADMIT, limiter.admit("c"));
+        // d has no bucket of its own and finds the overflow bucket empty
+        assertEquals(SourceRateLimiter.Decision.DROP, limiter.admit("d"));
+        assertEquals(2, limiter.getTrackedSourceCount());
+        assertEquals(1, limiter.getBuckets().get(SourceRateLimiter.OVERFLOW_SOURCE).getThrottledCount());
+    }
+
+    @Test
+    public void idleSourcesAreSweptToMakeRoom() throws Exception {
+        // a nanosecond interval: buckets are full again, and idle, right after each message
+        SourceRateLimiter limiter = new SourceRateLimiter(1e9, 1, SourceRateLimiter.Policy.DROP, 10, 2, 0);
+        limiter.admit("a");
+        limiter.admit("b");
+        Thread.sleep(1);
+        limiter.admit("c");
+        assertEquals(1, limiter.getTrackedSourceCount());
+        assertTrue(limiter.getBuckets().containsKey("c"));
+        assertFalse(limiter.getBuckets().containsKey("a"));
+    }
+}
@@ -17,6 +17,7 @@ import java.util.Set;
 abstract class SolaceJavaAutoConfigurationBase implements SpringJCSMPFactoryCloudFactory {
 
     private SolaceJavaProperties properties;
+    private SolaceServiceCredentialsRegistry solaceServiceCredentialsRegistry;
 
     SolaceJavaAutoConfigurationBase(SolaceJavaProperties properties) {
         this.properties = properties;
@@ -30,13 +31,27 @@ abstract class SolaceJavaAutoConfigurationBase implements SpringJCSMPFactoryClou
     @Bean
     @Override
     public SolaceServiceCredentials findFirstSolaceServiceCredentials() {
-        return findFirstSolaceServiceCredentialsImpl();
+        return getSolaceServiceCredentialsRegistry().findFirstSolaceServiceCredentials();
     }
 
     @Bean
     @Override
     public SpringJCSMPFactory getSpringJCSMPFactory() {
-        return getSpringJCSMPFactory(findFirstSolaceServiceCredentialsImpl());
+        return getSpringJCSMPFactory(findFirstSolaceServiceCredentials());
+    }
+
+    /**
+     * Returns the registry of the detected Solace Messaging services, which caches the {@link JCSMPProperties} and
+     * {@link SpringJCSMPFactory} of each service until it is refreshed.
+     *
+     * @return the {@link SolaceServiceCredentialsRegistry} of this configuration
+     */
+    @Bean
+    public synchronized SolaceServiceCredentialsRegistry getSolaceServiceCredentialsRegistry() {
+        if (solaceServiceCredentialsRegistry == null) {
+            solaceServiceCredentialsRegistry = new SolaceServiceCredentialsRegistry(this);
+        }
+        return solaceServiceCredentialsRegistry;
     }
 
     @Override
@@ -47,13 +62,13 @@ abstract class SolaceJavaAutoConfigurationBase implements SpringJCSMPFactoryClou
 
     @Override
     public SpringJCSMPFactory getSpringJCSMPFactory(SolaceServiceCredentials solaceServiceCredentials) {
-        return new SpringJCSMPFactory(getJCSMPProperties(solaceServiceCredentials));
+        return getSolaceServiceCredentialsRegistry().getSpringJCSMPFactory(solaceServiceCredentials);
     }
 
     @Bean
     @Override
     public JCSMPProperties getJCSMPProperties() {
-        return getJCSMPProperties(findFirstSolaceServiceCredentialsImpl());
+        return getJCSMPProperties(findFirstSolaceServiceCredentials());
     }
 
     @Override
@@ -64,6 +79,12 @@ abstract class SolaceJavaAutoConfigurationBase implements SpringJCSMPFactoryClou
 
     @Override
     public JCSMPProperties getJCSMPProperties(SolaceServiceCredentials solaceServiceCredentials) {
+        // the cached instance is shared, hand out a copy the caller is free to modify
+        return (JCSMPProperties) getSolaceServiceCredentialsRegistry()
+                .getJCSMPProperties(solaceServiceCredentials).clone();
+    }
+
+    JCSMPProperties createJCSMPProperties(SolaceServiceCredentials solaceServiceCredentials) {
         Properties p = new Properties();
         Set<Map.Entry<String,String>> set = properties.getApiProperties().entrySet();
         for (Map.Entry<String,String> entry : set) {
@@ -97,9 +118,41 @@ abstract class SolaceJavaAutoConfigurationBase implements SpringJCSMPFactoryClou
         cp.setReconnectRetries(properties.getReconnectRetries());
         cp.setConnectRetriesPerHost(properties.getConnectRetriesPerHost());
         cp.setReconnectRetryWaitInMillis(properties.getReconnectRetryWaitInMillis());
+
+        applyTuning(jcsmpProps, cp);
         return jcsmpProps;
     }
 
+    private void applyTuning(JCSMPProperties jcsmpProps, JCSMPChannelProperties cp) {
+        SolaceJavaProperties.Tuning tuning = properties.getTuning();
+        SolaceTuningProfile profile = SolaceTuningProfile.fromName(properties.getProfile());
+        if (profile != null) {
+            tuning = tuning.withDefaults(profile.getTuning());
+        }
+
+        if (tuning.getSubAckWindowSize() != null) {
+            jcsmpProps.setProperty(JCSMPProperties.SUB_ACK_WINDOW_SIZE, tuning.getSubAckWindowSize());
+        }
+        if (tuning.getPubAckWindowSize() != null) {
+            jcsmpProps.setProperty(JCSMPProperties.PUB_ACK_WINDOW_SIZE, tuning.getPubAckWindowSize());
+        }
+        if (tuning.getMessageCallbackOnReactor() != null) {
+            jcsmpProps.setProperty(JCSMPProperties.MESSAGE_CALLBACK_ON_REACTOR, tuning.getMessageCallbackOnReactor());
+        }
+        if (tuning.getTcpNoDelay() != null) {
+            cp.setTcpNoDelay(tuning.getTcpNoDelay());
+        }
+        if (tuning.getSocketSendBufferSize() != null) {
+            cp.setSendBuffer(tuning.getSocketSendBufferSize());
+        }
+        if (tuning.getSocketReceiveBufferSize() != null) {
+            cp.setReceiveBuffer(tuning.getSocketReceiveBufferSize());
+        }
+        if (tuning.getCompressionLevel() != null) {
+            cp.setCompressionLevel(tuning.getCompressionLevel());
+        }
+    }
+
     @Override @Deprecated
     public List<SolaceMessagingInfo> getSolaceMessagingInfos() {
         return null;
@@ -110,9 +163,7 @@ abstract class SolaceJavaAutoConfigurationBase implements SpringJCSMPFactoryClou
     }
 
     private SolaceServiceCredentials findSolaceServiceCredentialsById(String id) {
-        for (SolaceServiceCredentials credentials : getSolaceServiceCredentials())
-            if (credentials.getId().equals(id)) return credentials;
-        return null;
+        return getSolaceServiceCredentialsRegistry().findSolaceServiceCredentialsById(id);
     }
 
     void setProperties(SolaceJavaProperties properties) {
@@ -96,6 +96,20 @@ public class SolaceJavaProperties {
      */
     private int reconnectRetryWaitInMillis = 3000;
 
+    /**
+     * Named combination of tuning settings: "throughput" or "low-latency".
+     * Settings given explicitly under solace.java.tuning take precedence over the profile's.
+     * @see SolaceTuningProfile
+     */
+    private String profile;
+
+    /**
+     * Performance settings of the session. Unset settings keep the profile's value, or the Solace Java API default.
+     * These settings take precedence over the same settings given as apiProperties.
+     */
+    @NestedConfigurationProperty
+    private final Tuning tuning = new Tuning();
+
 
     /**
      * API properties can be set by the attribute naming convention used in
@@ -180,8 +194,147 @@ public class SolaceJavaProperties {
         this.reconnectRetryWaitInMillis = reconnectRetryWaitInMillis;
     }
 
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        // fail on an unknown profile at binding time rather than when the first session is created
+        SolaceTuningProfile.fromName(profile);
+        this.profile = profile;
+    }
+
+    public Tuning getTuning() {
+        return tuning;
+    }
+
     public Map<String,String> getApiProperties() {
 		return apiProperties;
 	}
 
+    /**
+     * Performance-relevant session settings. Each setting is null until set, so that the profile or the Solace Java
+     * API default applies.
+     */
+    public static class Tuning {
+
+        /**
+         * Number of guaranteed messages the router may send before the consumer acknowledges them (1 to 255).
+         */
+        private Integer subAckWindowSize;
+
+        /**
+         * Number of guaranteed messages the publisher may send before the router acknowledges them (1 to 255).
+         */
+        private Integer pubAckWindowSize;
+
+        /**
+         * Disable Nagle's algorithm, sending small writes immediately instead of coalescing them.
+         */
+        private Boolean tcpNoDelay;
+
+        /**
+         * Socket send buffer size in bytes. 0 uses the operating system default.
+         */
+        private Integer socketSendBufferSize;
+
+        /**
+         * Socket receive buffer size in bytes. 0 uses the operating system default.
+         */
+        private Integer socketReceiveBufferSize;
+
+        /**
+         * ZLIB compression level of the connection (0 to 9), 0 disabling compression.
+         * Compression requires the router's compressed SMF port.
+         */
+        private Integer compressionLevel;
+
+        /**
+         * Deliver messages to the listener on the I/O (reactor) thread rather than on a separate dispatcher thread.
+         * Saves a thread hand-off per message, but a slow listener then holds up all I/O of the context.
+         */
+        private Boolean messageCallbackOnReactor;
+
+        public Integer getSubAckWindowSize() {
+            return subAckWindowSize;
+        }
+
+        public void setSubAckWindowSize(Integer subAckWindowSize) {
+            this.subAckWindowSize = checkRange("subAckWindowSize", subAckWindowSize, 1, 255);
+        }
+
+        public Integer getPubAckWindowSize() {
+            return pubAckWindowSize;
+        }
+
+        public void setPubAckWindowSize(Integer pubAckWindowSize) {
+            this.pubAckWindowSize = checkRange("pubAckWindowSize", pubAckWindowSize, 1, 255);
+        }
+
+        public Boolean getTcpNoDelay() {
+            return tcpNoDelay;
+        }
+
+        public void setTcpNoDelay(Boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+        }
+
+        public Integer getSocketSendBufferSize() {
+            return socketSendBufferSize;
+        }
+
+        public void setSocketSendBufferSize(Integer socketSendBufferSize) {
+            this.socketSendBufferSize = checkRange("socketSendBufferSize", socketSendBufferSize, 0, Integer.MAX_VALUE);
+        }
+
+        public Integer getSocketReceiveBufferSize() {
+            return socketReceiveBufferSize;
+        }
+
+        public void setSocketReceiveBufferSize(Integer socketReceiveBufferSize) {
+            this.socketReceiveBufferSize = checkRange("socketReceiveBufferSize", socketReceiveBufferSize, 0, Integer.MAX_VALUE);
+        }
+
+        public Integer getCompressionLevel() {
+            return compressionLevel;
+        }
+
+        public void setCompressionLevel(Integer compressionLevel) {
+            this.compressionLevel = checkRange("compressionLevel", compressionLevel, 0, 9);
+        }
+
+        public Boolean getMessageCallbackOnReactor() {
+            return messageCallbackOnReactor;
+        }
+
+        public void setMessageCallbackOnReactor(Boolean messageCallbackOnReactor) {
+            this.messageCallbackOnReactor = messageCallbackOnReactor;
+        }
+
+        /**
+         * @return these settings, with the unset ones taken from the given defaults
+         */
+        Tuning withDefaults(Tuning defaults) {
+            Tuning merged = new Tuning();
+            merged.subAckWindowSize = subAckWindowSize != null ? subAckWindowSize : defaults.subAckWindowSize;
+            merged.pubAckWindowSize = pubAckWindowSize != null ? pubAckWindowSize : defaults.pubAckWindowSize;
+            merged.tcpNoDelay = tcpNoDelay != null ? tcpNoDelay : defaults.tcpNoDelay;
+            merged.socketSendBufferSize = socketSendBufferSize != null ? socketSendBufferSize : defaults.socketSendBufferSize;
+            merged.socketReceiveBufferSize = socketReceiveBufferSize != null
+                    ? socketReceiveBufferSize : defaults.socketReceiveBufferSize;
+            merged.compressionLevel = compressionLevel != null ? compressionLevel : defaults.compressionLevel;
+            merged.messageCallbackOnReactor = messageCallbackOnReactor != null
+                    ? messageCallbackOnReactor : defaults.messageCallbackOnReactor;
+            return merged;
+        }
+
+        private static Integer checkRange(String name, Integer value, int min, int max) {
+            if (value != null && (value < min || value > max)) {
+                throw new IllegalArgumentException(
+                        String.format("solace.java.tuning.%s must be between %d and %d, was %d", name, min, max, value));
+            }
+            return value;
+        }
+    }
+
 }
\ No newline at end of file
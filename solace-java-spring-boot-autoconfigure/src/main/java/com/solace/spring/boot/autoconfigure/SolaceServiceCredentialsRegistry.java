@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.spring.boot.autoconfigure;
+
+import com.solace.services.core.model.SolaceServiceCredentials;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.SpringJCSMPFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the detected Solace Messaging services, loaded once and kept until {@link #refresh()}.
+ * <p>
+ * Besides looking up services by ID without re-reading the environment, the registry caches the
+ * {@link JCSMPProperties} and {@link SpringJCSMPFactory} derived from each service, so that applications opening
+ * many sessions only parse the service credentials and build their properties once. A refresh discards the index
+ * together with everything derived from it.
+ */
+public class SolaceServiceCredentialsRegistry {
+
+    // cache key of the properties built from application.properties alone
+    private static final Object NO_CREDENTIALS = new Object();
+    // cache key of the first service when it has no ID the index knows
+    private static final Object FIRST_SERVICE = new Object();
+
+    private final SolaceJavaAutoConfigurationBase configuration;
+    private volatile Index index;
+
+    SolaceServiceCredentialsRegistry(SolaceJavaAutoConfigurationBase configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the detected Solace Messaging services
+     */
+    public List<SolaceServiceCredentials> getSolaceServiceCredentials() {
+        return index().credentials;
+    }
+
+    /**
+     * @param id The Solace Messaging service's ID
+     * @return the service with the given ID, otherwise null
+     */
+    public SolaceServiceCredentials findSolaceServiceCredentialsById(String id) {
+        return index().byId.get(id);
+    }
+
+    /**
+     * The first service is detected once per refresh and, when it has a known ID, resolved to the indexed service
+     * with that ID. Configurations that build a new instance for the first service on every call therefore still
+     * share its cached properties and factory.
+     *
+     * @return the first detected service, otherwise null
+     */
+    public SolaceServiceCredentials findFirstSolaceServiceCredentials() {
+        return index().first(configuration);
+    }
+
+    /**
+     * Discards the detected services and everything derived from them. They are detected again on next use.
+     */
+    public synchronized void refresh() {
+        index = null;
+    }
+
+    /**
+     * @return the cached properties of the given service. Callers must not modify them.
+     */
+    JCSMPProperties getJCSMPProperties(SolaceServiceCredentials solaceServiceCredentials) {
+        Index index = index();
+        Object key = index.keyOf(solaceServiceCredentials);
+        if (key == null) {
+            // not a registered service: nothing to invalidate it on refresh, so don't cache it
+            return configuration.createJCSMPProperties(solaceServiceCredentials);
+        }
+
+        JCSMPProperties jcsmpProperties = index.jcsmpProperties.get(key);
+        if (jcsmpProperties == null) {
+            jcsmpProperties = configuration.createJCSMPProperties(solaceServiceCredentials);
+            JCSMPProperties existing = index.jcsmpProperties.putIfAbsent(key, jcsmpProperties);
+            if (existing != null) {
+                jcsmpProperties = existing;
+            }
+        }
+        return jcsmpProperties;
+    }
+
+    SpringJCSMPFactory getSpringJCSMPFactory(SolaceServiceCredentials solaceServiceCredentials) {
+        Index index = index();
+        Object key = index.keyOf(solaceServiceCredentials);
+        if (key == null) {
+            return new SpringJCSMPFactory(getJCSMPProperties(solaceServiceCredentials));
+        }
+
+        SpringJCSMPFactory factory = index.factories.get(key);
+        if (factory == null) {
+            factory = new SpringJCSMPFactory(getJCSMPProperties(solaceServiceCredentials));
+            SpringJCSMPFactory existing = index.factories.putIfAbsent(key, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return factory;
+    }
+
+    private Index index() {
+        Index index = this.index;
+        if (index == null) {
+            synchronized (this) {
+                index = this.index;
+                if (index == null) {
+                    index = new Index(configuration.getSolaceServiceCredentials());
+                    this.index = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static class Index {
+
+        private final List<SolaceServiceCredentials> credentials;
+        private final Map<String, SolaceServiceCredentials> byId = new HashMap<>();
+        private final ConcurrentMap<Object, JCSMPProperties> jcsmpProperties = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Object, SpringJCSMPFactory> factories = new ConcurrentHashMap<>();
+        private SolaceServiceCredentials first;
+        private boolean firstResolved;
+
+        Index(List<SolaceServiceCredentials> credentials) {
+            this.credentials = credentials == null ? Collections.<SolaceServiceCredentials>emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(credentials));
+            for (SolaceServiceCredentials solaceServiceCredentials : this.credentials) {
+                // the first of several services with the same ID wins, as with a linear scan
+                if (!byId.containsKey(solaceServiceCredentials.getId())) {
+                    byId.put(solaceServiceCredentials.getId(), solaceServiceCredentials);
+                }
+            }
+        }
+
+        synchronized SolaceServiceCredentials first(SolaceJavaAutoConfigurationBase configuration) {
+            if (!firstResolved) {
+                SolaceServiceCredentials detected = configuration.findFirstSolaceServiceCredentialsImpl();
+                SolaceServiceCredentials indexed = detected == null || detected.getId() == null ? null
+                        : byId.get(detected.getId());
+                first = indexed != null ? indexed : detected;
+                firstResolved = true;
+            }
+            return first;
+        }
+
+        /**
+         * Services are keyed by ID, so that an equivalent instance of an indexed service shares its cache entries.
+         *
+         * @return the cache key of the service, or null if the service is neither indexed nor the first one
+         */
+        synchronized Object keyOf(SolaceServiceCredentials solaceServiceCredentials) {
+            if (solaceServiceCredentials == null) {
+                return NO_CREDENTIALS;
+            }
+            String id = solaceServiceCredentials.getId();
+            if (id != null && byId.containsKey(id)) {
+                return id;
+            }
+            return firstResolved && first == solaceServiceCredentials ? FIRST_SERVICE : null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.solace.spring.boot.autoconfigure;
+
+/**
+ * Named combinations of {@link SolaceJavaProperties.Tuning} settings, selected with {@code solace.java.profile}.
+ */
+public enum SolaceTuningProfile {
+
+    /**
+     * Favors messages per second: full acknowledgement windows so that neither side waits for acknowledgements,
+     * large socket buffers to ride out bursts, and Nagle's algorithm left on to coalesce small writes.
+     */
+    THROUGHPUT("throughput") {
+        @Override
+        SolaceJavaProperties.Tuning getTuning() {
+            SolaceJavaProperties.Tuning tuning = new SolaceJavaProperties.Tuning();
+            tuning.setSubAckWindowSize(255);
+            tuning.setPubAckWindowSize(255);
+            tuning.setTcpNoDelay(false);
+            tuning.setSocketSendBufferSize(1024 * 1024);
+            tuning.setSocketReceiveBufferSize(1024 * 1024);
+            tuning.setCompressionLevel(0);
+            tuning.setMessageCallbackOnReactor(false);
+            return tuning;
+        }
+    },
+
+    /**
+     * Favors the latency of each message: writes sent immediately and a smaller publish window.
+     * <p>
+     * Messages are still delivered on the dispatcher thread. Delivering them on the I/O thread
+     * ({@code messageCallbackOnReactor}) only pays off when the listener hands every message off without
+     * blocking, as the persistence service does in its client acknowledgement and reactive consumer modes; a listener
+     * that blocks would stall all I/O of the context. Enable it explicitly in that case.
+     */
+    LOW_LATENCY("low-latency") {
+        @Override
+        SolaceJavaProperties.Tuning getTuning() {
+            SolaceJavaProperties.Tuning tuning = new SolaceJavaProperties.Tuning();
+            tuning.setSubAckWindowSize(255);
+            tuning.setPubAckWindowSize(50);
+            tuning.setTcpNoDelay(true);
+            tuning.setCompressionLevel(0);
+            tuning.setMessageCallbackOnReactor(false);
+            return tuning;
+        }
+    };
+
+    private final String name;
+
+    SolaceTuningProfile(String name) {
+        this.name = name;
+    }
+
+    abstract SolaceJavaProperties.Tuning getTuning();
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the name of the profile, or null or empty for none
+     * @return the profile with the given name, or null if none is given
+     * @throws IllegalArgumentException if there is no profile with the given name
+     */
+    public static SolaceTuningProfile fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        for (SolaceTuningProfile profile : values()) {
+            if (profile.name.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown solace.java.profile: " + name
+                + ", expected throughput or low-latency");
+    }
+}
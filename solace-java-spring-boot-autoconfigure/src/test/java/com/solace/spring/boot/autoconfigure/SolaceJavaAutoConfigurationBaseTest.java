@@ -19,7 +19,9 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class SolaceJavaAutoConfigurationBaseTest extends SolaceJavaAutoConfigurationTestBase {
     private SolaceJavaProperties solaceJavaProperties = getSolaceJavaProperties();
@@ -97,6 +99,67 @@ public class SolaceJavaAutoConfigurationBaseTest extends SolaceJavaAutoConfigura
         assertNull(jcsmpAutoConfBase.getJCSMPProperties(solaceServiceCredentials.getId()));
     }
 
+    @Test
+    public void testSolaceServiceCredentialsAreLoadedOnce() {
+        jcsmpAutoConfBase.getJCSMPProperties(solaceServiceCredentials.getId());
+        jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials.getId());
+        jcsmpAutoConfBase.getJCSMPProperties("unknown-id");
+        Mockito.verify(jcsmpAutoConfBase, Mockito.times(1)).getSolaceServiceCredentials();
+
+        jcsmpAutoConfBase.getSolaceServiceCredentialsRegistry().refresh();
+        jcsmpAutoConfBase.getJCSMPProperties(solaceServiceCredentials.getId());
+        Mockito.verify(jcsmpAutoConfBase, Mockito.times(2)).getSolaceServiceCredentials();
+    }
+
+    @Test
+    public void testJCSMPPropertiesAreCachedCopies() {
+        JCSMPProperties jcsmpProperties = jcsmpAutoConfBase.getJCSMPProperties(solaceServiceCredentials.getId());
+        jcsmpProperties.setProperty(JCSMPProperties.HOST, "modified-host");
+
+        assertEquals(solaceServiceCredentials.getSmfHost(),
+                jcsmpAutoConfBase.getJCSMPProperties(solaceServiceCredentials.getId()).getProperty(JCSMPProperties.HOST));
+        Mockito.verify(jcsmpAutoConfBase, Mockito.times(1)).createJCSMPProperties(solaceServiceCredentials);
+    }
+
+    @Test
+    public void testSpringJCSMPFactoryIsCachedUntilRefresh() {
+        SpringJCSMPFactory jcsmpFactory = jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials.getId());
+        assertSame(jcsmpFactory, jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials));
+        assertSame(jcsmpFactory, jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials.getId()));
+
+        jcsmpAutoConfBase.getSolaceServiceCredentialsRegistry().refresh();
+        assertNotSame(jcsmpFactory, jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials.getId()));
+    }
+
+    @Test
+    public void testFirstServiceIsResolvedThroughTheRegistry() {
+        // like the cloud configuration, return an equivalent but new instance of the first service on every call
+        Mockito.doAnswer(invocation -> {
+            SolaceServiceCredentialsImpl copy = objectMapper
+                    .convertValue(createOneService().get("credentials"), SolaceServiceCredentialsImpl.class);
+            copy.setId(solaceServiceCredentials.getId());
+            return copy;
+        }).when(jcsmpAutoConfBase).findFirstSolaceServiceCredentialsImpl();
+
+        assertSame(solaceServiceCredentials, jcsmpAutoConfBase.findFirstSolaceServiceCredentials());
+        SpringJCSMPFactory jcsmpFactory = jcsmpAutoConfBase.getSpringJCSMPFactory();
+        assertSame(jcsmpFactory, jcsmpAutoConfBase.getSpringJCSMPFactory());
+        assertSame(jcsmpFactory, jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials.getId()));
+        jcsmpAutoConfBase.getJCSMPProperties();
+        Mockito.verify(jcsmpAutoConfBase, Mockito.times(1)).findFirstSolaceServiceCredentialsImpl();
+        Mockito.verify(jcsmpAutoConfBase, Mockito.times(1)).createJCSMPProperties(solaceServiceCredentials);
+    }
+
+    @Test
+    public void testCacheIsKeyedByServiceId() {
+        SolaceServiceCredentialsImpl copy = objectMapper
+                .convertValue(createOneService().get("credentials"), SolaceServiceCredentialsImpl.class);
+        copy.setId(solaceServiceCredentials.getId());
+
+        assertSame(jcsmpAutoConfBase.getSpringJCSMPFactory(solaceServiceCredentials),
+                jcsmpAutoConfBase.getSpringJCSMPFactory(copy));
+    }
+
     private void validateJCSMPFactory(JCSMPSession jcsmpSession, boolean isProperties) {
         validateApiProperties(jcsmpSession);
         validateJCSMPConnectionProperties((JCSMPChannelProperties) jcsmpSession.getProperty(JCSMPProperties.CLIENT_CHANNEL_PROPERTIES));
@@ -170,5 +233,6 @@ public class SolaceJavaAutoConfigurationBaseTest extends SolaceJavaAutoConfigura
     private void disableSolaceServiceCredentials() {
         Mockito.doReturn(null).when(jcsmpAutoConfBase).findFirstSolaceServiceCredentialsImpl();
         Mockito.doReturn(new ArrayList<>()).when(jcsmpAutoConfBase).getSolaceServiceCredentials();
+        jcsmpAutoConfBase.getSolaceServiceCredentialsRegistry().refresh();
     }
 }
@@ -19,6 +19,7 @@
 package com.solace.spring.boot.autoconfigure;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -32,6 +33,7 @@ import com.solacesystems.jcsmp.JCSMPChannelProperties;
 import com.solacesystems.jcsmp.JCSMPProperties;
 import com.solacesystems.jcsmp.JCSMPSession;
 import com.solacesystems.jcsmp.SpringJCSMPFactory;
+import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.core.ResolvableType;
 
 public class SolaceJavaAutoConfigurationTest extends SolaceJavaAutoConfigurationTestBase {
@@ -97,6 +99,47 @@ public class SolaceJavaAutoConfigurationTest extends SolaceJavaAutoConfiguration
         assertEquals(1000, (int)cp.getReconnectRetryWaitInMillis());
 	}
 
+	@Test
+	public void throughputProfile() throws InvalidPropertiesException {
+		load("solace.java.profile=throughput");
+		JCSMPSession session = this.context.getBean(SpringJCSMPFactory.class).createSession();
+
+		assertEquals(255, (int) (Integer) session.getProperty(JCSMPProperties.SUB_ACK_WINDOW_SIZE));
+		assertEquals(255, (int) (Integer) session.getProperty(JCSMPProperties.PUB_ACK_WINDOW_SIZE));
+		assertEquals(Boolean.FALSE, session.getProperty(JCSMPProperties.MESSAGE_CALLBACK_ON_REACTOR));
+		JCSMPChannelProperties cp = (JCSMPChannelProperties) session
+				.getProperty(JCSMPProperties.CLIENT_CHANNEL_PROPERTIES);
+		assertFalse(cp.isTcpNoDelay());
+		assertEquals(1024 * 1024, cp.getSendBuffer());
+		assertEquals(1024 * 1024, cp.getReceiveBuffer());
+	}
+
+	@Test
+	public void tuningPropertiesOverrideProfile() throws InvalidPropertiesException {
+		load("solace.java.profile=low-latency", "solace.java.tuning.subAckWindowSize=10",
+				"solace.java.tuning.tcpNoDelay=false", "solace.java.tuning.compressionLevel=5",
+				"solace.java.apiProperties.sub_ack_window_size=20");
+		JCSMPSession session = this.context.getBean(SpringJCSMPFactory.class).createSession();
+
+		assertEquals(10, (int) (Integer) session.getProperty(JCSMPProperties.SUB_ACK_WINDOW_SIZE));
+		assertEquals(50, (int) (Integer) session.getProperty(JCSMPProperties.PUB_ACK_WINDOW_SIZE));
+		assertEquals(Boolean.FALSE, session.getProperty(JCSMPProperties.MESSAGE_CALLBACK_ON_REACTOR));
+		JCSMPChannelProperties cp = (JCSMPChannelProperties) session
+				.getProperty(JCSMPProperties.CLIENT_CHANNEL_PROPERTIES);
+		assertFalse(cp.isTcpNoDelay());
+		assertEquals(5, cp.getCompressionLevel());
+	}
+
+	@Test(expected = BeanCreationException.class)
+	public void tuningPropertyOutOfRange() {
+		load("solace.java.tuning.subAckWindowSize=256");
+	}
+
+	@Test(expected = BeanCreationException.class)
+	public void unknownProfile() {
+		load("solace.java.profile=fastest");
+	}
+
 	@Test
 	public void externallyLoadedServicePropertiesBasicBeanTest() {
 		// Testing one type of externally loaded service is good enough